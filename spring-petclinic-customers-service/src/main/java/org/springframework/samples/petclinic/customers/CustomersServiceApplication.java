@@ -17,11 +17,15 @@ package org.springframework.samples.petclinic.customers;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.samples.petclinic.customers.shard.ShardingProperties;
+import org.springframework.samples.petclinic.customers.stats.StatisticsProperties;
 
 /**
  * @author Maciej Szarlinski
  */
 @SpringBootApplication
+@EnableConfigurationProperties({ShardingProperties.class, StatisticsProperties.class})
 public class CustomersServiceApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.model;
+
+import jakarta.persistence.*;
+import org.springframework.core.style.ToStringCreator;
+
+import java.util.Date;
+
+/**
+ * Outbox entry recording that an owner or a pet has been created or updated.
+ * It is written in the same transaction as the change itself, so the change feed never
+ * announces a change that was rolled back nor misses one that was committed.
+ */
+@Entity
+@Table(name = "change_events")
+public class ChangeEvent {
+
+    public enum EntityType {
+        OWNER, PET
+    }
+
+    public enum ChangeType {
+        CREATED, UPDATED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entity_type")
+    private EntityType entityType;
+
+    @Column(name = "entity_id")
+    private int entityId;
+
+    @Column(name = "owner_id")
+    private int ownerId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type")
+    private ChangeType changeType;
+
+    @Column(name = "created_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+
+    protected ChangeEvent() {
+    }
+
+    public ChangeEvent(EntityType entityType, int entityId, int ownerId, ChangeType changeType) {
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.ownerId = ownerId;
+        this.changeType = changeType;
+        this.createdAt = new Date();
+    }
+
+    public Long getId() {
+        return this.id;
+    }
+
+    public EntityType getEntityType() {
+        return this.entityType;
+    }
+
+    public int getEntityId() {
+        return this.entityId;
+    }
+
+    public int getOwnerId() {
+        return this.ownerId;
+    }
+
+    public ChangeType getChangeType() {
+        return this.changeType;
+    }
+
+    public Date getCreatedAt() {
+        return this.createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringCreator(this)
+            .append("id", this.id)
+            .append("entityType", this.entityType)
+            .append("entityId", this.entityId)
+            .append("ownerId", this.ownerId)
+            .append("changeType", this.changeType)
+            .toString();
+    }
+}
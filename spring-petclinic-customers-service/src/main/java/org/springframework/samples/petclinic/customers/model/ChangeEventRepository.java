@@ -0,0 +1,52 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.model;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository class for the <code>ChangeEvent</code> outbox.
+ */
+public interface ChangeEventRepository extends JpaRepository<ChangeEvent, Long> {
+
+    /**
+     * Retrieve the changes recorded after the given cursor, oldest first.
+     * Served by the primary key index, so the cost only depends on the page size.
+     */
+    List<ChangeEvent> findByIdGreaterThanOrderByIdAsc(long id, Limit limit);
+
+    /**
+     * Count the changes of the given kind recorded per month.
+     * @return rows of year, month and count
+     */
+    @Query("SELECT YEAR(c.createdAt), MONTH(c.createdAt), COUNT(c) FROM ChangeEvent c"
+        + " WHERE c.entityType = :entityType AND c.changeType = :changeType"
+        + " GROUP BY YEAR(c.createdAt), MONTH(c.createdAt)")
+    List<Object[]> countByMonth(@Param("entityType") ChangeEvent.EntityType entityType,
+                                @Param("changeType") ChangeEvent.ChangeType changeType);
+
+    /**
+     * @return those of the given changes that are visible to the current transaction
+     */
+    @Query("SELECT c.id FROM ChangeEvent c WHERE c.id IN :ids")
+    List<Long> findIdsByIdIn(@Param("ids") Collection<Long> ids);
+}
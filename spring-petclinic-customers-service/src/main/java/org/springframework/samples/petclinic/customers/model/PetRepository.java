@@ -44,6 +44,8 @@ public interface PetRepository extends JpaRepository<Pet, Integer> {
     @Query("FROM PetType ptype WHERE ptype.id = :typeId")
     Optional<PetType> findPetTypeById(@Param("typeId") int typeId);
 
+    @Query("SELECT new org.springframework.samples.petclinic.customers.model.KeyCount(t.name, COUNT(p)) FROM Pet p LEFT JOIN p.type t GROUP BY t.name")
+    List<KeyCount> countByType();
 
 }
 
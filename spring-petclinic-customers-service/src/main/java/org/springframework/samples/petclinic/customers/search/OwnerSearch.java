@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.search;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent;
+import org.springframework.samples.petclinic.customers.model.Owner;
+import org.springframework.samples.petclinic.customers.model.OwnerRepository;
+import org.springframework.samples.petclinic.customers.shard.Shards;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the {@link OwnerSearchIndex} in sync with the owners table: it is built once the application
+ * is ready and every committed owner or pet change re-indexes the owner concerned.
+ */
+@Component
+public class OwnerSearch {
+
+    private static final Logger log = LoggerFactory.getLogger(OwnerSearch.class);
+
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    private final OwnerSearchIndex index = new OwnerSearchIndex();
+    private final OwnerRepository ownerRepository;
+    private final Shards shards;
+
+    OwnerSearch(OwnerRepository ownerRepository, Shards shards) {
+        this.ownerRepository = ownerRepository;
+        this.shards = shards;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        index.clear();
+        shards.scatter(shard -> {
+            Page<Owner> page = ownerRepository.findAll(PageRequest.of(0, REBUILD_BATCH_SIZE, Sort.by("id")));
+            page.forEach(index::index);
+            while (page.hasNext()) {
+                page = ownerRepository.findAll(page.nextPageable());
+                page.forEach(index::index);
+            }
+            return List.of();
+        });
+        log.info("Owner search index built with {} owners in {} ms", index.size(), System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener
+    void onChangeCommitted(ChangeEvent change) {
+        ownerRepository.findById(change.getOwnerId()).ifPresent(index::index);
+    }
+
+    public OwnerSearchResult search(String query, int page, int size) {
+        // A page far beyond the matches must not overflow into a negative offset
+        OwnerSearchIndex.Hits hits = index.search(query, (long) page * size, size);
+        Map<Integer, List<Integer>> idsByShard = hits.ownerIds().stream()
+            .collect(Collectors.groupingBy(shards::ofOwner));
+        Map<Integer, Owner> owners = shards.scatter(idsByShard.keySet(), shard -> ownerRepository.findAllById(idsByShard.get(shard)))
+            .stream()
+            .collect(Collectors.toMap(Owner::getId, Function.identity()));
+        // Keep the ranking of the index, not the order returned by the database
+        List<Owner> ranked = hits.ownerIds().stream()
+            .map(owners::get)
+            .filter(owner -> owner != null)
+            .toList();
+        return new OwnerSearchResult(ranked, page, size, hits.total());
+    }
+
+    public record OwnerSearchResult(
+        List<Owner> owners,
+        int page,
+        int size,
+        int total
+    ) {
+    }
+}
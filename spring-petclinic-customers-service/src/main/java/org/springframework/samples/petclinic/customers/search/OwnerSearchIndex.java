@@ -0,0 +1,309 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.search;
+
+import org.springframework.samples.petclinic.customers.model.Owner;
+import org.springframework.samples.petclinic.customers.model.Pet;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory n-gram inverted index over owners and their pets.
+ * <p>
+ * Every token of the indexed fields contributes its trigrams plus one- and two-character
+ * prefixes to a posting list of owner ids. A query term of three characters or more matches
+ * any substring, a shorter one matches token prefixes only. Candidates are the intersection of
+ * the posting lists of all query terms and are then verified and ranked against the stored fields,
+ * so the cost depends on the size of the shortest posting list rather than on the number of owners.
+ */
+public class OwnerSearchIndex {
+
+    private static final String PREFIX_MARK = "^";
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<Integer, IndexedOwner> owners = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Add or replace an owner, together with its pets.
+     */
+    public void index(Owner owner) {
+        IndexedOwner indexed = IndexedOwner.of(owner);
+        lock.writeLock().lock();
+        try {
+            IndexedOwner previous = owners.put(indexed.id(), indexed);
+            if (previous != null) {
+                for (String gram : previous.grams()) {
+                    PostingList list = postings.get(gram);
+                    if (list != null && list.remove(previous.id()) && list.isEmpty()) {
+                        postings.remove(gram);
+                    }
+                }
+            }
+            for (String gram : indexed.grams()) {
+                postings.computeIfAbsent(gram, g -> new PostingList()).add(indexed.id());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            owners.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return owners.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the ids of the matching owners, best match first, restricted to the requested window,
+     * which is empty when it starts after the last match
+     */
+    public Hits search(String query, long offset, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return new Hits(List.of(), 0);
+        }
+        lock.readLock().lock();
+        try {
+            int[] candidates = null;
+            for (String term : terms) {
+                candidates = candidates == null ? candidatesFor(term) : PostingList.intersect(candidates, candidatesFor(term));
+                if (candidates.length == 0) {
+                    return new Hits(List.of(), 0);
+                }
+            }
+            List<ScoredOwner> scored = new ArrayList<>();
+            for (int ownerId : candidates) {
+                IndexedOwner owner = owners.get(ownerId);
+                double score = owner.score(terms);
+                if (score > 0) {
+                    scored.add(new ScoredOwner(owner, score));
+                }
+            }
+            scored.sort(ScoredOwner.RANKING);
+            List<Integer> window = scored.stream()
+                .skip(offset)
+                .limit(limit)
+                .map(hit -> hit.owner().id())
+                .toList();
+            return new Hits(window, scored.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] candidatesFor(String term) {
+        if (term.length() < 3) {
+            PostingList list = postings.get(PREFIX_MARK + term);
+            return list == null ? new int[0] : list.toArray();
+        }
+        List<PostingList> lists = new ArrayList<>();
+        for (String gram : trigrams(term)) {
+            PostingList list = postings.get(gram);
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        // Intersect the most selective lists first
+        lists.sort(Comparator.comparingInt(PostingList::size));
+        int[] result = lists.get(0).toArray();
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = PostingList.intersect(result, lists.get(i).toArray());
+        }
+        return result;
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static Set<String> trigrams(String token) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= token.length(); i++) {
+            grams.add(token.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    public record Hits(List<Integer> ownerIds, int total) {
+    }
+
+    private record ScoredOwner(IndexedOwner owner, double score) {
+
+        static final Comparator<ScoredOwner> RANKING = Comparator.comparingDouble(ScoredOwner::score).reversed()
+            .thenComparing(hit -> hit.owner().sortKey())
+            .thenComparingInt(hit -> hit.owner().id());
+    }
+
+    /**
+     * Compact, immutable copy of the searchable fields of an owner.
+     */
+    private record IndexedOwner(int id, String sortKey, List<Field> fields) {
+
+        static IndexedOwner of(Owner owner) {
+            List<Field> fields = new ArrayList<>();
+            fields.add(new Field(3.0, tokenize(owner.getLastName())));
+            fields.add(new Field(2.0, tokenize(owner.getFirstName())));
+            for (Pet pet : owner.getPets()) {
+                fields.add(new Field(2.0, tokenize(pet.getName())));
+            }
+            fields.add(new Field(1.5, tokenize(owner.getCity())));
+            fields.add(new Field(1.0, tokenize(owner.getTelephone())));
+            String sortKey = (owner.getLastName() + " " + owner.getFirstName()).toLowerCase(Locale.ROOT);
+            return new IndexedOwner(owner.getId(), sortKey, fields);
+        }
+
+        Set<String> grams() {
+            Set<String> grams = new HashSet<>();
+            for (Field field : fields) {
+                for (String token : field.tokens()) {
+                    grams.add(PREFIX_MARK + token.charAt(0));
+                    if (token.length() >= 2) {
+                        grams.add(PREFIX_MARK + token.substring(0, 2));
+                    }
+                    grams.addAll(trigrams(token));
+                }
+            }
+            return grams;
+        }
+
+        /**
+         * Every term must match at least one field: exact token matches rank above prefix matches,
+         * which rank above substring matches, weighted by the field they were found in.
+         */
+        double score(List<String> terms) {
+            double total = 0;
+            for (String term : terms) {
+                double best = 0;
+                for (Field field : fields) {
+                    best = Math.max(best, field.weight() * field.match(term));
+                }
+                if (best == 0) {
+                    return 0;
+                }
+                total += best;
+            }
+            return total;
+        }
+    }
+
+    private record Field(double weight, List<String> tokens) {
+
+        int match(String term) {
+            int best = 0;
+            for (String token : tokens) {
+                if (token.equals(term)) {
+                    return 3;
+                } else if (token.startsWith(term)) {
+                    best = Math.max(best, 2);
+                } else if (term.length() >= 3 && token.contains(term)) {
+                    best = Math.max(best, 1);
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Sorted, growable array of owner ids.
+     */
+    static final class PostingList {
+
+        private int[] ids = new int[4];
+        private int size;
+
+        boolean add(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return false;
+            }
+            int insertAt = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            size++;
+            return true;
+        }
+
+        boolean remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+
+        static int[] intersect(int[] left, int[] right) {
+            int[] result = new int[Math.min(left.length, right.length)];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < left.length && j < right.length) {
+                if (left[i] < right[j]) {
+                    i++;
+                } else if (left[i] > right[j]) {
+                    j++;
+                } else {
+                    result[n++] = left[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(result, n);
+        }
+    }
+}
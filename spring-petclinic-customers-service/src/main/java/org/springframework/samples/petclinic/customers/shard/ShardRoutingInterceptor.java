@@ -0,0 +1,56 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.shard;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Binds owner requests to the owning shard before the handler (and its transaction) starts:
+ * <code>/owners/{ownerId}/**</code> goes to the shard of that owner, and owner creation to the next
+ * shard in turn. Other requests stay unbound and query every shard.
+ */
+class ShardRoutingInterceptor implements HandlerInterceptor {
+
+    private static final Pattern OWNER_PATH = Pattern.compile("^/owners/(\\d{1,9})(/.*)?$");
+
+    private final Shards shards;
+
+    ShardRoutingInterceptor(Shards shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        Matcher matcher = OWNER_PATH.matcher(path);
+        if (matcher.matches()) {
+            ShardContext.set(shards.ofOwner(Integer.parseInt(matcher.group(1))));
+        } else if ("/owners".equals(path) && "POST".equals(request.getMethod())) {
+            ShardContext.set(shards.forNewOwner());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ShardContext.set(null);
+    }
+}
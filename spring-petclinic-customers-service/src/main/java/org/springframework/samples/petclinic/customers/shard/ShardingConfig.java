@@ -0,0 +1,123 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the auto-configured datasource by one routing to N owner shards.
+ * <p>
+ * When <code>customers.sharding.initialize</code> is set, every shard is created from the same schema
+ * and data scripts, keeps only the owners (and their pets) it owns, and has its identity columns
+ * restarted so that new ids stay congruent to the shard index. This is only automated for HSQLDB;
+ * for MySQL set <code>auto_increment_increment=N</code> and <code>auto_increment_offset</code> per server instead.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "customers.sharding", name = "enabled", havingValue = "true")
+class ShardingConfig implements WebMvcConfigurer {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardingConfig.class);
+
+    private final Shards shards;
+
+    ShardingConfig(Shards shards) {
+        this.shards = shards;
+    }
+
+    @Bean
+    DataSource dataSource(ShardingProperties properties) {
+        List<ShardingProperties.Shard> shardList = properties.shards();
+        if (shardList.isEmpty()) {
+            throw new IllegalStateException("customers.sharding.enabled is set but no customers.sharding.shards are configured");
+        }
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shardList.size(); shard++) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("customers-shard-" + shard);
+            dataSource.setJdbcUrl(shardList.get(shard).url());
+            dataSource.setUsername(shardList.get(shard).username());
+            dataSource.setPassword(shardList.get(shard).password());
+            if (properties.initialize()) {
+                initialize(dataSource, properties, shard, shardList.size());
+            }
+            targets.put(shard, dataSource);
+        }
+        ShardRoutingDataSource routingDataSource = new ShardRoutingDataSource();
+        routingDataSource.setTargetDataSources(targets);
+        routingDataSource.setDefaultTargetDataSource(targets.get(0));
+        routingDataSource.afterPropertiesSet();
+        return routingDataSource;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ShardRoutingInterceptor(shards)).addPathPatterns("/owners", "/owners/**");
+    }
+
+    private static void initialize(DataSource dataSource, ShardingProperties properties, int shard, int count) {
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        try {
+            populator.addScripts(resolver.getResources(properties.schemaLocation()));
+            populator.addScripts(resolver.getResources(properties.dataLocation()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        populator.execute(dataSource);
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        // Ids of the seed data are shared by every shard: new ids must start above all of them
+        int maxOwnerId = maxId(jdbcTemplate, "owners");
+        int maxPetId = maxId(jdbcTemplate, "pets");
+        jdbcTemplate.update("DELETE FROM pets WHERE owner_id IN (SELECT id FROM owners WHERE MOD(id, ?) <> ?)", count, shard);
+        jdbcTemplate.update("DELETE FROM owners WHERE MOD(id, ?) <> ?", count, shard);
+        jdbcTemplate.execute("ALTER TABLE owners ALTER COLUMN id RESTART WITH " + nextId(maxOwnerId, shard, count));
+        jdbcTemplate.execute("ALTER TABLE owners ALTER COLUMN id SET INCREMENT BY " + count);
+        jdbcTemplate.execute("ALTER TABLE pets ALTER COLUMN id RESTART WITH " + nextId(maxPetId, shard, count));
+        jdbcTemplate.execute("ALTER TABLE pets ALTER COLUMN id SET INCREMENT BY " + count);
+        log.info("Initialized owner shard {} of {}", shard, count);
+    }
+
+    private static int maxId(JdbcTemplate jdbcTemplate, String table) {
+        Integer max = jdbcTemplate.queryForObject("SELECT MAX(id) FROM " + table, Integer.class);
+        return max == null ? 0 : max;
+    }
+
+    /**
+     * Smallest id above <code>max</code> that belongs to the shard.
+     */
+    static int nextId(int max, int shard, int count) {
+        int next = max + 1;
+        return next + Math.floorMod(shard - next, count);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.shard;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+
+/**
+ * Typesafe configuration of the owner shards.
+ * When sharding is disabled, the service runs on the single auto-configured datasource.
+ */
+@ConfigurationProperties(prefix = "customers.sharding")
+public record ShardingProperties(
+    boolean enabled,
+    @DefaultValue("true") boolean initialize,
+    @DefaultValue("classpath*:db/hsqldb/schema.sql") String schemaLocation,
+    @DefaultValue("classpath*:db/hsqldb/data.sql") String dataLocation,
+    @DefaultValue List<Shard> shards
+) {
+    public record Shard(
+        String url,
+        String username,
+        String password
+    ) {
+    }
+}
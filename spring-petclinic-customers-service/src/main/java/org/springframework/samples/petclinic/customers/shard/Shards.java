@@ -0,0 +1,123 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.shard;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Routes owners and their pets to shards and runs scatter-gather queries across them.
+ * <p>
+ * Owner ids are interleaved across shards (shard <code>k</code> of <code>N</code> only generates ids
+ * congruent to <code>k</code> modulo <code>N</code>), so the owning shard is derived from the id alone.
+ * With a single shard every method simply runs the action on the calling thread.
+ */
+@Component
+public class Shards implements DisposableBean {
+
+    private final int count;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final ExecutorService executor;
+
+    Shards(ShardingProperties properties) {
+        this.count = properties.enabled() ? Math.max(1, properties.shards().size()) : 1;
+        this.executor = count > 1 ? Executors.newFixedThreadPool(count, runnable -> {
+            Thread thread = new Thread(runnable, "owner-shard-query");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int ofOwner(int ownerId) {
+        return Math.floorMod(ownerId, count);
+    }
+
+    /**
+     * Shard receiving the next new owner, chosen round-robin.
+     */
+    public int forNewOwner() {
+        return Math.floorMod(nextShard.getAndIncrement(), count);
+    }
+
+    public <T> T on(int shard, Supplier<T> action) {
+        Integer previous = ShardContext.current();
+        ShardContext.set(shard);
+        try {
+            return action.get();
+        } finally {
+            ShardContext.set(previous);
+        }
+    }
+
+    /**
+     * Run the query on every shard in parallel and concatenate the results, in shard order.
+     */
+    public <T> List<T> scatter(IntFunction<List<T>> query) {
+        return scatter(IntStream.range(0, count).boxed().toList(), query);
+    }
+
+    /**
+     * Run the query on the given shards in parallel and concatenate the results, in shard order.
+     */
+    public <T> List<T> scatter(Collection<Integer> shards, IntFunction<List<T>> query) {
+        if (executor == null) {
+            return shards.isEmpty() ? List.of() : query.apply(0);
+        }
+        List<Future<List<T>>> futures = new ArrayList<>();
+        for (int shard : shards) {
+            futures.add(executor.submit(() -> on(shard, () -> query.apply(shard))));
+        }
+        List<T> results = new ArrayList<>();
+        for (Future<List<T>> future : futures) {
+            results.addAll(await(future));
+        }
+        return results;
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying the shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Shard query failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
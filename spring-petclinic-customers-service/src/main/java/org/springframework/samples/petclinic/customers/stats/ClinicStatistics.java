@@ -0,0 +1,307 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.stats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent.ChangeType;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent.EntityType;
+import org.springframework.samples.petclinic.customers.model.ChangeEventRepository;
+import org.springframework.samples.petclinic.customers.model.KeyCount;
+import org.springframework.samples.petclinic.customers.model.OwnerRepository;
+import org.springframework.samples.petclinic.customers.model.PetRepository;
+import org.springframework.samples.petclinic.customers.shard.Shards;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Owners per city, pets per type and new owners per month, kept as in-memory counters.
+ * <p>
+ * Writers report their deltas, along with the change recorded in the change feed, from within their transaction
+ * and the counters are only bumped once it commits, so reads never cost more than a copy of the counters.
+ * {@link #rebuild()} recomputes everything with aggregate queries, at startup, every
+ * <code>customers.statistics.rebuild-interval</code> and on demand. Each shard is counted in a single repeatable
+ * read transaction, which also reads which of the changes committed by this instance around the rebuild it sees:
+ * only the deltas of the other changes are applied to the rebuilt counters. Counters only see the writes of this
+ * instance between two rebuilds.
+ * <p>
+ * Owners have no creation date, so new owners per month are counted from the <code>OWNER CREATED</code>
+ * changes of the change feed: owners loaded by the seed data or created before the change feed existed
+ * are not counted in any month.
+ */
+@Component
+public class ClinicStatistics implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ClinicStatistics.class);
+
+    private final OwnerRepository ownerRepository;
+    private final PetRepository petRepository;
+    private final ChangeEventRepository changeEventRepository;
+    private final Shards shards;
+    private final TransactionTemplate snapshotTemplate;
+    private final Duration rebuildInterval;
+    private final ScheduledExecutorService scheduler;
+
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private volatile Counters counters = new Counters();
+    // Changes not committed yet, per shard
+    private final List<Set<Long>> inFlight = new ArrayList<>();
+    // Deltas committed since the running rebuild started, null when no rebuild is running
+    private volatile Queue<Delta> journal;
+
+    ClinicStatistics(OwnerRepository ownerRepository, PetRepository petRepository,
+                     ChangeEventRepository changeEventRepository, Shards shards,
+                     PlatformTransactionManager transactionManager, StatisticsProperties properties) {
+        this.ownerRepository = ownerRepository;
+        this.petRepository = petRepository;
+        this.changeEventRepository = changeEventRepository;
+        this.shards = shards;
+        this.snapshotTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshotTemplate.setReadOnly(true);
+        this.rebuildInterval = properties.rebuildInterval();
+        for (int shard = 0; shard < shards.count(); shard++) {
+            inFlight.add(ConcurrentHashMap.newKeySet());
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "clinic-statistics");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void ownerCreated(ChangeEvent change, String city) {
+        afterCommit(change, counters -> {
+            counters.increment(counters.ownersPerCity, city, 1);
+            counters.increment(counters.newOwnersPerMonth, YearMonth.now().toString(), 1);
+        });
+    }
+
+    public void ownerUpdated(ChangeEvent change, String previousCity, String city) {
+        if (!Objects.equals(previousCity, city)) {
+            afterCommit(change, counters -> {
+                counters.increment(counters.ownersPerCity, previousCity, -1);
+                counters.increment(counters.ownersPerCity, city, 1);
+            });
+        }
+    }
+
+    /**
+     * @param previousType type of the pet before the change, <code>null</code> for a new pet
+     */
+    public void petSaved(ChangeEvent change, String previousType, String type) {
+        if (!Objects.equals(previousType, type)) {
+            afterCommit(change, counters -> {
+                if (previousType != null) {
+                    counters.increment(counters.petsPerType, previousType, -1);
+                }
+                counters.increment(counters.petsPerType, type, 1);
+            });
+        }
+    }
+
+    public Map<String, Long> ownersPerCity() {
+        return Counters.snapshot(counters.ownersPerCity);
+    }
+
+    public Map<String, Long> petsPerType() {
+        return Counters.snapshot(counters.petsPerType);
+    }
+
+    public Map<String, Long> newOwnersPerMonth() {
+        return Counters.snapshot(counters.newOwnersPerMonth);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void schedule() {
+        rebuild();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                rebuild();
+            } catch (RuntimeException e) {
+                log.warn("Unable to rebuild the clinic statistics", e);
+            }
+        }, rebuildInterval.toMillis(), rebuildInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        Queue<Delta> journal = new ConcurrentLinkedQueue<>();
+        this.journal = journal;
+        List<Snapshot> snapshots;
+        try {
+            snapshots = shards.scatter(shard -> List.of(snapshotTemplate.execute(status -> snapshot(shard, journal))));
+        } catch (RuntimeException e) {
+            this.journal = null;
+            throw e;
+        }
+        Counters rebuilt = new Counters();
+        for (int shard = 0; shard < snapshots.size(); shard++) {
+            Snapshot snapshot = snapshots.get(shard);
+            snapshot.cities().forEach(row -> rebuilt.increment(rebuilt.ownersPerCity, row.key(), row.count()));
+            snapshot.types().forEach(row -> rebuilt.increment(rebuilt.petsPerType, row.key(), row.count()));
+            for (Object[] row : snapshot.months()) {
+                String month = YearMonth.of(((Number) row[0]).intValue(), ((Number) row[1]).intValue()).toString();
+                rebuilt.increment(rebuilt.newOwnersPerMonth, month, ((Number) row[2]).longValue());
+            }
+            for (long changeId : snapshot.visibleChanges()) {
+                rebuilt.counted.add(new Change(shard, changeId));
+            }
+        }
+        swapLock.writeLock().lock();
+        try {
+            journal.forEach(rebuilt::apply);
+            this.counters = rebuilt;
+            this.journal = null;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        log.info("Clinic statistics rebuilt in {} ms", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Count the shard, and find which of the changes committed by this instance since the rebuild started are
+     * already counted. The changes committed afterwards are not visible to the transaction, so they are not counted.
+     */
+    private Snapshot snapshot(int shard, Queue<Delta> journal) {
+        List<KeyCount> cities = ownerRepository.countByCity();
+        List<KeyCount> types = petRepository.countByType();
+        List<Object[]> months = changeEventRepository.countByMonth(EntityType.OWNER, ChangeType.CREATED);
+        // Journaled changes, and the changes which may have committed without being journaled yet
+        Set<Long> candidates = new HashSet<>(inFlight.get(shard));
+        for (Delta delta : journal) {
+            if (delta.change().shard() == shard) {
+                candidates.add(delta.change().id());
+            }
+        }
+        Set<Long> visible = candidates.isEmpty() ? Set.of() : new HashSet<>(changeEventRepository.findIdsByIdIn(candidates));
+        return new Snapshot(cities, types, months, visible);
+    }
+
+    private void afterCommit(ChangeEvent change, Consumer<Counters> update) {
+        Delta delta = new Delta(new Change(shards.ofOwner(change.getOwnerId()), change.getId()), update);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(delta);
+            return;
+        }
+        Set<Long> pending = inFlight.get(delta.change().shard());
+        pending.add(delta.change().id());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                // Journal the delta before it stops being in flight, so that a rebuild always checks it
+                if (status == STATUS_COMMITTED) {
+                    apply(delta);
+                }
+                pending.remove(delta.change().id());
+            }
+        });
+    }
+
+    private void apply(Delta delta) {
+        // Shared lock: writers only exclude the swap of the counters, not each other
+        swapLock.readLock().lock();
+        try {
+            counters.apply(delta);
+            Queue<Delta> journal = this.journal;
+            if (journal != null) {
+                journal.add(delta);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Change recorded in the change feed, whose id is unique within its shard.
+     */
+    private record Change(int shard, long id) {
+    }
+
+    private record Delta(Change change, Consumer<Counters> update) {
+    }
+
+    /**
+     * @param visibleChanges changes of this instance committed during the rebuild and already counted by the aggregates
+     */
+    private record Snapshot(List<KeyCount> cities, List<KeyCount> types, List<Object[]> months, Set<Long> visibleChanges) {
+    }
+
+    private static final class Counters {
+
+        private static final String UNKNOWN = "unknown";
+
+        final Map<String, LongAdder> ownersPerCity = new ConcurrentHashMap<>();
+        final Map<String, LongAdder> petsPerType = new ConcurrentHashMap<>();
+        final Map<String, LongAdder> newOwnersPerMonth = new ConcurrentHashMap<>();
+        // Changes already counted by the aggregate queries, whose delta may still be reported once
+        final Set<Change> counted = ConcurrentHashMap.newKeySet();
+
+        void apply(Delta delta) {
+            if (!counted.remove(delta.change())) {
+                delta.update().accept(this);
+            }
+        }
+
+        void increment(Map<String, LongAdder> counter, String key, long delta) {
+            counter.computeIfAbsent(key == null ? UNKNOWN : key, k -> new LongAdder()).add(delta);
+        }
+
+        static Map<String, Long> snapshot(Map<String, LongAdder> counter) {
+            Map<String, Long> snapshot = new TreeMap<>();
+            counter.forEach((key, value) -> {
+                long count = value.sum();
+                if (count > 0) {
+                    snapshot.put(key, count);
+                }
+            });
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.web;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent.ChangeType;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent.EntityType;
+import org.springframework.samples.petclinic.customers.model.ChangeEventRepository;
+import org.springframework.samples.petclinic.customers.shard.Shards;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+/**
+ * Transactional outbox for owner and pet changes, read back as a cursor-based feed.
+ * <p>
+ * {@link #record} must be called inside the transaction that performs the change. Once that
+ * transaction commits, the pending long-polls waiting for a newer cursor are completed.
+ * <p>
+ * Each owner shard has its own outbox, so the cursor holds one position per shard
+ * (<code>12.40.7</code>); a single position is accepted as the position of every shard.
+ * <p>
+ * Positions are identity ids, which are allocated at insert time but become visible at commit
+ * time, so a later id may be visible before an earlier one. A page therefore never goes past
+ * a change still in flight in this instance, nor past a gap in the ids until the change after
+ * the gap is older than {@link #VISIBILITY_LAG}: by then the missing id is assumed to belong to
+ * a rolled back transaction rather than to a transaction of another instance still committing.
+ */
+@Component
+public class ChangeFeed implements DisposableBean {
+
+    static final Duration VISIBILITY_LAG = Duration.ofSeconds(5);
+
+    private final ChangeEventRepository changeEventRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Shards shards;
+    private final Set<PendingPoll> pendingPolls = ConcurrentHashMap.newKeySet();
+    private final List<NavigableSet<Long>> inFlight = new ArrayList<>();
+    private final AtomicLongArray committed;
+    private final AtomicBoolean wakeUpScheduled = new AtomicBoolean();
+    private final ExecutorService wakeUpExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "change-feed-wakeup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    ChangeFeed(ChangeEventRepository changeEventRepository, ApplicationEventPublisher eventPublisher, Shards shards) {
+        this.changeEventRepository = changeEventRepository;
+        this.eventPublisher = eventPublisher;
+        this.shards = shards;
+        for (int shard = 0; shard < shards.count(); shard++) {
+            inFlight.add(new ConcurrentSkipListSet<>());
+        }
+        this.committed = new AtomicLongArray(shards.count());
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public ChangeEvent record(EntityType entityType, int entityId, int ownerId, ChangeType changeType) {
+        ChangeEvent change = changeEventRepository.save(new ChangeEvent(entityType, entityId, ownerId, changeType));
+        int shard = shards.ofOwner(ownerId);
+        long id = change.getId();
+        inFlight.get(shard).add(id);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                inFlight.get(shard).remove(id);
+                if (status == STATUS_COMMITTED) {
+                    committed.accumulateAndGet(shard, id, Math::max);
+                    wakeUp();
+                }
+            }
+        });
+        eventPublisher.publishEvent(change);
+        return change;
+    }
+
+    public ChangeFeedPage changesSince(String cursor, int limit) {
+        return changesSince(parseCursor(cursor), limit);
+    }
+
+    private ChangeFeedPage changesSince(long[] since, int limit) {
+        Date settled = new Date(System.currentTimeMillis() - VISIBILITY_LAG.toMillis());
+        List<ShardChange> candidates = shards.scatter(shard -> visible(shard, since[shard],
+            changeEventRepository.findByIdGreaterThanOrderByIdAsc(since[shard], Limit.of(limit)), settled));
+        List<ShardChange> page = merge(candidates, limit);
+        // Only move the cursor of a shard past the changes actually returned, which form a prefix of its changes
+        long[] next = since.clone();
+        for (ShardChange candidate : page) {
+            next[candidate.shard()] = candidate.change().getId();
+        }
+        return new ChangeFeedPage(page.stream().map(ShardChange::change).toList(), formatCursor(next));
+    }
+
+    /**
+     * Merge the changes of the shards roughly by creation time, only ever taking the next change of a shard
+     * in id order: <code>createdAt</code> is set before the insert, so a higher id may have an earlier time,
+     * and handing it out first would move the cursor of its shard past the lower id.
+     */
+    private static List<ShardChange> merge(List<ShardChange> candidates, int limit) {
+        Map<Integer, Deque<ShardChange>> byShard = new TreeMap<>();
+        for (ShardChange candidate : candidates) {
+            byShard.computeIfAbsent(candidate.shard(), shard -> new ArrayDeque<>()).add(candidate);
+        }
+        List<ShardChange> page = new ArrayList<>(Math.min(limit, candidates.size()));
+        while (page.size() < limit) {
+            Deque<ShardChange> next = null;
+            for (Deque<ShardChange> changes : byShard.values()) {
+                if (!changes.isEmpty() && (next == null || ShardChange.ORDER.compare(changes.peek(), next.peek()) < 0)) {
+                    next = changes;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            page.add(next.poll());
+        }
+        return page;
+    }
+
+    /**
+     * Leading run of the changes (in id order) that can be handed out without risking to skip an
+     * id that is allocated but not committed yet.
+     */
+    private List<ShardChange> visible(int shard, long since, List<ChangeEvent> changes, Date settled) {
+        Long oldestInFlight = inFlight.get(shard).ceiling(Long.MIN_VALUE);
+        List<ShardChange> visible = new ArrayList<>();
+        long previous = since;
+        for (ChangeEvent change : changes) {
+            if (oldestInFlight != null && change.getId() >= oldestInFlight) {
+                break;
+            }
+            // An empty cursor has no predecessor to wait for
+            if (previous > 0 && change.getId() != previous + 1 && change.getCreatedAt().after(settled)) {
+                break;
+            }
+            visible.add(new ShardChange(shard, change));
+            previous = change.getId();
+        }
+        return visible;
+    }
+
+    /**
+     * Answer immediately when changes are available after the cursor, otherwise wait until one
+     * is committed or the timeout expires (in which case an empty page is returned).
+     */
+    public DeferredResult<ChangeFeedPage> poll(String cursor, int limit, Duration timeout) {
+        long[] since = parseCursor(cursor);
+        DeferredResult<ChangeFeedPage> result = new DeferredResult<>(timeout.toMillis(),
+            () -> new ChangeFeedPage(List.of(), formatCursor(since)));
+        PendingPoll poll = new PendingPoll(since, limit, result);
+        // Register before reading so that a commit racing with the read still wakes us up
+        pendingPolls.add(poll);
+        result.onCompletion(() -> pendingPolls.remove(poll));
+        tryComplete(poll);
+        return result;
+    }
+
+    /**
+     * Re-read the feed for the pending polls behind a committed change, off the committing thread.
+     * Commits arriving while a pass is queued are served by that same pass.
+     */
+    private void wakeUp() {
+        if (pendingPolls.isEmpty() || !wakeUpScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        wakeUpExecutor.execute(() -> {
+            wakeUpScheduled.set(false);
+            for (PendingPoll poll : pendingPolls) {
+                if (isBehind(poll.since())) {
+                    tryComplete(poll);
+                }
+            }
+        });
+    }
+
+    private boolean isBehind(long[] since) {
+        for (int shard = 0; shard < since.length; shard++) {
+            if (since[shard] < committed.get(shard)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void tryComplete(PendingPoll poll) {
+        if (poll.result().isSetOrExpired()) {
+            return;
+        }
+        ChangeFeedPage page = changesSince(poll.since(), poll.limit());
+        if (!page.changes().isEmpty()) {
+            poll.result().setResult(page);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        wakeUpExecutor.shutdownNow();
+    }
+
+    private long[] parseCursor(String cursor) {
+        long[] positions = new long[shards.count()];
+        if (cursor == null || cursor.isBlank()) {
+            return positions;
+        }
+        String[] parts = cursor.trim().split("\\.");
+        if (parts.length != 1 && parts.length != positions.length) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid change feed cursor " + cursor);
+        }
+        try {
+            for (int shard = 0; shard < positions.length; shard++) {
+                positions[shard] = Long.parseLong(parts[parts.length == 1 ? 0 : shard]);
+            }
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid change feed cursor " + cursor);
+        }
+        return positions;
+    }
+
+    private static String formatCursor(long[] positions) {
+        return Arrays.stream(positions).mapToObj(String::valueOf).collect(Collectors.joining("."));
+    }
+
+    public record ChangeFeedPage(
+        List<ChangeEvent> changes,
+        String next
+    ) {
+    }
+
+    private record ShardChange(int shard, ChangeEvent change) {
+
+        /**
+         * Order of the heads of the shards, see {@link #merge}
+         */
+        static final Comparator<ShardChange> ORDER = Comparator
+            .comparing((ShardChange candidate) -> candidate.change().getCreatedAt())
+            .thenComparingInt(ShardChange::shard)
+            .thenComparing(candidate -> candidate.change().getId());
+    }
+
+    private record PendingPoll(long[] since, int limit, DeferredResult<ChangeFeedPage> result) {
+    }
+}
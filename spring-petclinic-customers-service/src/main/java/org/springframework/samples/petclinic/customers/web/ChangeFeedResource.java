@@ -0,0 +1,57 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.web;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import org.springframework.samples.petclinic.customers.web.ChangeFeed.ChangeFeedPage;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+
+/**
+ * Change feed letting downstream caches refresh incrementally instead of reloading every owner.
+ * Consumers pass back the <code>next</code> cursor of the previous page as <code>since</code>;
+ * with <code>wait</code> set, the request is held open until a change is committed.
+ */
+@RequestMapping("/changes")
+@RestController
+class ChangeFeedResource {
+
+    private final ChangeFeed changeFeed;
+
+    ChangeFeedResource(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    @GetMapping
+    public DeferredResult<ChangeFeedPage> changes(
+        @RequestParam(value = "since", required = false) String since,
+        @RequestParam(value = "limit", defaultValue = "100") @Min(1) @Max(1000) int limit,
+        @RequestParam(value = "wait", defaultValue = "0") @Min(0) @Max(30) int waitSeconds) {
+
+        if (waitSeconds == 0) {
+            DeferredResult<ChangeFeedPage> result = new DeferredResult<>();
+            result.setResult(changeFeed.changesSince(since, limit));
+            return result;
+        }
+        return changeFeed.poll(since, limit, Duration.ofSeconds(waitSeconds));
+    }
+}
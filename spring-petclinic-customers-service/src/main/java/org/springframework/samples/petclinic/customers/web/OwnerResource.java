@@ -17,15 +17,26 @@ package org.springframework.samples.petclinic.customers.web;
 
 import io.micrometer.core.annotation.Timed;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent.ChangeType;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent.EntityType;
 import org.springframework.samples.petclinic.customers.model.Owner;
 import org.springframework.samples.petclinic.customers.model.OwnerRepository;
+import org.springframework.samples.petclinic.customers.search.OwnerSearch;
+import org.springframework.samples.petclinic.customers.search.OwnerSearch.OwnerSearchResult;
+import org.springframework.samples.petclinic.customers.shard.Shards;
+import org.springframework.samples.petclinic.customers.stats.ClinicStatistics;
 import org.springframework.samples.petclinic.customers.web.mapper.OwnerEntityMapper;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 
@@ -45,10 +56,19 @@ class OwnerResource {
 
     private final OwnerRepository ownerRepository;
     private final OwnerEntityMapper ownerEntityMapper;
+    private final ChangeFeed changeFeed;
+    private final OwnerSearch ownerSearch;
+    private final Shards shards;
+    private final ClinicStatistics statistics;
 
-    OwnerResource(OwnerRepository ownerRepository, OwnerEntityMapper ownerEntityMapper) {
+    OwnerResource(OwnerRepository ownerRepository, OwnerEntityMapper ownerEntityMapper, ChangeFeed changeFeed,
+                  OwnerSearch ownerSearch, Shards shards, ClinicStatistics statistics) {
         this.ownerRepository = ownerRepository;
         this.ownerEntityMapper = ownerEntityMapper;
+        this.changeFeed = changeFeed;
+        this.ownerSearch = ownerSearch;
+        this.shards = shards;
+        this.statistics = statistics;
     }
 
     /**
@@ -56,9 +76,12 @@ class OwnerResource {
      */
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
+    @Transactional
     public Owner createOwner(@Valid @RequestBody OwnerRequest ownerRequest) {
-        Owner owner = ownerEntityMapper.map(new Owner(), ownerRequest);
-        return ownerRepository.save(owner);
+        Owner owner = ownerRepository.save(ownerEntityMapper.map(new Owner(), ownerRequest));
+        ChangeEvent change = changeFeed.record(EntityType.OWNER, owner.getId(), owner.getId(), ChangeType.CREATED);
+        statistics.ownerCreated(change, owner.getCity());
+        return owner;
     }
 
     /**
@@ -74,7 +97,23 @@ class OwnerResource {
      */
     @GetMapping
     public List<Owner> findAll() {
-        return ownerRepository.findAll();
+        if (shards.count() == 1) {
+            return ownerRepository.findAll();
+        }
+        List<Owner> owners = new ArrayList<>(shards.scatter(shard -> ownerRepository.findAll()));
+        owners.sort(Comparator.comparing(Owner::getId));
+        return owners;
+    }
+
+    /**
+     * Search Owners by partial name, phone number, city or pet name
+     */
+    @GetMapping(value = "/search")
+    public OwnerSearchResult search(
+        @RequestParam("q") String query,
+        @RequestParam(value = "page", defaultValue = "0") @Min(0) int page,
+        @RequestParam(value = "size", defaultValue = "20") @Min(1) @Max(100) int size) {
+        return ownerSearch.search(query, page, size);
     }
 
     /**
@@ -82,11 +121,15 @@ class OwnerResource {
      */
     @PutMapping(value = "/{ownerId}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
+    @Transactional
     public void updateOwner(@PathVariable("ownerId") @Min(1) int ownerId, @Valid @RequestBody OwnerRequest ownerRequest) {
         final Owner ownerModel = ownerRepository.findById(ownerId).orElseThrow(() -> new ResourceNotFoundException("Owner " + ownerId + " not found"));
 
+        final String previousCity = ownerModel.getCity();
         ownerEntityMapper.map(ownerModel, ownerRequest);
         log.info("Saving owner {}", ownerModel);
         ownerRepository.save(ownerModel);
+        ChangeEvent change = changeFeed.record(EntityType.OWNER, ownerId, ownerId, ChangeType.UPDATED);
+        statistics.ownerUpdated(change, previousCity, ownerModel.getCity());
     }
 }
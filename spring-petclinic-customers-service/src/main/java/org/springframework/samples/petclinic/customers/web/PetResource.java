@@ -21,6 +21,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.samples.petclinic.customers.model.*;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent.ChangeType;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent.EntityType;
+import org.springframework.samples.petclinic.customers.stats.ClinicStatistics;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -40,10 +44,15 @@ class PetResource {
 
     private final PetRepository petRepository;
     private final OwnerRepository ownerRepository;
+    private final ChangeFeed changeFeed;
+    private final ClinicStatistics statistics;
 
-    PetResource(PetRepository petRepository, OwnerRepository ownerRepository) {
+    PetResource(PetRepository petRepository, OwnerRepository ownerRepository, ChangeFeed changeFeed,
+                ClinicStatistics statistics) {
         this.petRepository = petRepository;
         this.ownerRepository = ownerRepository;
+        this.changeFeed = changeFeed;
+        this.statistics = statistics;
     }
 
     @GetMapping("/petTypes")
@@ -53,6 +62,7 @@ class PetResource {
 
     @PostMapping("/owners/{ownerId}/pets")
     @ResponseStatus(HttpStatus.CREATED)
+    @Transactional
     public Pet processCreationForm(
         @RequestBody PetRequest petRequest,
         @PathVariable("ownerId") @Min(1) int ownerId) {
@@ -62,19 +72,21 @@ class PetResource {
 
         final Pet pet = new Pet();
         owner.addPet(pet);
-        return save(pet, petRequest);
+        return save(pet, petRequest, ChangeType.CREATED);
     }
 
     @PutMapping("/owners/*/pets/{petId}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
+    @Transactional
     public void processUpdateForm(@RequestBody PetRequest petRequest) {
         int petId = petRequest.id();
         Pet pet = findPetById(petId);
-        save(pet, petRequest);
+        save(pet, petRequest, ChangeType.UPDATED);
     }
 
-    private Pet save(final Pet pet, final PetRequest petRequest) {
+    private Pet save(final Pet pet, final PetRequest petRequest, final ChangeType changeType) {
 
+        final String previousType = pet.getType() == null ? null : pet.getType().getName();
         pet.setName(petRequest.name());
         pet.setBirthDate(petRequest.birthDate());
 
@@ -82,7 +94,10 @@ class PetResource {
             .ifPresent(pet::setType);
 
         log.info("Saving pet {}", pet);
-        return petRepository.save(pet);
+        Pet savedPet = petRepository.save(pet);
+        ChangeEvent change = changeFeed.record(EntityType.PET, savedPet.getId(), savedPet.getOwner().getId(), changeType);
+        statistics.petSaved(change, previousType, savedPet.getType() == null ? null : savedPet.getType().getName());
+        return savedPet;
     }
 
     @GetMapping("owners/*/pets/{petId}")
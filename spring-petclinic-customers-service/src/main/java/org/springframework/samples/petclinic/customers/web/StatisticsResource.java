@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.web;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.customers.stats.ClinicStatistics;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Dashboard statistics, served from pre-aggregated counters rather than computed per request.
+ */
+@RequestMapping("/stats")
+@RestController
+@Timed("petclinic.stats")
+class StatisticsResource {
+
+    private final ClinicStatistics statistics;
+
+    StatisticsResource(ClinicStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @GetMapping("/owners-per-city")
+    public Map<String, Long> ownersPerCity() {
+        return statistics.ownersPerCity();
+    }
+
+    @GetMapping("/pets-per-type")
+    public Map<String, Long> petsPerType() {
+        return statistics.petsPerType();
+    }
+
+    @GetMapping("/new-owners-per-month")
+    public Map<String, Long> newOwnersPerMonth() {
+        return statistics.newOwnersPerMonth();
+    }
+
+    /**
+     * Recompute every counter from the database, e.g. after data was changed outside of this service.
+     */
+    @PostMapping("/rebuild")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void rebuild() {
+        statistics.rebuild();
+    }
+}
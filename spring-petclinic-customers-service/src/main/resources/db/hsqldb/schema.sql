@@ -1,3 +1,4 @@
+DROP TABLE change_events IF EXISTS;
 DROP TABLE pets IF EXISTS;
 DROP TABLE types IF EXISTS;
 DROP TABLE owners IF EXISTS;
@@ -28,3 +29,12 @@ CREATE TABLE pets (
 ALTER TABLE pets ADD CONSTRAINT fk_pets_owners FOREIGN KEY (owner_id) REFERENCES owners (id);
 ALTER TABLE pets ADD CONSTRAINT fk_pets_types FOREIGN KEY (type_id) REFERENCES types (id);
 CREATE INDEX pets_name ON pets (name);
+
+CREATE TABLE change_events (
+  id          BIGINT IDENTITY PRIMARY KEY,
+  entity_type VARCHAR(10) NOT NULL,
+  entity_id   INTEGER NOT NULL,
+  owner_id    INTEGER NOT NULL,
+  change_type VARCHAR(10) NOT NULL,
+  created_at  TIMESTAMP NOT NULL
+);
@@ -28,3 +28,12 @@ CREATE TABLE IF NOT EXISTS pets (
   FOREIGN KEY (owner_id) REFERENCES owners(id),
   FOREIGN KEY (type_id) REFERENCES types(id)
 ) engine=InnoDB;
+
+CREATE TABLE IF NOT EXISTS change_events (
+  id BIGINT UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  entity_type VARCHAR(10) NOT NULL,
+  entity_id INT(4) UNSIGNED NOT NULL,
+  owner_id INT(4) UNSIGNED NOT NULL,
+  change_type VARCHAR(10) NOT NULL,
+  created_at DATETIME NOT NULL
+) engine=InnoDB;
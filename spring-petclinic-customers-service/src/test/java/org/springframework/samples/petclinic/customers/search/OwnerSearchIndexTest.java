@@ -0,0 +1,95 @@
+package org.springframework.samples.petclinic.customers.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.customers.model.Owner;
+import org.springframework.samples.petclinic.customers.model.Pet;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OwnerSearchIndexTest {
+
+    private final OwnerSearchIndex index = new OwnerSearchIndex();
+
+    @BeforeEach
+    void setup() {
+        index.index(owner(1, "George", "Franklin", "Madison", "6085551023", "Leo"));
+        index.index(owner(2, "Betty", "Davis", "Sun Prairie", "6085551749", "Basil"));
+        index.index(owner(3, "Harold", "Davis", "Windsor", "6085553198", "Iggy"));
+        index.index(owner(4, "Maria", "Escobito", "Madison", "6085557683", "Mulligan"));
+    }
+
+    @Test
+    void shouldFindOwnersBySubstringOfLastName() {
+        OwnerSearchIndex.Hits hits = index.search("avi", 0, 10);
+
+        assertThat(hits.total()).isEqualTo(2);
+        assertThat(hits.ownerIds()).containsExactly(2, 3);
+    }
+
+    @Test
+    void shouldReturnNoOwnersAfterTheLastMatch() {
+        OwnerSearchIndex.Hits hits = index.search("avi", 30000000L * 100, 100);
+
+        assertThat(hits.total()).isEqualTo(2);
+        assertThat(hits.ownerIds()).isEmpty();
+    }
+
+    @Test
+    void shouldFindOwnersByPetNameCityAndPhone() {
+        assertThat(index.search("basil", 0, 10).ownerIds()).containsExactly(2);
+        assertThat(index.search("madison", 0, 10).ownerIds()).containsExactly(4, 1);
+        assertThat(index.search("7683", 0, 10).ownerIds()).containsExactly(4);
+    }
+
+    @Test
+    void shouldRequireEveryTermToMatch() {
+        assertThat(index.search("davis iggy", 0, 10).ownerIds()).containsExactly(3);
+        assertThat(index.search("davis leo", 0, 10).ownerIds()).isEmpty();
+    }
+
+    @Test
+    void shouldRankExactMatchesFirst() {
+        index.index(owner(5, "Madison", "Smith", "Monona", "6085550000", "Rex"));
+
+        assertThat(index.search("madison", 0, 10).ownerIds()).containsExactly(5, 4, 1);
+    }
+
+    @Test
+    void shouldMatchShortTermsOnPrefixOnly() {
+        assertThat(index.search("ha", 0, 10).ownerIds()).containsExactly(3);
+        assertThat(index.search("ar", 0, 10).ownerIds()).isEmpty();
+    }
+
+    @Test
+    void shouldPaginateResults() {
+        OwnerSearchIndex.Hits hits = index.search("608", 1, 2);
+
+        assertThat(hits.total()).isEqualTo(4);
+        assertThat(hits.ownerIds()).hasSize(2);
+    }
+
+    @Test
+    void shouldReplaceOwnerOnReindex() {
+        index.index(owner(2, "Betty", "Jones", "Sun Prairie", "6085551749", "Basil"));
+
+        assertThat(index.search("davis", 0, 10).ownerIds()).containsExactly(3);
+        assertThat(index.search("jones", 0, 10).ownerIds()).containsExactly(2);
+        assertThat(index.size()).isEqualTo(4);
+    }
+
+    private static Owner owner(int id, String firstName, String lastName, String city, String telephone, String petName) {
+        Owner owner = new Owner();
+        ReflectionTestUtils.setField(owner, "id", id);
+        owner.setFirstName(firstName);
+        owner.setLastName(lastName);
+        owner.setAddress("1 Main St.");
+        owner.setCity(city);
+        owner.setTelephone(telephone);
+        Pet pet = new Pet();
+        pet.setName(petName);
+        owner.addPet(pet);
+        return owner;
+    }
+}
@@ -0,0 +1,65 @@
+package org.springframework.samples.petclinic.customers.shard;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.customers.model.OwnerRepository;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({"test", "sharded"})
+class ShardedOwnersTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    Shards shards;
+
+    @Autowired
+    OwnerRepository ownerRepository;
+
+    @Test
+    void shouldSpreadSeedOwnersAcrossShards() throws Exception {
+        assertThat(shards.count()).isEqualTo(3);
+        for (int shard = 0; shard < shards.count(); shard++) {
+            int current = shard;
+            assertThat(shards.on(shard, () -> ownerRepository.findAll()))
+                .isNotEmpty()
+                .allMatch(owner -> shards.ofOwner(owner.getId()) == current);
+        }
+
+        mvc.perform(get("/owners").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].id").value(1))
+            .andExpect(jsonPath("$[9].id").value(10));
+    }
+
+    @Test
+    void shouldStoreNewOwnerOnTheShardOfItsId() throws Exception {
+        String response = mvc.perform(post("/owners")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {"firstName": "Jane", "lastName": "Doe", "address": "1 Main St.", "city": "Madison", "telephone": "6085550000"}
+                    """))
+            .andExpect(status().isCreated())
+            .andReturn().getResponse().getContentAsString();
+        int ownerId = JsonPath.read(response, "$.id");
+
+        assertThat(shards.on(shards.ofOwner(ownerId), () -> ownerRepository.findById(ownerId))).isPresent();
+        mvc.perform(get("/owners/" + ownerId).accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.lastName").value("Doe"));
+    }
+}
@@ -0,0 +1,150 @@
+package org.springframework.samples.petclinic.customers.stats;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent.ChangeType;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent.EntityType;
+import org.springframework.samples.petclinic.customers.model.ChangeEventRepository;
+import org.springframework.samples.petclinic.customers.model.KeyCount;
+import org.springframework.samples.petclinic.customers.model.OwnerRepository;
+import org.springframework.samples.petclinic.customers.model.PetRepository;
+import org.springframework.samples.petclinic.customers.shard.Shards;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class ClinicStatisticsTest {
+
+    private final OwnerRepository ownerRepository = mock(OwnerRepository.class);
+    private final PetRepository petRepository = mock(PetRepository.class);
+    private final ChangeEventRepository changeEventRepository = mock(ChangeEventRepository.class);
+    private final Shards shards = mock(Shards.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    private ClinicStatistics statistics;
+
+    private final String thisMonth = YearMonth.now().toString();
+
+    private long nextChangeId = 100;
+
+    @BeforeEach
+    void setup() {
+        given(shards.count()).willReturn(1);
+        given(transactionManager.getTransaction(any())).willReturn(new SimpleTransactionStatus());
+        given(shards.scatter(any(IntFunction.class)))
+            .willAnswer(invocation -> ((IntFunction<?>) invocation.getArgument(0)).apply(0));
+        given(ownerRepository.countByCity()).willReturn(List.of(new KeyCount("Madison", 4L), new KeyCount("Windsor", 1L)));
+        given(petRepository.countByType()).willReturn(List.of(new KeyCount("cat", 3L)));
+        given(changeEventRepository.countByMonth(EntityType.OWNER, ChangeType.CREATED))
+            .willReturn(List.<Object[]>of(new Object[]{2024, 3, 2L}));
+        statistics = new ClinicStatistics(ownerRepository, petRepository, changeEventRepository, shards,
+            transactionManager, new StatisticsProperties(Duration.ofHours(1)));
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void shouldCountOwnersAndPets() {
+        statistics.ownerCreated(change(), "Madison");
+        statistics.ownerCreated(change(), "Madison");
+        statistics.ownerUpdated(change(), "Madison", "Windsor");
+        statistics.ownerUpdated(change(), "Windsor", "Windsor");
+        statistics.petSaved(change(), null, "dog");
+        statistics.petSaved(change(), "dog", "cat");
+
+        assertThat(statistics.ownersPerCity()).containsExactly(Map.entry("Madison", 1L), Map.entry("Windsor", 1L));
+        assertThat(statistics.petsPerType()).containsExactly(Map.entry("cat", 1L));
+        assertThat(statistics.newOwnersPerMonth()).containsExactly(Map.entry(thisMonth, 2L));
+    }
+
+    @Test
+    void shouldOnlyCountOnceTheTransactionCommits() {
+        TransactionSynchronizationManager.initSynchronization();
+        statistics.ownerCreated(change(), "Madison");
+
+        assertThat(statistics.ownersPerCity()).isEmpty();
+
+        commit();
+        assertThat(statistics.ownersPerCity()).containsExactly(Map.entry("Madison", 1L));
+    }
+
+    @Test
+    void shouldRebuildEveryCounterFromTheDatabase() {
+        statistics.ownerCreated(change(), "Sun Prairie");
+
+        statistics.rebuild();
+
+        assertThat(statistics.ownersPerCity()).containsExactly(Map.entry("Madison", 4L), Map.entry("Windsor", 1L));
+        assertThat(statistics.petsPerType()).containsExactly(Map.entry("cat", 3L));
+        assertThat(statistics.newOwnersPerMonth()).containsExactly(Map.entry("2024-03", 2L));
+    }
+
+    @Test
+    void shouldKeepTheChangesCommittedDuringRebuild() {
+        given(petRepository.countByType()).willAnswer(invocation -> {
+            // Committed while the shard is counted, but after the snapshot of the transaction
+            statistics.ownerCreated(change(), "Madison");
+            statistics.petSaved(change(), null, "dog");
+            return List.of(new KeyCount("cat", 3L));
+        });
+
+        statistics.rebuild();
+
+        assertThat(statistics.ownersPerCity()).containsExactly(Map.entry("Madison", 5L), Map.entry("Windsor", 1L));
+        assertThat(statistics.petsPerType()).containsExactly(Map.entry("cat", 3L), Map.entry("dog", 1L));
+        assertThat(statistics.newOwnersPerMonth()).containsEntry(thisMonth, 1L).containsEntry("2024-03", 2L);
+    }
+
+    @Test
+    void shouldNotCountTwiceTheChangesSeenByTheRebuild() {
+        ChangeEvent journaled = change();
+        ChangeEvent inFlight = change();
+        given(changeEventRepository.findIdsByIdIn(any()))
+            .willReturn(List.of(journaled.getId(), inFlight.getId()));
+        given(petRepository.countByType()).willAnswer(invocation -> {
+            // Committed before the snapshot of the transaction, so already in the aggregates
+            statistics.ownerCreated(journaled, "Madison");
+            TransactionSynchronizationManager.initSynchronization();
+            statistics.petSaved(inFlight, null, "dog");
+            return List.of(new KeyCount("cat", 3L), new KeyCount("dog", 1L));
+        });
+
+        statistics.rebuild();
+        // The second change only reports its delta once the rebuild is over
+        commit();
+
+        assertThat(statistics.ownersPerCity()).containsExactly(Map.entry("Madison", 4L), Map.entry("Windsor", 1L));
+        assertThat(statistics.petsPerType()).containsExactly(Map.entry("cat", 3L), Map.entry("dog", 1L));
+    }
+
+    private ChangeEvent change() {
+        ChangeEvent change = new ChangeEvent(EntityType.OWNER, 1, 1, ChangeType.CREATED);
+        ReflectionTestUtils.setField(change, "id", nextChangeId++);
+        return change;
+    }
+
+    private static void commit() {
+        TransactionSynchronizationManager.getSynchronizations()
+            .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+    }
+}
@@ -0,0 +1,125 @@
+package org.springframework.samples.petclinic.customers.web;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent.ChangeType;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent.EntityType;
+import org.springframework.samples.petclinic.customers.web.ChangeFeed.ChangeFeedPage;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ChangeFeedResourceTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    ChangeFeed changeFeed;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    void shouldPageThroughChangesWithTheCursor() throws Exception {
+        String head = head();
+        int first = createOwner("Ada");
+        int second = createOwner("Grace");
+        int third = createOwner("Barbara");
+
+        MvcResult firstPage = mvc.perform(get("/changes").param("since", head).param("limit", "2"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        String response = mvc.perform(asyncDispatch(firstPage))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.changes.length()").value(2))
+            .andExpect(jsonPath("$.changes[0].entityId").value(first))
+            .andExpect(jsonPath("$.changes[0].changeType").value("CREATED"))
+            .andExpect(jsonPath("$.changes[1].entityId").value(second))
+            .andReturn().getResponse().getContentAsString();
+        String next = JsonPath.read(response, "$.next");
+
+        ChangeFeedPage secondPage = changeFeed.changesSince(next, 2);
+        assertThat(secondPage.changes()).extracting(change -> change.getEntityId()).containsExactly(third);
+
+        ChangeFeedPage lastPage = changeFeed.changesSince(secondPage.next(), 2);
+        assertThat(lastPage.changes()).isEmpty();
+        assertThat(lastPage.next()).isEqualTo(secondPage.next());
+    }
+
+    @Test
+    void shouldNotHandOutChangesPastOneStillInFlight() {
+        String head = head();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            changeFeed.record(EntityType.OWNER, 1, 1, ChangeType.UPDATED);
+            // Visible to the recording transaction itself, but not committed yet
+            assertThat(changeFeed.changesSince(head, 10).changes()).isEmpty();
+        });
+
+        assertThat(changeFeed.changesSince(head, 10).changes())
+            .extracting(change -> change.getEntityId())
+            .containsExactly(1);
+    }
+
+    @Test
+    void shouldCompleteLongPollOnceChangeIsCommitted() throws Exception {
+        String head = head();
+
+        MvcResult poll = mvc.perform(get("/changes").param("since", head).param("wait", "10"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        int ownerId = createOwner("Margaret");
+
+        mvc.perform(asyncDispatch(poll))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.changes.length()").value(1))
+            .andExpect(jsonPath("$.changes[0].entityType").value("OWNER"))
+            .andExpect(jsonPath("$.changes[0].entityId").value(ownerId));
+    }
+
+    /**
+     * Cursor past every change recorded so far, including those of the other tests.
+     */
+    private String head() {
+        String cursor = null;
+        List<?> changes;
+        do {
+            ChangeFeedPage page = changeFeed.changesSince(cursor, 1000);
+            changes = page.changes();
+            cursor = page.next();
+        } while (!changes.isEmpty());
+        return cursor;
+    }
+
+    private int createOwner(String firstName) throws Exception {
+        String response = mvc.perform(post("/owners")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {"firstName": "%s", "lastName": "Doe", "address": "1 Main St.", "city": "Madison", "telephone": "6085550000"}
+                    """.formatted(firstName)))
+            .andExpect(status().isCreated())
+            .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.id");
+    }
+}
@@ -0,0 +1,64 @@
+package org.springframework.samples.petclinic.customers.web;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent.ChangeType;
+import org.springframework.samples.petclinic.customers.model.ChangeEvent.EntityType;
+import org.springframework.samples.petclinic.customers.model.ChangeEventRepository;
+import org.springframework.samples.petclinic.customers.shard.Shards;
+import org.springframework.samples.petclinic.customers.web.ChangeFeed.ChangeFeedPage;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class ChangeFeedTest {
+
+    private final ChangeEventRepository changeEventRepository = mock(ChangeEventRepository.class);
+    private final Shards shards = mock(Shards.class);
+
+    private ChangeFeed changeFeed;
+
+    @BeforeEach
+    void setup() {
+        given(shards.count()).willReturn(1);
+        given(shards.scatter(any(IntFunction.class)))
+            .willAnswer(invocation -> ((IntFunction<?>) invocation.getArgument(0)).apply(0));
+        changeFeed = new ChangeFeed(changeEventRepository, mock(ApplicationEventPublisher.class), shards);
+    }
+
+    @Test
+    void shouldHandOutChangesInIdOrderWhenCreatedOutOfOrder() {
+        long now = System.currentTimeMillis();
+        // The second change got its time first, but its id last
+        ChangeEvent first = change(1, now);
+        ChangeEvent second = change(2, now - 1000);
+        given(changeEventRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any())).willReturn(List.of(first, second));
+        given(changeEventRepository.findByIdGreaterThanOrderByIdAsc(eq(1L), any())).willReturn(List.of(second));
+        given(changeEventRepository.findByIdGreaterThanOrderByIdAsc(eq(2L), any())).willReturn(List.of());
+
+        ChangeFeedPage firstPage = changeFeed.changesSince(null, 1);
+        assertThat(firstPage.changes()).containsExactly(first);
+        assertThat(firstPage.next()).isEqualTo("1");
+
+        ChangeFeedPage secondPage = changeFeed.changesSince(firstPage.next(), 1);
+        assertThat(secondPage.changes()).containsExactly(second);
+        assertThat(secondPage.next()).isEqualTo("2");
+    }
+
+    private static ChangeEvent change(long id, long createdAt) {
+        ChangeEvent change = new ChangeEvent(EntityType.OWNER, (int) id, (int) id, ChangeType.CREATED);
+        ReflectionTestUtils.setField(change, "id", id);
+        ReflectionTestUtils.setField(change, "createdAt", new Date(createdAt));
+        return change;
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.samples.petclinic.customers.model.*;
+import org.springframework.samples.petclinic.customers.stats.ClinicStatistics;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
@@ -34,6 +35,12 @@ class PetResourceTest {
     @MockBean
     OwnerRepository ownerRepository;
 
+    @MockBean
+    ChangeFeed changeFeed;
+
+    @MockBean
+    ClinicStatistics statistics;
+
     @Test
     void shouldGetAPetInJSonFormat() throws Exception {
 
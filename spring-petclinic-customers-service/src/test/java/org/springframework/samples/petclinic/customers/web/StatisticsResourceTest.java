@@ -0,0 +1,55 @@
+package org.springframework.samples.petclinic.customers.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.customers.stats.ClinicStatistics;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Map;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(StatisticsResource.class)
+@ActiveProfiles("test")
+class StatisticsResourceTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @MockBean
+    ClinicStatistics statistics;
+
+    @Test
+    void shouldServeTheCounters() throws Exception {
+        given(statistics.ownersPerCity()).willReturn(Map.of("Madison", 4L));
+        given(statistics.petsPerType()).willReturn(Map.of("cat", 3L));
+        given(statistics.newOwnersPerMonth()).willReturn(Map.of("2024-03", 2L));
+
+        mvc.perform(get("/stats/owners-per-city").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.Madison").value(4));
+        mvc.perform(get("/stats/pets-per-type").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.cat").value(3));
+        mvc.perform(get("/stats/new-owners-per-month").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$['2024-03']").value(2));
+    }
+
+    @Test
+    void shouldRebuildOnDemand() throws Exception {
+        mvc.perform(post("/stats/rebuild"))
+            .andExpect(status().isNoContent());
+
+        then(statistics).should().rebuild();
+    }
+}
@@ -1,13 +1,17 @@
 package org.springframework.samples.petclinic.genai;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.memory.InMemoryChatMemory;
 import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.samples.petclinic.genai.vectorstore.EmbeddingCache;
+import org.springframework.samples.petclinic.genai.vectorstore.HnswVectorStore;
+import org.springframework.samples.petclinic.genai.vectorstore.VectorStoreProperties;
 import org.springframework.web.reactive.function.client.WebClient;
 
 /**
@@ -16,6 +20,7 @@ import org.springframework.web.reactive.function.client.WebClient;
  * @author Oded Shopen
  */
 @Configuration
+@EnableConfigurationProperties(VectorStoreProperties.class)
 public class AIBeanConfiguration {
 
 	@Bean
@@ -24,8 +29,13 @@ public class AIBeanConfiguration {
 	}
 
 	@Bean
-	VectorStore vectorStore(EmbeddingModel embeddingModel) {
-		return new SimpleVectorStore(embeddingModel);
+	VectorStore vectorStore(EmbeddingModel embeddingModel, VectorStoreProperties properties) {
+		return new HnswVectorStore(embeddingModel, properties);
+	}
+
+	@Bean
+	EmbeddingCache embeddingCache(EmbeddingModel embeddingModel, VectorStoreProperties properties, MeterRegistry registry) {
+		return new EmbeddingCache(embeddingModel, properties.embeddingCache(), registry);
 	}
 	
     @Bean
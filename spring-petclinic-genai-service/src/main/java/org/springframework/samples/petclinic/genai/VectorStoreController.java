@@ -7,7 +7,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.document.DocumentReader;
 import org.springframework.ai.reader.JsonReader;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.boot.context.event.ApplicationStartedEvent;
 import org.springframework.context.event.EventListener;
@@ -16,17 +15,26 @@ import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.samples.petclinic.genai.dto.Vet;
+import org.springframework.samples.petclinic.genai.vectorstore.EmbeddingCache;
+import org.springframework.samples.petclinic.genai.vectorstore.HnswVectorStore;
+import org.springframework.samples.petclinic.genai.vectorstore.VectorStoreFile;
+import org.springframework.samples.petclinic.genai.vectorstore.VectorStoreProperties;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 
 /**
  * Loads the veterinarians data into a vector store for the purpose of RAG functionality.
@@ -40,55 +48,159 @@ public class VectorStoreController {
 
 	private final VectorStore vectorStore;
     private final WebClient webClient;
+	private final VectorStoreProperties properties;
+	private final EmbeddingCache embeddingCache;
 
-    public VectorStoreController(VectorStore vectorStore, WebClient.Builder webClientBuilder) {
+    public VectorStoreController(VectorStore vectorStore, WebClient.Builder webClientBuilder, VectorStoreProperties properties,
+			EmbeddingCache embeddingCache) {
 		this.webClient = webClientBuilder.build();
 		this.vectorStore = vectorStore;
+		this.properties = properties;
+		this.embeddingCache = embeddingCache;
 	}
 
 	@EventListener
 	public void loadVetDataToVectorStoreOnStartup(ApplicationStartedEvent event) throws IOException {
+		HnswVectorStore hnswVectorStore = (HnswVectorStore) this.vectorStore;
+		Path file = properties.file();
+		VectorStoreFile existing = open(file);
+		boolean mapped = existing != null;
+
 		Resource resource = new ClassPathResource("vectorstore.json");
 
 		// Check if file exists
 		if (resource.exists()) {
+			long sourceHash;
+			try (InputStream json = resource.getInputStream()) {
+				sourceHash = VectorStoreFile.hash(json);
+			}
+			if (mapped && existing.sourceHash() == sourceHash) {
+				hnswVectorStore.load(existing);
+				logger.info("vector store mapped from {}", file.toAbsolutePath());
+				return;
+			}
 			// In order to save on AI credits, use a pre-embedded database that was saved
 			// to
-			// disk based on the current data in the h2 data.sql file
-			File file = resource.getFile();
-			((SimpleVectorStore) this.vectorStore).load(file);
-			logger.info("vector store loaded from existing vectorstore.json file in the classpath");
+			// disk based on the current data in the h2 data.sql file.
+			// It is converted to the binary format, which is then mapped on every startup
+			// until vectorstore.json changes.
+			file = writable(file, path -> {
+				try (InputStream json = resource.getInputStream()) {
+					VectorStoreFile.convert(json, path);
+				}
+			});
+			hnswVectorStore.load(VectorStoreFile.open(file));
+			logger.info("vector store converted from vectorstore.json in the classpath to {}", file.toAbsolutePath());
 			return;
 		}
 
-		// If vectorstore.json is deleted, the data will be loaded on startup every time.
-		// Warning - this can be costly in terms of credits used with the AI provider.
-		// Fetches all Vet entites and creates a document per vet
-        String vetsHostname = "http://vets-service/";
-        List<Vet> vets = webClient
-	            .get()
-	            .uri(vetsHostname + "vets")
-	            .retrieve()
-	            .bodyToMono(new ParameterizedTypeReference<List<Vet>>() {})
-	            .block();
+		if (mapped) {
+			hnswVectorStore.load(existing);
+			logger.info("vector store mapped from {}", file.toAbsolutePath());
+		}
 
+		// If vectorstore.json is deleted, the vector store is synchronized with the vets on every startup.
+		// Only the new or changed vets are embedded, the others being found in the embedding cache.
+		// Fetches all Vet entites and creates a document per vet
+		List<Vet> vets;
+		try {
+	        String vetsHostname = "http://vets-service/";
+	        vets = webClient
+		            .get()
+		            .uri(vetsHostname + "vets")
+		            .retrieve()
+		            .bodyToMono(new ParameterizedTypeReference<List<Vet>>() {})
+		            .block();
+		}
+		catch (RuntimeException e) {
+			if (!mapped) {
+				throw e;
+			}
+			logger.warn("Unable to fetch the vets, keeping the vector store of {}", file.toAbsolutePath(), e);
+			return;
+		}
 
 		Resource vetsAsJson = convertListToJsonResource(vets);
 		DocumentReader reader = new JsonReader(vetsAsJson);
 
-		List<Document> documents = reader.get();
+		List<Document> read = reader.get();
+		// Derive the document ids from the vet ids, so that a changed vet replaces its previous document
+		List<Document> documents = new ArrayList<>(read.size());
+		for (int i = 0; i < read.size(); i++) {
+			String id = UUID.nameUUIDFromBytes(("vet-" + vets.get(i).id()).getBytes(StandardCharsets.UTF_8)).toString();
+			documents.add(new Document(id, read.get(i).getContent(), read.get(i).getMetadata()));
+		}
+
+		Set<String> stale = new HashSet<>(hnswVectorStore.ids());
+		List<Document> changed = new ArrayList<>();
+		for (Document document : documents) {
+			stale.remove(document.getId());
+			boolean unchanged = hnswVectorStore.get(document.getId())
+				.filter(existing -> existing.getContent().equals(document.getContent()))
+				.isPresent();
+			if (unchanged) {
+				embeddingCache.retain(document);
+			}
+			else {
+				document.setEmbedding(embeddingCache.embed(document));
+				changed.add(document);
+			}
+		}
+		if (!stale.isEmpty()) {
+			this.vectorStore.delete(List.copyOf(stale));
+		}
 		// add the documents to the vector store
-		this.vectorStore.add(documents);
-
-		if (vectorStore instanceof SimpleVectorStore) {
-            // java:S5443 Sonar rule: Using publicly writable directories is security-sensitive
-            FileAttribute<Set<PosixFilePermission>> attr = PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"));
-            File file = Files.createTempFile("vectorstore", ".json", attr).toFile();
-			((SimpleVectorStore) this.vectorStore).save(file);
-			logger.info("vector store contents written to {}", file.getAbsolutePath());
+		this.vectorStore.add(changed);
+		embeddingCache.save();
+
+		if (!mapped || !changed.isEmpty() || !stale.isEmpty()) {
+			file = writable(file, hnswVectorStore::save);
+			logger.info("vector store contents written to {}", file.toAbsolutePath());
+		}
+
+		logger.info("vector store synchronized with {} vets: {} added or changed, {} removed", documents.size(),
+				changed.size(), stale.size());
+	}
+
+	/**
+	 * @return the mapped file, or <code>null</code> when it is missing or unreadable, e.g. written by a previous version
+	 */
+	private VectorStoreFile open(Path file) {
+		if (!Files.exists(file)) {
+			return null;
+		}
+		try {
+			return VectorStoreFile.open(file);
+		}
+		catch (IOException e) {
+			logger.warn("Unable to read the vector store file {}, writing it again", file.toAbsolutePath(), e);
+			return null;
 		}
+	}
+
+	/**
+	 * Write to the configured file, or to a private temporary file when its directory is read-only.
+	 * @return the file written
+	 */
+	private Path writable(Path file, PathWriter writer) throws IOException {
+		try {
+			writer.write(file);
+			return file;
+		}
+		catch (IOException e) {
+			logger.warn("Unable to write the vector store to {}, using a temporary file instead", file.toAbsolutePath(), e);
+			// java:S5443 Sonar rule: Using publicly writable directories is security-sensitive
+			FileAttribute<Set<PosixFilePermission>> attr = PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"));
+			Path temp = Files.createTempFile("vectorstore", ".bin", attr);
+			writer.write(temp);
+			return temp;
+		}
+	}
+
+	private interface PathWriter {
+
+		void write(Path file) throws IOException;
 
-		logger.info("vector store loaded with {} documents", documents.size());
 	}
 
 	public Resource convertListToJsonResource(List<Vet> vets) {
@@ -0,0 +1,186 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Embeddings already computed by the embedding model, keyed by the SHA-256 of the model id and of the embedded
+ * text of a document, so that a document is only embedded again when its text or the model changes.
+ * <p>
+ * The cache is persisted to a local file by {@link #save()}, which only keeps the embeddings requested since the
+ * cache was loaded: those of documents that no longer exist are dropped.
+ * <p>
+ * File layout, little-endian: magic <code>PCEC</code>, version and number of embeddings, then for each one
+ * its 32-byte key, its number of dimensions and its float32 components.
+ */
+public class EmbeddingCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(EmbeddingCache.class);
+
+	private static final int MAGIC = 'P' << 24 | 'C' << 16 | 'E' << 8 | 'C';
+
+	private static final int VERSION = 1;
+
+	private static final int KEY_SIZE = 32;
+
+	private final EmbeddingModel embeddingModel;
+
+	private final Path file;
+
+	private final String model;
+
+	private final Map<String, float[]> embeddings = new ConcurrentHashMap<>();
+
+	private final Set<String> used = ConcurrentHashMap.newKeySet();
+
+	private final Counter hits;
+
+	private final Counter misses;
+
+	public EmbeddingCache(EmbeddingModel embeddingModel, VectorStoreProperties.EmbeddingCache properties,
+			MeterRegistry registry) {
+		this.embeddingModel = embeddingModel;
+		this.file = properties.file();
+		this.model = properties.model();
+		this.hits = Counter.builder("petclinic.genai.embedding.cache.gets")
+			.description("Document embeddings requested from the cache, misses being computed by the embedding model")
+			.tag("result", "hit")
+			.register(registry);
+		this.misses = Counter.builder("petclinic.genai.embedding.cache.gets")
+			.description("Document embeddings requested from the cache, misses being computed by the embedding model")
+			.tag("result", "miss")
+			.register(registry);
+		load();
+	}
+
+	/**
+	 * @return the cached embedding of the document, or the one computed by the embedding model
+	 */
+	public float[] embed(Document document) {
+		String key = key(document.getFormattedContent(MetadataMode.EMBED));
+		used.add(key);
+		float[] embedding = embeddings.get(key);
+		if (embedding != null) {
+			hits.increment();
+			return embedding.clone();
+		}
+		misses.increment();
+		embedding = embeddingModel.embed(document);
+		embeddings.put(key, embedding.clone());
+		return embedding;
+	}
+
+	/**
+	 * Keep the cached embedding of a document that does not need to be embedded, so that {@link #save()} does not drop it.
+	 */
+	public void retain(Document document) {
+		used.add(key(document.getFormattedContent(MetadataMode.EMBED)));
+	}
+
+	public int size() {
+		return embeddings.size();
+	}
+
+	/**
+	 * Write the embeddings requested since the cache was loaded to a temporary file, then move it in place.
+	 * Failing to write it, e.g. in a read-only directory, is only logged: the embeddings are computed again
+	 * on the next startup.
+	 */
+	public synchronized void save() {
+		embeddings.keySet().retainAll(used);
+		Map<String, float[]> kept = Map.copyOf(embeddings);
+		int size = 12;
+		for (float[] embedding : kept.values()) {
+			size += KEY_SIZE + 4 + 4 * embedding.length;
+		}
+		ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		out.putInt(MAGIC).putInt(VERSION).putInt(kept.size());
+		kept.forEach((key, embedding) -> {
+			out.put(HexFormat.of().parseHex(key)).putInt(embedding.length);
+			for (float value : embedding) {
+				out.putFloat(value);
+			}
+		});
+		try {
+			write(out.array());
+		}
+		catch (IOException e) {
+			logger.warn("Unable to save the embedding cache to {}", file.toAbsolutePath(), e);
+		}
+	}
+
+	private void write(byte[] bytes) throws IOException {
+		Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+		try {
+			Files.write(temp, bytes);
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private void load() {
+		if (!Files.exists(file)) {
+			return;
+		}
+		try {
+			ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+			if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+				throw new IOException("Not an embedding cache file");
+			}
+			int count = in.getInt();
+			for (int i = 0; i < count; i++) {
+				byte[] key = new byte[KEY_SIZE];
+				in.get(key);
+				int dimensions = in.getInt();
+				if (dimensions < 0 || 4L * dimensions > in.remaining()) {
+					throw new IOException("Corrupted embedding cache entry " + i);
+				}
+				float[] embedding = new float[dimensions];
+				in.asFloatBuffer().get(embedding);
+				in.position(in.position() + 4 * embedding.length);
+				embeddings.put(HexFormat.of().formatHex(key), embedding);
+			}
+			logger.info("{} embeddings loaded from {}", count, file.toAbsolutePath());
+		}
+		catch (IOException | BufferUnderflowException e) {
+			// Only a cache, start from scratch
+			logger.warn("Ignoring the unreadable embedding cache {}", file.toAbsolutePath(), e);
+			embeddings.clear();
+		}
+	}
+
+	private String key(String text) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(model.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+}
@@ -0,0 +1,389 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * Hierarchical Navigable Small World graph (Malkov and Yashunin, 2016) over normalized vectors,
+ * scored by cosine similarity.
+ * <p>
+ * Every node is linked to its <code>m</code> best neighbours on each of its layers (<code>2 * m</code> on
+ * the bottom layer), the number of layers of a node following an exponentially decaying distribution.
+ * A search descends greedily from the top layer and explores the bottom layer with a beam of
+ * <code>ef</code> candidates, so that it only scores a small fraction of the vectors.
+ * Deleted nodes are kept as waypoints but never returned.
+ * <p>
+ * The vectors of the first nodes can be read in place from a memory-mapped {@link VectorStoreFile}
+ * (see {@link #insertAll}), the following ones being held on the heap.
+ * <p>
+ * With {@link QuantizedVectors}, the graph is still built from the exact vectors, but a search walks it using
+ * the compact codes and only re-ranks the <code>oversampling * k</code> best candidates with the exact vectors.
+ * <p>
+ * Not thread-safe: callers must not insert or delete while searching.
+ */
+class HnswIndex {
+
+	private static final int[] NO_LINKS = new int[0];
+
+	private static final Comparator<Candidate> CLOSEST_FIRST = Comparator.comparingDouble(Candidate::similarity).reversed();
+
+	private final int m;
+
+	private final int maxLinks0;
+
+	private final int efConstruction;
+
+	private final double levelMultiplier;
+
+	private final SplittableRandom random;
+
+	private final QuantizedVectors quantized;
+
+	private final int oversampling;
+
+	private final VectorScorer scorer = VectorScorers.get();
+
+	private FloatBuffer mapped = FloatBuffer.allocate(0);
+
+	private int mappedCount;
+
+	private int dimensions = -1;
+
+	/**
+	 * Vectors of the nodes inserted after the mapped ones.
+	 */
+	private final List<float[]> vectors = new ArrayList<>();
+
+	/**
+	 * Neighbours of each node, per layer.
+	 */
+	private final List<int[][]> links = new ArrayList<>();
+
+	private final BitSet deleted = new BitSet();
+
+	private int entryPoint = -1;
+
+	private int maxLevel = -1;
+
+	HnswIndex(int m, int efConstruction, long seed) {
+		this(m, efConstruction, seed, null, 1);
+	}
+
+	/**
+	 * @param quantized empty codes, or <code>null</code> to search with the exact vectors
+	 * @param oversampling number of candidates re-ranked with the exact vectors, per result
+	 */
+	HnswIndex(int m, int efConstruction, long seed, QuantizedVectors quantized, int oversampling) {
+		if (m < 2) {
+			throw new IllegalArgumentException("HNSW m must be at least 2, got " + m);
+		}
+		this.m = m;
+		this.maxLinks0 = 2 * m;
+		this.efConstruction = Math.max(efConstruction, m);
+		this.levelMultiplier = 1 / Math.log(m);
+		this.random = new SplittableRandom(seed);
+		this.quantized = quantized;
+		this.oversampling = Math.max(oversampling, 1);
+	}
+
+	/**
+	 * @return the number of nodes, including the deleted ones
+	 */
+	int nodeCount() {
+		return mappedCount + vectors.size();
+	}
+
+	int deletedCount() {
+		return deleted.cardinality();
+	}
+
+	/**
+	 * @return the size of the quantized codes, in bytes
+	 */
+	long quantizedBytes() {
+		return quantized == null ? 0 : quantized.bytes();
+	}
+
+	boolean isDeleted(int node) {
+		return deleted.get(node);
+	}
+
+	/**
+	 * @return the normalized vector of the node
+	 */
+	float[] vector(int node) {
+		if (node >= mappedCount) {
+			return vectors.get(node - mappedCount);
+		}
+		float[] vector = new float[dimensions];
+		mapped.get(node * dimensions, vector);
+		return vector;
+	}
+
+	/**
+	 * Index normalized vectors read in place, as nodes <code>0</code> to <code>n - 1</code>.
+	 * Must be called before any other insert.
+	 */
+	void insertAll(FloatBuffer normalizedVectors, int dimensions) {
+		if (nodeCount() > 0) {
+			throw new IllegalStateException("Mapped vectors must be indexed before any other vector");
+		}
+		this.mapped = normalizedVectors;
+		this.dimensions = dimensions;
+		this.mappedCount = dimensions == 0 ? 0 : normalizedVectors.limit() / dimensions;
+		for (int node = 0; node < mappedCount; node++) {
+			connect(node, vector(node));
+		}
+	}
+
+	/**
+	 * @return the id of the new node, nodes being numbered in insertion order
+	 */
+	int insert(float[] vector) {
+		if (dimensions < 0) {
+			dimensions = vector.length;
+		}
+		else if (vector.length != dimensions) {
+			throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+		}
+		float[] normalized = normalize(vector);
+		vectors.add(normalized);
+		int node = nodeCount() - 1;
+		connect(node, normalized);
+		return node;
+	}
+
+	private void connect(int node, float[] normalized) {
+		if (quantized != null) {
+			quantized.add(normalized);
+		}
+		NodeScorer exact = other -> similarity(normalized, other);
+		int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+		int[][] nodeLinks = new int[level + 1][];
+		for (int layer = 0; layer <= level; layer++) {
+			nodeLinks[layer] = NO_LINKS;
+		}
+		links.add(nodeLinks);
+		if (entryPoint < 0) {
+			entryPoint = node;
+			maxLevel = level;
+			return;
+		}
+		int current = entryPoint;
+		for (int layer = maxLevel; layer > level; layer--) {
+			current = closest(exact, current, layer);
+		}
+		for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+			List<Candidate> found = searchLayer(exact, current, efConstruction, layer, false);
+			nodeLinks[layer] = selectNeighbours(found, m);
+			for (int neighbour : nodeLinks[layer]) {
+				link(neighbour, node, layer);
+			}
+			current = found.get(0).node();
+		}
+		if (level > maxLevel) {
+			maxLevel = level;
+			entryPoint = node;
+		}
+	}
+
+	void delete(int node) {
+		deleted.set(node);
+	}
+
+	/**
+	 * @param ef size of the beam, at least <code>k</code>: the larger, the better the recall and the slower the search
+	 * @return up to <code>k</code> live nodes, most similar first
+	 */
+	List<Candidate> search(float[] query, int k, int ef) {
+		if (entryPoint < 0 || k <= 0) {
+			return List.of();
+		}
+		float[] normalized = normalize(query);
+		NodeScorer score = quantized != null ? quantized.scorer(normalized) : node -> similarity(normalized, node);
+		int current = entryPoint;
+		for (int layer = maxLevel; layer > 0; layer--) {
+			current = closest(score, current, layer);
+		}
+		int beam = quantized != null ? Math.max(ef, k * oversampling) : Math.max(ef, k);
+		List<Candidate> found = searchLayer(score, current, beam, 0, true);
+		if (quantized != null) {
+			List<Candidate> reranked = new ArrayList<>(found.size());
+			for (Candidate candidate : found) {
+				reranked.add(new Candidate(candidate.node(), similarity(normalized, candidate.node())));
+			}
+			reranked.sort(CLOSEST_FIRST);
+			found = reranked;
+		}
+		return found.size() <= k ? found : List.copyOf(found.subList(0, k));
+	}
+
+	/**
+	 * Greedy walk towards the query on one layer.
+	 */
+	private int closest(NodeScorer score, int entry, int layer) {
+		int current = entry;
+		float best = score.score(entry);
+		boolean moved = true;
+		while (moved) {
+			moved = false;
+			for (int neighbour : links.get(current)[layer]) {
+				float similarity = score.score(neighbour);
+				if (similarity > best) {
+					best = similarity;
+					current = neighbour;
+					moved = true;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Beam search on one layer.
+	 * @param liveOnly whether deleted nodes are only traversed, rather than returned
+	 * @return up to <code>ef</code> nodes, most similar first
+	 */
+	private List<Candidate> searchLayer(NodeScorer score, int entry, int ef, int layer, boolean liveOnly) {
+		BitSet visited = new BitSet(nodeCount());
+		PriorityQueue<Candidate> candidates = new PriorityQueue<>(CLOSEST_FIRST);
+		PriorityQueue<Candidate> results = new PriorityQueue<>(CLOSEST_FIRST.reversed());
+		Candidate start = new Candidate(entry, score.score(entry));
+		visited.set(entry);
+		candidates.add(start);
+		if (!liveOnly || !deleted.get(entry)) {
+			results.add(start);
+		}
+		while (!candidates.isEmpty()) {
+			Candidate candidate = candidates.poll();
+			if (results.size() >= ef && candidate.similarity() < results.peek().similarity()) {
+				break;
+			}
+			for (int neighbour : links.get(candidate.node())[layer]) {
+				if (visited.get(neighbour)) {
+					continue;
+				}
+				visited.set(neighbour);
+				float similarity = score.score(neighbour);
+				if (results.size() < ef || similarity > results.peek().similarity()) {
+					Candidate next = new Candidate(neighbour, similarity);
+					candidates.add(next);
+					if (!liveOnly || !deleted.get(neighbour)) {
+						results.add(next);
+						if (results.size() > ef) {
+							results.poll();
+						}
+					}
+				}
+			}
+		}
+		List<Candidate> found = new ArrayList<>(results);
+		found.sort(CLOSEST_FIRST);
+		return found;
+	}
+
+	/**
+	 * Keep the candidates that are closer to the query than to any neighbour already kept, so that links
+	 * point in diverse directions, then fill up with the closest remaining ones.
+	 * @param candidates most similar first
+	 */
+	private int[] selectNeighbours(List<Candidate> candidates, int max) {
+		List<Candidate> selected = new ArrayList<>(max);
+		List<Candidate> pruned = new ArrayList<>();
+		for (Candidate candidate : candidates) {
+			if (selected.size() >= max) {
+				break;
+			}
+			boolean diverse = true;
+			for (Candidate kept : selected) {
+				if (similarity(candidate.node(), kept.node()) > candidate.similarity()) {
+					diverse = false;
+					break;
+				}
+			}
+			(diverse ? selected : pruned).add(candidate);
+		}
+		for (int i = 0; i < pruned.size() && selected.size() < max; i++) {
+			selected.add(pruned.get(i));
+		}
+		return selected.stream().mapToInt(Candidate::node).toArray();
+	}
+
+	private void link(int from, int to, int layer) {
+		int[][] fromLinks = links.get(from);
+		int[] current = fromLinks[layer];
+		int max = layer == 0 ? maxLinks0 : m;
+		if (current.length < max) {
+			int[] extended = new int[current.length + 1];
+			System.arraycopy(current, 0, extended, 0, current.length);
+			extended[current.length] = to;
+			fromLinks[layer] = extended;
+			return;
+		}
+		float[] origin = vector(from);
+		List<Candidate> candidates = new ArrayList<>(current.length + 1);
+		for (int neighbour : current) {
+			candidates.add(new Candidate(neighbour, similarity(origin, neighbour)));
+		}
+		candidates.add(new Candidate(to, similarity(origin, to)));
+		candidates.sort(CLOSEST_FIRST);
+		fromLinks[layer] = selectNeighbours(candidates, max);
+	}
+
+	private float similarity(float[] query, int node) {
+		if (node >= mappedCount) {
+			return scorer.dot(query, vectors.get(node - mappedCount));
+		}
+		int offset = node * dimensions;
+		float sum = 0;
+		for (int i = 0; i < dimensions; i++) {
+			sum += query[i] * mapped.get(offset + i);
+		}
+		return sum;
+	}
+
+	private float similarity(int left, int right) {
+		return left >= mappedCount ? similarity(vectors.get(left - mappedCount), right) : similarity(vector(left), right);
+	}
+
+	static float[] normalize(float[] vector) {
+		double norm = 0;
+		for (float value : vector) {
+			norm += value * value;
+		}
+		float[] normalized = vector.clone();
+		if (norm > 0) {
+			float scale = (float) (1 / Math.sqrt(norm));
+			for (int i = 0; i < normalized.length; i++) {
+				normalized[i] *= scale;
+			}
+		}
+		return normalized;
+	}
+
+	static float dot(float[] left, float[] right) {
+		return VectorScorers.get().dot(left, right);
+	}
+
+	/**
+	 * @param similarity cosine similarity to the query
+	 */
+	record Candidate(int node, float similarity) {
+	}
+
+	/**
+	 * Similarity of a node to a query.
+	 */
+	@FunctionalInterface
+	interface NodeScorer {
+
+		float score(int node);
+
+	}
+
+}
@@ -0,0 +1,266 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process {@link VectorStore} backed by an {@link HnswIndex}, so that a similarity search scores a few
+ * hundred documents instead of all of them, as {@link org.springframework.ai.vectorstore.SimpleVectorStore} does.
+ * <p>
+ * Documents can be added and deleted at any time; adding a document with an existing id replaces it.
+ * Deleted documents stay in the graph until they outnumber the live ones, at which point the graph is rebuilt.
+ * {@link #load(VectorStoreFile)} indexes the documents of a memory-mapped file in place: their embeddings
+ * are read from the mapping and their content is only decoded when returned by a search.
+ * The graph can be searched using quantized embeddings (see {@link VectorStoreProperties.Quantization}).
+ * Filter expressions are not supported.
+ */
+public class HnswVectorStore implements VectorStore {
+
+	/**
+	 * Metadata key of the cosine distance between a returned document and the query.
+	 */
+	public static final String DISTANCE = "distance";
+
+	private final EmbeddingModel embeddingModel;
+
+	private final VectorStoreProperties properties;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private HnswIndex index;
+
+	/**
+	 * Nodes <code>0</code> to <code>file.size() - 1</code>, if any, are the documents of the file.
+	 */
+	private VectorStoreFile file;
+
+	/**
+	 * Document of each node, <code>null</code> once deleted or when read from the file.
+	 */
+	private List<Document> documents = new ArrayList<>();
+
+	private final Map<String, Integer> nodes = new HashMap<>();
+
+	public HnswVectorStore(EmbeddingModel embeddingModel, VectorStoreProperties properties) {
+		this.embeddingModel = embeddingModel;
+		this.properties = properties;
+		this.index = newIndex();
+	}
+
+	@Override
+	public void add(List<Document> documents) {
+		// Embed outside of the lock, this is by far the slowest part
+		List<float[]> embeddings = new ArrayList<>(documents.size());
+		for (Document document : documents) {
+			float[] embedding = document.getEmbedding();
+			embeddings.add(embedding != null && embedding.length > 0 ? embedding : embeddingModel.embed(document));
+		}
+		lock.writeLock().lock();
+		try {
+			for (int i = 0; i < documents.size(); i++) {
+				Document document = documents.get(i);
+				remove(document.getId());
+				int node = index.insert(embeddings.get(i));
+				this.documents.add(new Document(document.getId(), document.getContent(), document.getMetadata()));
+				nodes.put(document.getId(), node);
+			}
+			compactIfNeeded();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public Optional<Boolean> delete(List<String> idList) {
+		lock.writeLock().lock();
+		try {
+			boolean deleted = false;
+			for (String id : idList) {
+				deleted |= remove(id);
+			}
+			compactIfNeeded();
+			return Optional.of(deleted);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Document> similaritySearch(SearchRequest request) {
+		if (request.hasFilterExpression()) {
+			throw new UnsupportedOperationException("Filter expressions are not supported by the HNSW vector store");
+		}
+		float[] query = embeddingModel.embed(request.getQuery());
+		lock.readLock().lock();
+		try {
+			List<Document> results = new ArrayList<>();
+			for (HnswIndex.Candidate hit : index.search(query, request.getTopK(), properties.hnsw().efSearch())) {
+				if (hit.similarity() < request.getSimilarityThreshold()) {
+					break;
+				}
+				Document document = document(hit.node());
+				Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+				metadata.put(DISTANCE, 1 - hit.similarity());
+				results.add(new Document(document.getId(), document.getContent(), metadata));
+			}
+			return results;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return nodes.size();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of nodes of the graph, including the deleted ones not compacted yet
+	 */
+	int nodeCount() {
+		lock.readLock().lock();
+		try {
+			return index.nodeCount();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public Set<String> ids() {
+		lock.readLock().lock();
+		try {
+			return Set.copyOf(nodes.keySet());
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the document, without its embedding
+	 */
+	public Optional<Document> get(String id) {
+		lock.readLock().lock();
+		try {
+			Integer node = nodes.get(id);
+			return node == null ? Optional.empty() : Optional.of(document(node));
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Index the documents of the file, which must be the first ones added to this store.
+	 */
+	public void load(VectorStoreFile file) {
+		lock.writeLock().lock();
+		try {
+			if (index.nodeCount() > 0) {
+				throw new IllegalStateException("The vector store file must be loaded into an empty store");
+			}
+			this.file = file;
+			index.insertAll(file.embeddings(), file.dimensions());
+			documents = new ArrayList<>(Collections.nCopies(file.size(), null));
+			for (int node = 0; node < file.size(); node++) {
+				Integer previous = nodes.put(file.id(node), node);
+				if (previous != null) {
+					index.delete(previous);
+				}
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Write the documents with their (normalized) embeddings to a {@link VectorStoreFile}.
+	 */
+	public void save(Path path) throws IOException {
+		List<VectorStoreFile.Entry> entries;
+		lock.readLock().lock();
+		try {
+			entries = new ArrayList<>(nodes.size());
+			for (int node = 0; node < index.nodeCount(); node++) {
+				if (!index.isDeleted(node)) {
+					Document document = document(node);
+					entries.add(new VectorStoreFile.Entry(document.getId(), document.getContent(),
+							document.getMetadata(), index.vector(node)));
+				}
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+		VectorStoreFile.write(path, entries);
+	}
+
+	private Document document(int node) {
+		Document document = documents.get(node);
+		return document != null ? document : file.document(node);
+	}
+
+	private boolean remove(String id) {
+		Integer node = nodes.remove(id);
+		if (node == null) {
+			return false;
+		}
+		index.delete(node);
+		documents.set(node, null);
+		return true;
+	}
+
+	/**
+	 * Rebuild the graph from the live documents once the deleted ones outnumber them.
+	 */
+	private void compactIfNeeded() {
+		if (index.deletedCount() <= nodes.size()) {
+			return;
+		}
+		HnswIndex compacted = newIndex();
+		List<Document> kept = new ArrayList<>(nodes.size());
+		for (int node = 0; node < index.nodeCount(); node++) {
+			if (!index.isDeleted(node)) {
+				Document document = document(node);
+				nodes.put(document.getId(), compacted.insert(index.vector(node)));
+				kept.add(document);
+			}
+		}
+		index = compacted;
+		documents = kept;
+		// The remaining documents of the file are now on the heap
+		file = null;
+	}
+
+	private HnswIndex newIndex() {
+		VectorStoreProperties.Hnsw hnsw = properties.hnsw();
+		return new HnswIndex(hnsw.m(), hnsw.efConstruction(), hnsw.seed(),
+				QuantizedVectors.of(properties.quantization().mode(), VectorScorers.get()),
+				properties.quantization().oversampling());
+	}
+
+}
@@ -0,0 +1,66 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementation using the SIMD instructions of the CPU through the incubating Vector API.
+ * <p>
+ * Only loaded by {@link VectorScorers} when the <code>jdk.incubator.vector</code> module is present. Binary
+ * codes are still compared by the scalar code, <code>Long.bitCount</code> being already compiled to
+ * <code>POPCNT</code>.
+ */
+class PanamaVectorScorer extends ScalarVectorScorer {
+
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+	/**
+	 * As many bytes as {@link #INTS} has lanes, <code>null</code> when the vectors are too narrow (less than 256 bits).
+	 */
+	private static final VectorSpecies<Byte> BYTES = INTS.vectorBitSize() >= 256
+			? VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.vectorBitSize() / 4)) : null;
+
+	@Override
+	public float dot(float[] left, float[] right) {
+		FloatVector sums = FloatVector.zero(FLOATS);
+		int bound = FLOATS.loopBound(left.length);
+		int i = 0;
+		for (; i < bound; i += FLOATS.length()) {
+			sums = FloatVector.fromArray(FLOATS, left, i).fma(FloatVector.fromArray(FLOATS, right, i), sums);
+		}
+		float sum = sums.reduceLanes(VectorOperators.ADD);
+		for (; i < left.length; i++) {
+			sum += left[i] * right[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public int dot(byte[] left, int leftOffset, byte[] right, int rightOffset, int length) {
+		if (BYTES == null) {
+			return super.dot(left, leftOffset, right, rightOffset, length);
+		}
+		IntVector sums = IntVector.zero(INTS);
+		int bound = BYTES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += BYTES.length()) {
+			IntVector l = (IntVector) ByteVector.fromArray(BYTES, left, leftOffset + i)
+				.convertShape(VectorOperators.B2I, INTS, 0);
+			IntVector r = (IntVector) ByteVector.fromArray(BYTES, right, rightOffset + i)
+				.convertShape(VectorOperators.B2I, INTS, 0);
+			sums = l.mul(r).add(sums);
+		}
+		int sum = sums.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			sum += left[leftOffset + i] * right[rightOffset + i];
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,162 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import java.util.Arrays;
+
+/**
+ * Compact codes of normalized vectors, approximating their cosine similarity at a fraction of the memory
+ * (and memory bandwidth) of float32 vectors. The codes of all nodes are stored in a single array.
+ */
+abstract class QuantizedVectors {
+
+	final VectorScorer scorer;
+
+	int count;
+
+	QuantizedVectors(VectorScorer scorer) {
+		this.scorer = scorer;
+	}
+
+	static QuantizedVectors of(VectorStoreProperties.Quantization.Mode mode, VectorScorer scorer) {
+		return switch (mode) {
+			case NONE -> null;
+			case INT8 -> new Int8(scorer);
+			case BINARY -> new Binary(scorer);
+		};
+	}
+
+	/**
+	 * Append the code of the next node.
+	 */
+	abstract void add(float[] normalized);
+
+	/**
+	 * @return the approximate similarity of each node to the query
+	 */
+	abstract HnswIndex.NodeScorer scorer(float[] normalizedQuery);
+
+	/**
+	 * @return the size of the codes, in bytes
+	 */
+	abstract long bytes();
+
+	int count() {
+		return count;
+	}
+
+	static int grow(int capacity, int needed) {
+		return Math.max(needed, capacity + (capacity >> 1));
+	}
+
+	/**
+	 * One byte per dimension, scaled by the largest component of the vector (4 times smaller than float32).
+	 */
+	static final class Int8 extends QuantizedVectors {
+
+		private byte[] codes = new byte[0];
+
+		private float[] scales = new float[0];
+
+		private int dimensions;
+
+		Int8(VectorScorer scorer) {
+			super(scorer);
+		}
+
+		@Override
+		void add(float[] normalized) {
+			if (count == 0) {
+				dimensions = normalized.length;
+			}
+			if ((count + 1) * dimensions > codes.length) {
+				codes = Arrays.copyOf(codes, grow(codes.length, (count + 1) * dimensions));
+			}
+			if (count == scales.length) {
+				scales = Arrays.copyOf(scales, grow(scales.length, count + 1));
+			}
+			scales[count] = encode(normalized, codes, count * dimensions);
+			count++;
+		}
+
+		/**
+		 * @return the factor turning the codes back into components
+		 */
+		static float encode(float[] vector, byte[] codes, int offset) {
+			float max = 0;
+			for (float value : vector) {
+				max = Math.max(max, Math.abs(value));
+			}
+			float scale = max == 0 ? 1 : 127 / max;
+			for (int i = 0; i < vector.length; i++) {
+				codes[offset + i] = (byte) Math.round(vector[i] * scale);
+			}
+			return 1 / scale;
+		}
+
+		@Override
+		HnswIndex.NodeScorer scorer(float[] normalizedQuery) {
+			byte[] query = new byte[normalizedQuery.length];
+			float queryScale = encode(normalizedQuery, query, 0);
+			return node -> queryScale * scales[node] * scorer.dot(query, 0, codes, node * dimensions, dimensions);
+		}
+
+		@Override
+		long bytes() {
+			return (long) count * (dimensions + Float.BYTES);
+		}
+
+	}
+
+	/**
+	 * One bit per dimension, its sign (32 times smaller than float32). As with random hyperplane hashing,
+	 * the share of differing bits estimates the angle between two vectors: the similarity is approximated by
+	 * <code>1 - 2 * share</code>, which ranks vectors as their cosine does.
+	 */
+	static final class Binary extends QuantizedVectors {
+
+		private long[] codes = new long[0];
+
+		private int dimensions;
+
+		private int words;
+
+		Binary(VectorScorer scorer) {
+			super(scorer);
+		}
+
+		@Override
+		void add(float[] normalized) {
+			if (count == 0) {
+				dimensions = normalized.length;
+				words = (dimensions + 63) / 64;
+			}
+			if ((count + 1) * words > codes.length) {
+				codes = Arrays.copyOf(codes, grow(codes.length, (count + 1) * words));
+			}
+			encode(normalized, codes, count * words);
+			count++;
+		}
+
+		static void encode(float[] vector, long[] codes, int offset) {
+			for (int i = 0; i < vector.length; i++) {
+				if (vector[i] > 0) {
+					codes[offset + i / 64] |= 1L << (i % 64);
+				}
+			}
+		}
+
+		@Override
+		HnswIndex.NodeScorer scorer(float[] normalizedQuery) {
+			long[] query = new long[words];
+			encode(normalizedQuery, query, 0);
+			float perBit = 2f / dimensions;
+			return node -> 1 - perBit * scorer.hamming(query, 0, codes, node * words, words);
+		}
+
+		@Override
+		long bytes() {
+			return (long) count * words * Long.BYTES;
+		}
+
+	}
+
+}
@@ -0,0 +1,36 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+/**
+ * Plain Java implementation, left to the auto-vectorization of the JIT.
+ */
+class ScalarVectorScorer implements VectorScorer {
+
+	@Override
+	public float dot(float[] left, float[] right) {
+		float sum = 0;
+		for (int i = 0; i < left.length; i++) {
+			sum += left[i] * right[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public int dot(byte[] left, int leftOffset, byte[] right, int rightOffset, int length) {
+		int sum = 0;
+		for (int i = 0; i < length; i++) {
+			sum += left[leftOffset + i] * right[rightOffset + i];
+		}
+		return sum;
+	}
+
+	@Override
+	public int hamming(long[] left, int leftOffset, long[] right, int rightOffset, int length) {
+		int distance = 0;
+		for (int i = 0; i < length; i++) {
+			// Intrinsified as POPCNT
+			distance += Long.bitCount(left[leftOffset + i] ^ right[rightOffset + i]);
+		}
+		return distance;
+	}
+
+}
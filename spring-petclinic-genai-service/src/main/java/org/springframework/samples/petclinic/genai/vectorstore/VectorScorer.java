@@ -0,0 +1,20 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+/**
+ * Distance primitives used to score vectors, see {@link VectorScorers#get()}.
+ */
+interface VectorScorer {
+
+	float dot(float[] left, float[] right);
+
+	/**
+	 * Dot product of two int8 codes of <code>length</code> components.
+	 */
+	int dot(byte[] left, int leftOffset, byte[] right, int rightOffset, int length);
+
+	/**
+	 * Number of differing bits between two binary codes of <code>length</code> words.
+	 */
+	int hamming(long[] left, int leftOffset, long[] right, int rightOffset, int length);
+
+}
@@ -0,0 +1,47 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Picks the {@link PanamaVectorScorer} when the JVM runs with <code>--add-modules jdk.incubator.vector</code>,
+ * the {@link ScalarVectorScorer} otherwise.
+ */
+final class VectorScorers {
+
+	private static final Logger logger = LoggerFactory.getLogger(VectorScorers.class);
+
+	private static final VectorScorer SCALAR = new ScalarVectorScorer();
+
+	private static final VectorScorer INSTANCE = create();
+
+	private VectorScorers() {
+	}
+
+	static VectorScorer get() {
+		return INSTANCE;
+	}
+
+	static VectorScorer scalar() {
+		return SCALAR;
+	}
+
+	private static VectorScorer create() {
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+			logger.info("Vector API not available, scoring vectors with scalar code; "
+					+ "add --add-modules jdk.incubator.vector to the JVM options to use SIMD instructions");
+			return SCALAR;
+		}
+		try {
+			// Loaded reflectively so that this class links without the incubator module
+			return (VectorScorer) Class.forName(VectorScorers.class.getPackageName() + ".PanamaVectorScorer")
+				.getDeclaredConstructor()
+				.newInstance();
+		}
+		catch (ReflectiveOperationException | LinkageError e) {
+			logger.warn("Unable to use the Vector API, scoring vectors with scalar code", e);
+			return SCALAR;
+		}
+	}
+
+}
@@ -0,0 +1,32 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Converts a <code>vectorstore.json</code> file written by <code>SimpleVectorStore</code> into a
+ * {@link VectorStoreFile}.
+ * <p>
+ * Usage: <code>VectorStoreConverter vectorstore.json vectorstore.bin</code>
+ */
+public final class VectorStoreConverter {
+
+	private VectorStoreConverter() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: VectorStoreConverter <vectorstore.json> <vectorstore.bin>");
+			System.exit(1);
+		}
+		Path target = Path.of(args[1]);
+		try (InputStream json = Files.newInputStream(Path.of(args[0]))) {
+			VectorStoreFile.convert(json, target);
+		}
+		VectorStoreFile file = VectorStoreFile.open(target);
+		System.out.printf("Wrote %d documents of %d dimensions to %s%n", file.size(), file.dimensions(), target);
+	}
+
+}
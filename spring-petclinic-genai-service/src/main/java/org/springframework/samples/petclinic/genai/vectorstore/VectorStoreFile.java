@@ -0,0 +1,275 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.document.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only, memory-mapped file of embedded documents, searched in place rather than loaded on the heap.
+ * <p>
+ * Layout, little-endian:
+ * <ul>
+ * <li>header: magic <code>PCVS</code>, version, number of documents, dimensions, offset of the embeddings
+ * and offset of the blob (two longs), then the hash of the JSON it was converted from (long, 0 when written
+ * from a vector store)</li>
+ * <li>one 20-byte entry per document: offset of its data in the blob (long), then the lengths of its id,
+ * content and metadata</li>
+ * <li>the L2-normalized embeddings, as contiguous float32</li>
+ * <li>the blob: the UTF-8 id, content and JSON metadata of each document</li>
+ * </ul>
+ * Only the documents returned by a search are decoded. {@link #convert} turns the <code>vectorstore.json</code>
+ * format of <code>SimpleVectorStore</code> into this one, recording its {@link #hash} so that a changed JSON
+ * can be told apart.
+ */
+public final class VectorStoreFile {
+
+	private static final int MAGIC = 'P' << 24 | 'C' << 16 | 'V' << 8 | 'S';
+
+	private static final int VERSION = 2;
+
+	private static final int HEADER_SIZE = 40;
+
+	private static final int ENTRY_SIZE = 20;
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final ByteBuffer buffer;
+
+	private final int size;
+
+	private final int dimensions;
+
+	private final long embeddingsOffset;
+
+	private final long blobOffset;
+
+	private final long sourceHash;
+
+	private VectorStoreFile(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a vector store file");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported vector store file version " + buffer.getInt(4));
+		}
+		this.size = buffer.getInt(8);
+		this.dimensions = buffer.getInt(12);
+		this.embeddingsOffset = buffer.getLong(16);
+		this.blobOffset = buffer.getLong(24);
+		this.sourceHash = buffer.getLong(32);
+		if (size < 0 || dimensions < 0 || embeddingsOffset != HEADER_SIZE + (long) ENTRY_SIZE * size
+				|| blobOffset != embeddingsOffset + 4L * size * dimensions || blobOffset > buffer.capacity()) {
+			throw new IOException("Corrupted vector store file header");
+		}
+		for (int i = 0; i < size; i++) {
+			int entry = HEADER_SIZE + i * ENTRY_SIZE;
+			long offset = buffer.getLong(entry);
+			int idLength = buffer.getInt(entry + 8);
+			int contentLength = buffer.getInt(entry + 12);
+			int metadataLength = buffer.getInt(entry + 16);
+			if (offset < 0 || idLength < 0 || contentLength < 0 || metadataLength < 0
+					|| blobOffset + offset + idLength + contentLength + metadataLength > buffer.capacity()) {
+				throw new IOException("Corrupted vector store file entry " + i);
+			}
+		}
+	}
+
+	public static VectorStoreFile open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// The mapping stays valid after the channel is closed
+			return new VectorStoreFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	static VectorStoreFile of(ByteBuffer buffer) throws IOException {
+		return new VectorStoreFile(buffer);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int dimensions() {
+		return dimensions;
+	}
+
+	/**
+	 * @return the {@link #hash} of the JSON this file was converted from, 0 when written from a vector store
+	 */
+	public long sourceHash() {
+		return sourceHash;
+	}
+
+	/**
+	 * @return a view of the normalized embeddings, document after document
+	 */
+	FloatBuffer embeddings() {
+		return buffer.slice((int) embeddingsOffset, (int) (blobOffset - embeddingsOffset))
+			.order(ByteOrder.LITTLE_ENDIAN)
+			.asFloatBuffer();
+	}
+
+	public String id(int index) {
+		int entry = HEADER_SIZE + index * ENTRY_SIZE;
+		return string(blobOffset + buffer.getLong(entry), buffer.getInt(entry + 8));
+	}
+
+	/**
+	 * @return the document, without its embedding
+	 */
+	public Document document(int index) {
+		int entry = HEADER_SIZE + index * ENTRY_SIZE;
+		long offset = blobOffset + buffer.getLong(entry);
+		int idLength = buffer.getInt(entry + 8);
+		int contentLength = buffer.getInt(entry + 12);
+		int metadataLength = buffer.getInt(entry + 16);
+		String metadata = string(offset + idLength + contentLength, metadataLength);
+		try {
+			return new Document(string(offset, idLength), string(offset + idLength, contentLength),
+					objectMapper.readValue(metadata, new TypeReference<Map<String, Object>>() {
+					}));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Unable to read the metadata of document " + index, e);
+		}
+	}
+
+	private String string(long offset, int length) {
+		byte[] bytes = new byte[length];
+		buffer.get((int) offset, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write the documents to a temporary file, then move it in place.
+	 */
+	public static void write(Path file, List<Entry> entries) throws IOException {
+		write(file, entries, 0);
+	}
+
+	private static void write(Path file, List<Entry> entries, long sourceHash) throws IOException {
+		Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+		try {
+			Files.write(temp, encode(entries, sourceHash));
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	static byte[] encode(List<Entry> entries) throws IOException {
+		return encode(entries, 0);
+	}
+
+	private static byte[] encode(List<Entry> entries, long sourceHash) throws IOException {
+		int dimensions = entries.isEmpty() ? 0 : entries.get(0).embedding().length;
+		List<byte[]> blobs = new ArrayList<>(entries.size() * 3);
+		long blobSize = 0;
+		for (Entry entry : entries) {
+			if (entry.embedding().length != dimensions) {
+				throw new IllegalArgumentException("Document " + entry.id() + " has " + entry.embedding().length
+						+ " dimensions instead of " + dimensions);
+			}
+			blobs.add(entry.id().getBytes(StandardCharsets.UTF_8));
+			blobs.add(entry.content().getBytes(StandardCharsets.UTF_8));
+			blobs.add(objectMapper.writeValueAsBytes(entry.metadata()));
+		}
+		for (byte[] blob : blobs) {
+			blobSize += blob.length;
+		}
+		long embeddingsOffset = HEADER_SIZE + (long) ENTRY_SIZE * entries.size();
+		long blobOffset = embeddingsOffset + 4L * entries.size() * dimensions;
+		if (blobOffset + blobSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many documents for a single vector store file");
+		}
+		ByteBuffer out = ByteBuffer.allocate((int) (blobOffset + blobSize)).order(ByteOrder.LITTLE_ENDIAN);
+		out.putInt(MAGIC).putInt(VERSION).putInt(entries.size()).putInt(dimensions).putLong(embeddingsOffset).putLong(blobOffset)
+			.putLong(sourceHash);
+		long offset = 0;
+		for (int i = 0; i < entries.size(); i++) {
+			byte[] id = blobs.get(3 * i);
+			byte[] content = blobs.get(3 * i + 1);
+			byte[] metadata = blobs.get(3 * i + 2);
+			out.putLong(offset).putInt(id.length).putInt(content.length).putInt(metadata.length);
+			offset += id.length + content.length + metadata.length;
+		}
+		for (Entry entry : entries) {
+			for (float value : HnswIndex.normalize(entry.embedding())) {
+				out.putFloat(value);
+			}
+		}
+		blobs.forEach(out::put);
+		return out.array();
+	}
+
+	/**
+	 * Convert a <code>vectorstore.json</code> file written by <code>SimpleVectorStore</code>.
+	 */
+	public static void convert(InputStream json, Path file) throws IOException {
+		byte[] bytes = json.readAllBytes();
+		Map<String, StoredDocument> stored = objectMapper.readValue(bytes,
+				new TypeReference<LinkedHashMap<String, StoredDocument>>() {
+				});
+		write(file, stored.values().stream().map(StoredDocument::toEntry).toList(), hash(bytes));
+	}
+
+	/**
+	 * @return the first 8 bytes of the SHA-256 of a <code>vectorstore.json</code> file, never 0
+	 */
+	public static long hash(InputStream json) throws IOException {
+		return hash(json.readAllBytes());
+	}
+
+	private static long hash(byte[] json) {
+		try {
+			long hash = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(json)).getLong();
+			return hash == 0 ? 1 : hash;
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * A document and its embedding.
+	 */
+	public record Entry(String id, String content, Map<String, Object> metadata, float[] embedding) {
+	}
+
+	/**
+	 * A document as written by <code>SimpleVectorStore</code>.
+	 */
+	@JsonIgnoreProperties(ignoreUnknown = true)
+	record StoredDocument(String id, String content, Map<String, Object> metadata, float[] embedding) {
+
+		Entry toEntry() {
+			return new Entry(id, content == null ? "" : content, metadata == null ? Map.of() : metadata, embedding);
+		}
+	}
+
+}
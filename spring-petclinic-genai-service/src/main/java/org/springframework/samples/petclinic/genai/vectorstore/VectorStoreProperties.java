@@ -0,0 +1,63 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Configuration of the vector store holding the vets and knowledge-base documents.
+ *
+ * @param file {@link VectorStoreFile} mapped at startup, created from <code>vectorstore.json</code> or from the
+ * vets when missing
+ */
+@ConfigurationProperties(prefix = "genai.vectorstore")
+public record VectorStoreProperties(@DefaultValue Hnsw hnsw, @DefaultValue("vectorstore.bin") Path file,
+		@DefaultValue Quantization quantization, @DefaultValue EmbeddingCache embeddingCache) {
+
+	/**
+	 * @param m maximum number of links per node and layer (twice as many on the bottom layer)
+	 * @param efConstruction number of candidates considered when linking a new document, the higher the better the graph
+	 * @param efSearch number of candidates explored by a search, the higher the better the recall and the slower the search
+	 * @param seed seed of the random layer assignment, making the graph reproducible
+	 */
+	public record Hnsw(@DefaultValue("16") int m, @DefaultValue("200") int efConstruction,
+			@DefaultValue("64") int efSearch, @DefaultValue("42") long seed) {
+	}
+
+	/**
+	 * @param mode compact codes searched instead of the float32 embeddings
+	 * @param oversampling number of candidates re-ranked with the float32 embeddings per requested document
+	 */
+	public record Quantization(@DefaultValue("none") Mode mode, @DefaultValue("4") int oversampling) {
+
+		public enum Mode {
+
+			/**
+			 * Search the float32 embeddings.
+			 */
+			NONE,
+
+			/**
+			 * One byte per dimension.
+			 */
+			INT8,
+
+			/**
+			 * One bit per dimension.
+			 */
+			BINARY
+
+		}
+
+	}
+
+	/**
+	 * @param file where the embeddings of the documents are persisted between two startups
+	 * @param model id of the embedding model, part of the cache key so that changing the model invalidates the cache
+	 */
+	public record EmbeddingCache(@DefaultValue("embeddings.cache") Path file,
+			@DefaultValue("text-embedding-ada-002") String model) {
+	}
+
+}
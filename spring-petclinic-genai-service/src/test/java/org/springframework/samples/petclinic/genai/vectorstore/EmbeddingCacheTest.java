@@ -0,0 +1,105 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EmbeddingCacheTest {
+
+	@TempDir
+	Path directory;
+
+	private final EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@Test
+	void shouldOnlyEmbedNewOrChangedDocuments() throws IOException {
+		when(embeddingModel.embed(any(Document.class))).thenReturn(new float[] { 1, 2, 3 });
+		EmbeddingCache cache = cache("text-embedding-ada-002");
+		cache.embed(new Document("1", "James Carter", Map.of()));
+		cache.save();
+
+		EmbeddingCache reloaded = cache("text-embedding-ada-002");
+		assertThat(reloaded.embed(new Document("1", "James Carter", Map.of()))).containsExactly(1, 2, 3);
+		reloaded.embed(new Document("1", "James Carter, radiology", Map.of()));
+
+		verify(embeddingModel, times(2)).embed(any(Document.class));
+		assertThat(registry.get("petclinic.genai.embedding.cache.gets").tag("result", "hit").counter().count())
+			.isEqualTo(1);
+		assertThat(registry.get("petclinic.genai.embedding.cache.gets").tag("result", "miss").counter().count())
+			.isEqualTo(2);
+	}
+
+	@Test
+	void shouldMissWhenTheModelChanges() throws IOException {
+		when(embeddingModel.embed(any(Document.class))).thenReturn(new float[] { 1, 2, 3 });
+		EmbeddingCache cache = cache("text-embedding-ada-002");
+		cache.embed(new Document("1", "James Carter", Map.of()));
+		cache.save();
+
+		cache("text-embedding-3-small").embed(new Document("1", "James Carter", Map.of()));
+
+		verify(embeddingModel, times(2)).embed(any(Document.class));
+	}
+
+	@Test
+	void shouldDropTheEmbeddingsNotRequestedSinceLoaded() throws IOException {
+		when(embeddingModel.embed(any(Document.class))).thenReturn(new float[] { 1, 2, 3 });
+		EmbeddingCache cache = cache("text-embedding-ada-002");
+		cache.embed(new Document("1", "James Carter", Map.of()));
+		cache.embed(new Document("2", "Helen Leary", Map.of()));
+		cache.save();
+
+		EmbeddingCache reloaded = cache("text-embedding-ada-002");
+		assertThat(reloaded.size()).isEqualTo(2);
+		reloaded.retain(new Document("2", "Helen Leary", Map.of()));
+		reloaded.save();
+
+		assertThat(cache("text-embedding-ada-002").size()).isEqualTo(1);
+		verify(embeddingModel, times(2)).embed(any(Document.class));
+	}
+
+	@Test
+	void shouldIgnoreACorruptedFile() throws IOException {
+		Files.write(directory.resolve("embeddings.cache"), new byte[] { 1, 2, 3 });
+
+		assertThat(cache("text-embedding-ada-002").size()).isZero();
+	}
+
+	@Test
+	void shouldKeepEmbeddingWhenTheFileCannotBeWritten() throws IOException {
+		when(embeddingModel.embed(any(Document.class))).thenReturn(new float[] { 1, 2, 3 });
+		// A file instead of the parent directory, which fails even for root unlike a read-only directory
+		Path notADirectory = Files.createFile(directory.resolve("read-only"));
+		EmbeddingCache cache = new EmbeddingCache(embeddingModel,
+				new VectorStoreProperties.EmbeddingCache(notADirectory.resolve("embeddings.cache"), "text-embedding-ada-002"),
+				registry);
+		cache.embed(new Document("1", "James Carter", Map.of()));
+
+		cache.save();
+
+		assertThat(cache.embed(new Document("1", "James Carter", Map.of()))).containsExactly(1, 2, 3);
+		verify(embeddingModel, times(1)).embed(any(Document.class));
+	}
+
+	private EmbeddingCache cache(String model) {
+		return new EmbeddingCache(embeddingModel,
+				new VectorStoreProperties.EmbeddingCache(directory.resolve("embeddings.cache"), model), registry);
+	}
+
+}
@@ -0,0 +1,147 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HnswIndexTest {
+
+	private static final int DIMENSIONS = 32;
+
+	private static final int K = 10;
+
+	private final Random random = new Random(7);
+
+	@Test
+	void shouldFindMostOfTheExactNearestNeighbours() {
+		HnswIndex index = new HnswIndex(16, 200, 42);
+		List<float[]> vectors = randomVectors(5000);
+		vectors.forEach(index::insert);
+
+		double recall = recall(index, vectors, randomVectors(200), 64);
+
+		assertThat(recall).isGreaterThan(0.95);
+	}
+
+	@Test
+	void shouldNeverReturnDeletedNodes() {
+		HnswIndex index = new HnswIndex(8, 100, 42);
+		List<float[]> vectors = randomVectors(1000);
+		vectors.forEach(index::insert);
+		for (int node = 0; node < vectors.size(); node += 2) {
+			index.delete(node);
+		}
+
+		for (float[] query : randomVectors(50)) {
+			List<HnswIndex.Candidate> hits = index.search(query, K, 64);
+			assertThat(hits).hasSize(K).allMatch(hit -> hit.node() % 2 == 1);
+		}
+		assertThat(index.search(vectors.get(1), 1, 64)).singleElement()
+			.satisfies(hit -> assertThat(hit.node()).isEqualTo(1));
+	}
+
+	@Test
+	void shouldScoreByCosineSimilarity() {
+		HnswIndex index = new HnswIndex(4, 16, 42);
+		index.insert(new float[] { 1, 0 });
+		index.insert(new float[] { 0, 3 });
+		index.insert(new float[] { 2, 2 });
+
+		List<HnswIndex.Candidate> hits = index.search(new float[] { 0, 1 }, 3, 16);
+
+		assertThat(hits).extracting(HnswIndex.Candidate::node).containsExactly(1, 2, 0);
+		assertThat(hits.get(0).similarity()).isEqualTo(1f);
+	}
+
+	@Test
+	void shouldSearchMappedVectorsAndHeapVectorsAlike() {
+		List<float[]> vectors = randomVectors(1000);
+		FloatBuffer mapped = FloatBuffer.allocate(800 * DIMENSIONS);
+		vectors.subList(0, 800).forEach(vector -> mapped.put(HnswIndex.normalize(vector)));
+		HnswIndex index = new HnswIndex(16, 200, 42);
+		index.insertAll(mapped.flip(), DIMENSIONS);
+		vectors.subList(800, vectors.size()).forEach(index::insert);
+
+		assertThat(index.nodeCount()).isEqualTo(1000);
+		assertThat(index.vector(3)).containsExactly(HnswIndex.normalize(vectors.get(3)));
+		assertThat(recall(index, vectors, randomVectors(100), 64)).isGreaterThan(0.95);
+	}
+
+	@Test
+	void shouldKeepTheRecallWithInt8Codes() {
+		HnswIndex index = new HnswIndex(16, 200, 42,
+				QuantizedVectors.of(VectorStoreProperties.Quantization.Mode.INT8, VectorScorers.get()), 4);
+		List<float[]> vectors = randomVectors(5000);
+		vectors.forEach(index::insert);
+
+		double recall = recall(index, vectors, randomVectors(200), 64);
+
+		assertThat(recall).isGreaterThan(0.95);
+		assertThat(index.quantizedBytes()).isEqualTo(5000L * (DIMENSIONS + Float.BYTES));
+	}
+
+	@Test
+	void shouldRerankBinaryCandidatesWithTheExactVectors() {
+		HnswIndex index = new HnswIndex(16, 200, 42,
+				QuantizedVectors.of(VectorStoreProperties.Quantization.Mode.BINARY, VectorScorers.get()), 4);
+		List<float[]> vectors = randomVectors(1000);
+		vectors.forEach(index::insert);
+
+		assertThat(index.quantizedBytes()).isEqualTo(1000L * Long.BYTES);
+		for (int node = 0; node < vectors.size(); node += 50) {
+			float[] query = vectors.get(node);
+			List<HnswIndex.Candidate> hits = index.search(query, K, 64);
+			assertThat(hits).hasSize(K);
+			assertThat(hits.get(0).node()).isEqualTo(node);
+			assertThat(hits.get(0).similarity()).isCloseTo(1f, within(1e-5f));
+			assertThat(hits.get(1).similarity())
+				.isEqualTo(HnswIndex.dot(HnswIndex.normalize(query), index.vector(hits.get(1).node())));
+		}
+	}
+
+	/**
+	 * Share of the exact top-K found by the index. Latencies are measured by {@link HnswSearchBenchmark}.
+	 */
+	private static double recall(HnswIndex index, List<float[]> vectors, List<float[]> queries, int ef) {
+		List<float[]> normalized = vectors.stream().map(HnswIndex::normalize).toList();
+		int found = 0;
+		for (float[] query : queries) {
+			Set<Integer> exact = exactNearest(normalized, query);
+			List<HnswIndex.Candidate> hits = index.search(query, K, ef);
+			found += (int) hits.stream().filter(hit -> exact.contains(hit.node())).count();
+		}
+		return (double) found / (K * queries.size());
+	}
+
+	private static Set<Integer> exactNearest(List<float[]> normalized, float[] query) {
+		float[] target = HnswIndex.normalize(query);
+		return new HashSet<>(IntStream.range(0, normalized.size())
+			.boxed()
+			.sorted(Comparator.comparingDouble(node -> -HnswIndex.dot(target, normalized.get(node))))
+			.limit(K)
+			.toList());
+	}
+
+	private List<float[]> randomVectors(int count) {
+		List<float[]> vectors = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			float[] vector = new float[DIMENSIONS];
+			for (int d = 0; d < DIMENSIONS; d++) {
+				vector[d] = (float) random.nextGaussian();
+			}
+			vectors.add(vector);
+		}
+		return vectors;
+	}
+
+}
@@ -0,0 +1,107 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Search throughput of the HNSW index for each quantization mode. The setup prints the memory taken by the
+ * vectors and the recall@10 against a brute-force search, to weigh against the throughput.
+ * <p>
+ * The vectors are drawn around random centroids, closer to real embeddings than uniformly random vectors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HnswSearchBenchmark {
+
+	private static final int K = 10;
+
+	@Param({ "NONE", "INT8", "BINARY" })
+	public VectorStoreProperties.Quantization.Mode quantization;
+
+	@Param({ "384", "1536" })
+	public int dimensions;
+
+	@Param("10000")
+	public int size;
+
+	@Param("64")
+	public int efSearch;
+
+	@Param("4")
+	public int oversampling;
+
+	private HnswIndex index;
+
+	private List<float[]> queries;
+
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Random random = new Random(42);
+		List<float[]> centroids = vectors(random, 100, null, 1);
+		List<float[]> vectors = vectors(random, size, centroids, 0.5);
+		queries = vectors(random, 100, centroids, 0.5);
+		index = new HnswIndex(16, 200, 42, QuantizedVectors.of(quantization, VectorScorers.get()), oversampling);
+		vectors.forEach(index::insert);
+
+		List<float[]> normalized = vectors.stream().map(HnswIndex::normalize).toList();
+		int found = 0;
+		for (float[] query : queries) {
+			float[] target = HnswIndex.normalize(query);
+			Set<Integer> exact = new HashSet<>(IntStream.range(0, normalized.size())
+				.boxed()
+				.sorted(Comparator.comparingDouble(node -> -HnswIndex.dot(target, normalized.get(node))))
+				.limit(K)
+				.toList());
+			found += (int) index.search(query, K, efSearch).stream().filter(hit -> exact.contains(hit.node())).count();
+		}
+		System.out.printf("%n%s: float32 vectors %d KiB, quantized codes %d KiB, recall@%d=%.3f, scorer %s%n", quantization,
+				(long) size * dimensions * Float.BYTES / 1024, index.quantizedBytes() / 1024, K,
+				(double) found / (K * queries.size()), VectorScorers.get().getClass().getSimpleName());
+	}
+
+	@Benchmark
+	public List<HnswIndex.Candidate> search() {
+		float[] query = queries.get(next);
+		next = (next + 1) % queries.size();
+		return index.search(query, K, efSearch);
+	}
+
+	private List<float[]> vectors(Random random, int count, List<float[]> centroids, double spread) {
+		List<float[]> vectors = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			float[] centroid = centroids == null ? null : centroids.get(random.nextInt(centroids.size()));
+			float[] vector = new float[dimensions];
+			for (int d = 0; d < dimensions; d++) {
+				vector[d] = (float) ((centroid == null ? 0 : centroid[d]) + spread * random.nextGaussian());
+			}
+			vectors.add(vector);
+		}
+		return vectors;
+	}
+
+}
@@ -0,0 +1,108 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HnswVectorStoreTest {
+
+	/**
+	 * Embedding of each document content and query.
+	 */
+	private static final Map<String, float[]> EMBEDDINGS = Map.of(
+			"James Carter", new float[] { 1, 0 },
+			"Helen Leary", new float[] { 0, 1 },
+			"Linda Douglas", new float[] { 1, 1 },
+			"Helen Leary, radiology", new float[] { 0.1f, 1 });
+
+	private final EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+
+	private final HnswVectorStore store = new HnswVectorStore(embeddingModel,
+			new VectorStoreProperties(new VectorStoreProperties.Hnsw(16, 200, 64, 42), null,
+					new VectorStoreProperties.Quantization(VectorStoreProperties.Quantization.Mode.NONE, 4), null));
+
+	@BeforeEach
+	void setup() {
+		when(embeddingModel.embed(any(Document.class)))
+			.thenAnswer(invocation -> EMBEDDINGS.get(invocation.<Document>getArgument(0).getContent()));
+		when(embeddingModel.embed(anyString())).thenAnswer(invocation -> EMBEDDINGS.get(invocation.<String>getArgument(0)));
+	}
+
+	@Test
+	void shouldReplaceADocumentAddedWithAnExistingId() {
+		store.add(List.of(document("carter", "James Carter"), document("leary", "Helen Leary")));
+
+		store.add(List.of(document("leary", "Helen Leary, radiology")));
+
+		assertThat(store.size()).isEqualTo(2);
+		assertThat(store.get("leary")).map(Document::getContent).contains("Helen Leary, radiology");
+		assertThat(search("Helen Leary", 2, 0)).extracting(Document::getContent)
+			.containsExactly("Helen Leary, radiology", "James Carter");
+		// The replaced embedding stays in the graph until compaction
+		assertThat(store.nodeCount()).isEqualTo(3);
+	}
+
+	@Test
+	void shouldDeleteDocuments() {
+		store.add(List.of(document("carter", "James Carter"), document("leary", "Helen Leary")));
+
+		assertThat(store.delete(List.of("carter", "unknown"))).isEqualTo(Optional.of(true));
+		assertThat(store.delete(List.of("unknown"))).isEqualTo(Optional.of(false));
+
+		assertThat(store.ids()).containsExactly("leary");
+		assertThat(store.get("carter")).isEmpty();
+		assertThat(search("James Carter", 2, 0)).extracting(Document::getId).containsExactly("leary");
+	}
+
+	@Test
+	void shouldCompactOnceTheDeletedDocumentsOutnumberTheLiveOnes() {
+		store.add(List.of(document("carter", "James Carter"), document("leary", "Helen Leary"),
+				document("douglas", "Linda Douglas")));
+
+		store.delete(List.of("carter"));
+		assertThat(store.nodeCount()).isEqualTo(3);
+		store.delete(List.of("leary"));
+
+		assertThat(store.nodeCount()).isEqualTo(1);
+		assertThat(store.get("douglas")).map(Document::getContent).contains("Linda Douglas");
+		assertThat(search("James Carter", 3, 0)).extracting(Document::getId).containsExactly("douglas");
+	}
+
+	@Test
+	void shouldOnlyReturnTheDocumentsAboveTheSimilarityThreshold() {
+		store.add(List.of(document("carter", "James Carter"), document("leary", "Helen Leary"),
+				document("douglas", "Linda Douglas")));
+
+		List<Document> results = search("James Carter", 3, 0.5);
+
+		assertThat(results).extracting(Document::getId).containsExactly("carter", "douglas");
+		assertThat(distance(results.get(0))).isCloseTo(0, within(1e-5));
+		assertThat(distance(results.get(1))).isCloseTo(1 - Math.sqrt(0.5), within(1e-5));
+	}
+
+	private List<Document> search(String query, int topK, double similarityThreshold) {
+		return store.similaritySearch(SearchRequest.query(query).withTopK(topK).withSimilarityThreshold(similarityThreshold));
+	}
+
+	private static double distance(Document result) {
+		return ((Number) result.getMetadata().get(HnswVectorStore.DISTANCE)).doubleValue();
+	}
+
+	private static Document document(String id, String content) {
+		return new Document(id, content, Map.of());
+	}
+
+}
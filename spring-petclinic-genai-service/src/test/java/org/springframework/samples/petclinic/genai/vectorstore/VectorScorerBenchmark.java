@@ -0,0 +1,85 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of scoring one vector with the scalar and the SIMD (Vector API) implementations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class VectorScorerBenchmark {
+
+	@Param({ "scalar", "simd" })
+	public String implementation;
+
+	@Param({ "384", "1536" })
+	public int dimensions;
+
+	private VectorScorer scorer;
+
+	private float[] leftFloats;
+
+	private float[] rightFloats;
+
+	private byte[] leftBytes;
+
+	private byte[] rightBytes;
+
+	private long[] leftBits;
+
+	private long[] rightBits;
+
+	@Setup
+	public void setup() {
+		scorer = implementation.equals("simd") ? VectorScorers.get() : VectorScorers.scalar();
+		if (implementation.equals("simd") && scorer == VectorScorers.scalar()) {
+			throw new IllegalStateException("The Vector API is not available");
+		}
+		Random random = new Random(42);
+		leftFloats = new float[dimensions];
+		rightFloats = new float[dimensions];
+		for (int i = 0; i < dimensions; i++) {
+			leftFloats[i] = (float) random.nextGaussian();
+			rightFloats[i] = (float) random.nextGaussian();
+		}
+		leftBytes = new byte[dimensions];
+		rightBytes = new byte[dimensions];
+		random.nextBytes(leftBytes);
+		random.nextBytes(rightBytes);
+		leftBits = random.longs(dimensions / 64).toArray();
+		rightBits = random.longs(dimensions / 64).toArray();
+	}
+
+	@Benchmark
+	public float float32() {
+		return scorer.dot(leftFloats, rightFloats);
+	}
+
+	@Benchmark
+	public int int8() {
+		return scorer.dot(leftBytes, 0, rightBytes, 0, dimensions);
+	}
+
+	@Benchmark
+	public int binary() {
+		return scorer.hamming(leftBits, 0, rightBits, 0, leftBits.length);
+	}
+
+}
@@ -0,0 +1,56 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class VectorScorersTest {
+
+	private final Random random = new Random(7);
+
+	private final VectorScorer scalar = VectorScorers.scalar();
+
+	// The SIMD implementation when the tests run with the Vector API
+	private final VectorScorer scorer = VectorScorers.get();
+
+	@Test
+	void shouldComputeTheSameFloatDotProducts() {
+		for (int length : new int[] { 1, 7, 64, 387, 1536 }) {
+			float[] left = new float[length];
+			float[] right = new float[length];
+			for (int i = 0; i < length; i++) {
+				left[i] = (float) random.nextGaussian();
+				right[i] = (float) random.nextGaussian();
+			}
+
+			assertThat(scorer.dot(left, right)).isCloseTo(scalar.dot(left, right), within(1e-3f));
+		}
+	}
+
+	@Test
+	void shouldComputeTheSameInt8DotProducts() {
+		for (int length : new int[] { 1, 7, 64, 387, 1536 }) {
+			byte[] left = new byte[length + 3];
+			byte[] right = new byte[length + 5];
+			random.nextBytes(left);
+			random.nextBytes(right);
+
+			assertThat(scorer.dot(left, 3, right, 5, length)).isEqualTo(scalar.dot(left, 3, right, 5, length));
+		}
+		byte[] extreme = { -128, -128, 127, 127, -128, -128, 127, 127 };
+		assertThat(scalar.dot(extreme, 0, extreme, 0, extreme.length)).isEqualTo(4 * 128 * 128 + 4 * 127 * 127);
+	}
+
+	@Test
+	void shouldCountDifferingBits() {
+		long[] left = { 0b1011L, -1L, 0L };
+		long[] right = { 0L, 0b0001L, -1L, 0L };
+
+		assertThat(scorer.hamming(left, 0, right, 1, 2)).isEqualTo(2);
+		assertThat(scalar.hamming(left, 0, right, 0, 3)).isEqualTo(3 + 63 + 64);
+	}
+
+}
@@ -0,0 +1,80 @@
+package org.springframework.samples.petclinic.genai.vectorstore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VectorStoreFileTest {
+
+	@Test
+	void shouldReadBackWhatWasWritten(@TempDir Path directory) throws IOException {
+		Path path = directory.resolve("vectorstore.bin");
+		VectorStoreFile.write(path, List.of(
+				new VectorStoreFile.Entry("carter", "James Carter", Map.of("specialties", List.of()), new float[] { 3, 4 }),
+				new VectorStoreFile.Entry("leary", "Helen Léary", Map.of("specialties", List.of("radiology")),
+						new float[] { 0, 2 })));
+
+		VectorStoreFile file = VectorStoreFile.open(path);
+
+		assertThat(file.size()).isEqualTo(2);
+		assertThat(file.dimensions()).isEqualTo(2);
+		assertThat(file.id(1)).isEqualTo("leary");
+		Document leary = file.document(1);
+		assertThat(leary.getContent()).isEqualTo("Helen Léary");
+		assertThat(leary.getMetadata()).containsEntry("specialties", List.of("radiology"));
+		float[] embeddings = new float[4];
+		file.embeddings().get(embeddings);
+		assertThat(embeddings).containsExactly(0.6f, 0.8f, 0, 1);
+		assertThat(file.sourceHash()).isZero();
+	}
+
+	@Test
+	void shouldConvertSimpleVectorStoreJson(@TempDir Path directory) throws IOException {
+		String json = """
+				{
+				  "7912125d" : {
+				    "embedding" : [ 1.0, 0.0, 0.0 ],
+				    "content" : "{id=1, firstName=James, lastName=Carter}",
+				    "id" : "7912125d",
+				    "metadata" : { "source" : "vets" },
+				    "media" : [ ]
+				  }
+				}
+				""";
+		Path path = directory.resolve("vectorstore.bin");
+
+		VectorStoreFile.convert(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), path);
+
+		VectorStoreFile file = VectorStoreFile.open(path);
+		assertThat(file.size()).isEqualTo(1);
+		assertThat(file.document(0).getId()).isEqualTo("7912125d");
+		assertThat(file.document(0).getMetadata()).containsEntry("source", "vets");
+		assertThat(file.sourceHash()).isEqualTo(VectorStoreFile.hash(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))))
+			.isNotEqualTo(VectorStoreFile.hash(new ByteArrayInputStream(json.replace("Carter", "Carver").getBytes(StandardCharsets.UTF_8))));
+	}
+
+	@Test
+	void shouldRejectCorruptedFile() throws IOException {
+		byte[] bytes = VectorStoreFile.encode(List.of(new VectorStoreFile.Entry("carter", "James Carter", Map.of(),
+				new float[] { 1, 0 })));
+
+		byte[] badMagic = bytes.clone();
+		badMagic[0] ^= 1;
+		assertThatThrownBy(() -> VectorStoreFile.of(ByteBuffer.wrap(badMagic))).isInstanceOf(IOException.class);
+		byte[] truncated = new byte[bytes.length - 1];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+		assertThatThrownBy(() -> VectorStoreFile.of(ByteBuffer.wrap(truncated))).isInstanceOf(IOException.class);
+	}
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.model;
+
+import jakarta.persistence.*;
+
+/**
+ * Version of the appointments of a vet, bumped by every booking so that two instances booking the same vet
+ * concurrently cannot both commit: the second one fails with an optimistic locking exception.
+ */
+@Entity
+@Table(name = "appointment_books")
+public class AppointmentBook {
+
+    @Id
+    @Column(name = "vet_id")
+    private Integer vetId;
+
+    @Version
+    private Integer version;
+
+    @Column(name = "bookings")
+    private long bookings;
+
+    protected AppointmentBook() {
+    }
+
+    public AppointmentBook(int vetId) {
+        this.vetId = vetId;
+    }
+
+    public Integer getVetId() {
+        return this.vetId;
+    }
+
+    /**
+     * Record a booking, which increments the version when the transaction is flushed.
+     */
+    public void booked() {
+        this.bookings++;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.model;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository class for <code>Appointment</code> domain objects.
+ */
+public interface AppointmentRepository extends JpaRepository<Appointment, Integer> {
+
+    List<Appointment> findByEndTimeAfter(LocalDateTime time);
+
+    List<Appointment> findByVetIdAndEndTimeAfter(int vetId, LocalDateTime time);
+
+    List<Appointment> findByVetIdAndStartTimeBeforeAndEndTimeAfterOrderByStartTime(int vetId, LocalDateTime to, LocalDateTime from);
+
+    @Query("SELECT COUNT(a) FROM Appointment a WHERE a.vetId = :vetId AND a.startTime < :end AND a.endTime > :start")
+    long countOverlapping(@Param("vetId") int vetId, @Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+}
@@ -15,7 +15,11 @@
  */
 package org.springframework.samples.petclinic.vets.model;
 
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
 
 /**
  * Repository class for <code>Vet</code> domain objects All method names are compliant with Spring Data naming
@@ -28,4 +32,14 @@ import org.springframework.data.jpa.repository.JpaRepository;
  * @author Maciej Szarlinski
  */
 public interface VetRepository extends JpaRepository<Vet, Integer> {
+
+    @Override
+    @Cacheable("vets")
+    List<Vet> findAll();
+
+    /**
+     * Load every vet together with its specialties in a single query, bypassing the <code>vets</code> cache.
+     */
+    @Query("SELECT DISTINCT v FROM Vet v LEFT JOIN FETCH v.specialties ORDER BY v.id")
+    List<Vet> loadAll();
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.model;
+
+import jakarta.persistence.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+
+/**
+ * Weekly working hours of a vet on a given day. A vet may have several shifts on the same day.
+ */
+@Entity
+@Table(name = "vet_schedules")
+public class WorkingHours {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(name = "vet_id")
+    private int vetId;
+
+    /**
+     * ISO-8601 day of the week, from 1 (Monday) to 7 (Sunday).
+     */
+    @Column(name = "day_of_week")
+    private int dayOfWeek;
+
+    @Column(name = "start_time")
+    private LocalTime startTime;
+
+    @Column(name = "end_time")
+    private LocalTime endTime;
+
+    public Integer getId() {
+        return this.id;
+    }
+
+    public int getVetId() {
+        return this.vetId;
+    }
+
+    public DayOfWeek getDayOfWeek() {
+        return DayOfWeek.of(this.dayOfWeek);
+    }
+
+    public LocalTime getStartTime() {
+        return this.startTime;
+    }
+
+    public LocalTime getEndTime() {
+        return this.endTime;
+    }
+}
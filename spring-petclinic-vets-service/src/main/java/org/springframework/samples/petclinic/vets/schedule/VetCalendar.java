@@ -0,0 +1,120 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.schedule;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of the time slots booked with one vet, as sorted arrays of non-overlapping
+ * <code>[start, end)</code> intervals in epoch seconds.
+ * <p>
+ * Checking a slot is a binary search. Booking or releasing one copies the arrays, which keeps readers
+ * lock-free and lets writers publish a new calendar with a compare-and-set.
+ */
+final class VetCalendar {
+
+    static final VetCalendar EMPTY = new VetCalendar(new long[0], new long[0]);
+
+    private final long[] starts;
+    private final long[] ends;
+
+    private VetCalendar(long[] starts, long[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /**
+     * @param intervals <code>[start, end)</code> pairs, in any order
+     * @throws IllegalArgumentException when two intervals overlap
+     */
+    static VetCalendar of(long[][] intervals) {
+        long[][] sorted = intervals.clone();
+        Arrays.sort(sorted, (left, right) -> Long.compare(left[0], right[0]));
+        long[] starts = new long[sorted.length];
+        long[] ends = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0 && sorted[i][0] < ends[i - 1]) {
+                throw new IllegalArgumentException("Overlapping slots starting at " + starts[i - 1] + " and " + sorted[i][0]);
+            }
+            starts[i] = sorted[i][0];
+            ends[i] = sorted[i][1];
+        }
+        return new VetCalendar(starts, ends);
+    }
+
+    int size() {
+        return starts.length;
+    }
+
+    boolean isFree(long start, long end) {
+        int index = firstEndingAfter(start);
+        return index == ends.length || starts[index] >= end;
+    }
+
+    /**
+     * @return a calendar with this slot booked, or <code>null</code> if it overlaps a booked slot
+     */
+    VetCalendar book(long start, long end) {
+        int index = firstEndingAfter(start);
+        if (index < ends.length && starts[index] < end) {
+            return null;
+        }
+        return new VetCalendar(insert(starts, index, start), insert(ends, index, end));
+    }
+
+    /**
+     * @return a calendar without this slot, or this calendar if the slot is not booked
+     */
+    VetCalendar release(long start, long end) {
+        int index = Arrays.binarySearch(starts, start);
+        if (index < 0 || ends[index] != end) {
+            return this;
+        }
+        return new VetCalendar(remove(starts, index), remove(ends, index));
+    }
+
+    /**
+     * Intervals don't overlap, so their ends are sorted as well.
+     */
+    private int firstEndingAfter(long time) {
+        int low = 0;
+        int high = ends.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long[] insert(long[] values, int index, long value) {
+        long[] result = new long[values.length + 1];
+        System.arraycopy(values, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(values, index, result, index + 1, values.length - index);
+        return result;
+    }
+
+    private static long[] remove(long[] values, int index) {
+        long[] result = new long[values.length - 1];
+        System.arraycopy(values, 0, result, 0, index);
+        System.arraycopy(values, index + 1, result, index, values.length - index - 1);
+        return result;
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.schedule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.vets.model.Appointment;
+import org.springframework.samples.petclinic.vets.model.AppointmentBook;
+import org.springframework.samples.petclinic.vets.model.AppointmentBookRepository;
+import org.springframework.samples.petclinic.vets.model.AppointmentRepository;
+import org.springframework.samples.petclinic.vets.model.VetRepository;
+import org.springframework.samples.petclinic.vets.model.WorkingHours;
+import org.springframework.samples.petclinic.vets.model.WorkingHoursRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Availability of the vets, answered from one in-memory {@link VetCalendar} per vet and their weekly working hours.
+ * <p>
+ * Booking first reserves the slot in memory with a compare-and-set, so that conflicting requests are
+ * rejected without touching the database. The appointment is then inserted in a transaction which checks
+ * the table for overlaps and bumps the version of the {@link AppointmentBook} of the vet: when another
+ * instance books the same vet concurrently, one of the two transactions fails its version check and is
+ * rejected with a conflict, instead of both inserting overlapping appointments.
+ * <p>
+ * A calendar holds the appointments ending after its last load minus {@link #HISTORY}; slots starting
+ * before that are checked against the table instead. Calendars are reloaded from the table when they are
+ * older than {@link #REFRESH}, and after a conflict detected by the table, so that the bookings and
+ * cancellations of other instances are caught up with. A reload keeps the slots being booked by this
+ * instance. Calendars are only created for vets which exist.
+ */
+@Component
+public class VetCalendars {
+
+    private static final Logger log = LoggerFactory.getLogger(VetCalendars.class);
+
+    private static final Duration HISTORY = Duration.ofDays(1);
+    private static final Duration REFRESH = Duration.ofSeconds(30);
+
+    private final AppointmentRepository appointmentRepository;
+    private final WorkingHoursRepository workingHoursRepository;
+    private final VetRepository vetRepository;
+    private final AppointmentBookRepository appointmentBookRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<Integer, Schedule> schedules = new ConcurrentHashMap<>();
+    private volatile Map<Integer, List<WorkingHours>> workingHours = Map.of();
+
+    VetCalendars(AppointmentRepository appointmentRepository, WorkingHoursRepository workingHoursRepository,
+                 VetRepository vetRepository, AppointmentBookRepository appointmentBookRepository,
+                 PlatformTransactionManager transactionManager) {
+        this.appointmentRepository = appointmentRepository;
+        this.workingHoursRepository = workingHoursRepository;
+        this.vetRepository = vetRepository;
+        this.appointmentBookRepository = appointmentBookRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        this.workingHours = workingHoursRepository.findAll().stream()
+            .collect(Collectors.groupingBy(WorkingHours::getVetId));
+        LocalDateTime from = LocalDateTime.now().minus(HISTORY);
+        Map<Integer, List<Appointment>> appointments = appointmentRepository.findByEndTimeAfter(from)
+            .stream()
+            .collect(Collectors.groupingBy(Appointment::getVetId));
+        // Appointments reference their vet, so the vet exists
+        appointments.forEach((vetId, vetAppointments) -> schedules.computeIfAbsent(vetId, id -> new Schedule())
+            .reloaded(from, vetAppointments, Set.of()));
+        log.info("Loaded the calendars of {} vets", appointments.size());
+    }
+
+    /**
+     * @return whether the vet exists, works during the whole slot and has nothing booked in it
+     */
+    public boolean isAvailable(int vetId, LocalDateTime start, LocalDateTime end) {
+        Schedule schedule = schedule(vetId);
+        if (schedule == null || !isWorking(vetId, start, end)) {
+            return false;
+        }
+        upToDate(vetId, schedule);
+        if (start.isBefore(schedule.from)) {
+            return appointmentRepository.countOverlapping(vetId, start, end) == 0;
+        }
+        return schedule.calendar.get().isFree(epochSecond(start), epochSecond(end));
+    }
+
+    public List<Appointment> appointments(int vetId, LocalDateTime from, LocalDateTime to) {
+        return appointmentRepository.findByVetIdAndStartTimeBeforeAndEndTimeAfterOrderByStartTime(vetId, to, from);
+    }
+
+    /**
+     * @throws ResponseStatusException with status 409 when the slot is not available, 404 when the vet does not exist
+     */
+    public Appointment book(int vetId, Integer petId, LocalDateTime start, LocalDateTime end) {
+        if (!start.isBefore(end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The appointment must end after it starts");
+        }
+        Schedule schedule = schedule(vetId);
+        if (schedule == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Vet " + vetId + " not found");
+        }
+        if (!isWorking(vetId, start, end)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Vet " + vetId + " does not work from " + start + " to " + end);
+        }
+        upToDate(vetId, schedule);
+        // Slots the calendar doesn't cover are only checked against the table
+        Reservation reservation = start.isBefore(schedule.from) ? null : reserve(schedule, vetId, start, end);
+
+        Appointment appointment;
+        try {
+            appointment = transactionTemplate.execute(status -> {
+                AppointmentBook book = appointmentBookRepository.findById(vetId)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Vet " + vetId + " not found"));
+                if (appointmentRepository.countOverlapping(vetId, start, end) > 0) {
+                    throw slotTaken(vetId, start, end);
+                }
+                Appointment booked = new Appointment();
+                booked.setVetId(vetId);
+                booked.setPetId(petId);
+                booked.setStartTime(start);
+                booked.setEndTime(end);
+                book.booked();
+                return appointmentRepository.save(booked);
+            });
+        } catch (OptimisticLockingFailureException e) {
+            // Booked concurrently by another instance, which may have taken the slot
+            cancelReservation(schedule, reservation);
+            reload(vetId, schedule);
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Vet " + vetId + " was booked concurrently, please retry", e);
+        } catch (RuntimeException e) {
+            cancelReservation(schedule, reservation);
+            if (e instanceof ResponseStatusException statusException && statusException.getStatusCode() == HttpStatus.CONFLICT) {
+                // Booked by another instance: catch up with the table
+                reload(vetId, schedule);
+            }
+            throw e;
+        }
+        if (reservation != null) {
+            schedule.committed.add(reservation.slot());
+            schedule.reserving.remove(reservation);
+        }
+        return appointment;
+    }
+
+    private static void cancelReservation(Schedule schedule, Reservation reservation) {
+        if (reservation != null) {
+            // No longer reserving before being released, so that a reload in between drops it too
+            schedule.reserving.remove(reservation);
+            release(schedule.calendar, reservation.slot().start(), reservation.slot().end());
+        }
+    }
+
+    public void cancel(int vetId, int appointmentId) {
+        Appointment appointment = transactionTemplate.execute(status -> {
+            Appointment cancelled = appointmentRepository.findById(appointmentId)
+                .filter(candidate -> candidate.getVetId() == vetId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Appointment " + appointmentId + " not found"));
+            appointmentRepository.delete(cancelled);
+            return cancelled;
+        });
+        Schedule schedule = schedules.get(vetId);
+        if (schedule == null) {
+            // Not loaded by this instance yet, the table is the only place to update
+            return;
+        }
+        Slot slot = new Slot(epochSecond(appointment.getStartTime()), epochSecond(appointment.getEndTime()));
+        schedule.committed.remove(slot);
+        release(schedule.calendar, slot.start(), slot.end());
+    }
+
+    private Reservation reserve(Schedule schedule, int vetId, LocalDateTime start, LocalDateTime end) {
+        Reservation reservation = new Reservation(new Slot(epochSecond(start), epochSecond(end)));
+        // Registered before the calendar is changed, so that a concurrent reload either keeps it or is retried
+        schedule.reserving.add(reservation);
+        VetCalendar current;
+        VetCalendar booked;
+        do {
+            current = schedule.calendar.get();
+            booked = current.book(reservation.slot().start(), reservation.slot().end());
+            if (booked == null) {
+                schedule.reserving.remove(reservation);
+                throw slotTaken(vetId, start, end);
+            }
+        } while (!schedule.calendar.compareAndSet(current, booked));
+        return reservation;
+    }
+
+    /**
+     * Reload the schedule of the vet if it is older than {@link #REFRESH}.
+     */
+    private void upToDate(int vetId, Schedule schedule) {
+        long loadedAt = schedule.loadedAt.get();
+        long now = System.currentTimeMillis();
+        // A single caller reloads, the others keep answering from the current calendar meanwhile
+        if (now - loadedAt > REFRESH.toMillis() && schedule.loadedAt.compareAndSet(loadedAt, now)) {
+            reload(vetId, schedule);
+        }
+    }
+
+    private void reload(int vetId, Schedule schedule) {
+        LocalDateTime from = LocalDateTime.now().minus(HISTORY);
+        // Committed before the query, so the table returns them
+        Set<Slot> committed = Set.copyOf(schedule.committed);
+        schedule.reloaded(from, appointmentRepository.findByVetIdAndEndTimeAfter(vetId, from), committed);
+    }
+
+    private boolean isWorking(int vetId, LocalDateTime start, LocalDateTime end) {
+        List<WorkingHours> shifts = workingHours.get(vetId);
+        if (shifts == null) {
+            // Vets without a schedule can be booked at any time
+            return true;
+        }
+        if (!start.toLocalDate().equals(end.toLocalDate()) && !end.toLocalTime().equals(LocalTime.MIDNIGHT)) {
+            return false;
+        }
+        LocalTime startTime = start.toLocalTime();
+        LocalTime endTime = end.toLocalTime().equals(LocalTime.MIDNIGHT) ? LocalTime.MAX : end.toLocalTime();
+        for (WorkingHours shift : shifts) {
+            if (shift.getDayOfWeek() == start.getDayOfWeek()
+                && !startTime.isBefore(shift.getStartTime())
+                && !endTime.isAfter(shift.getEndTime())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the schedule of the vet, <code>null</code> when the vet does not exist
+     */
+    private Schedule schedule(int vetId) {
+        Schedule schedule = schedules.get(vetId);
+        if (schedule != null) {
+            return schedule;
+        }
+        if (!appointmentBookRepository.existsById(vetId)) {
+            if (!vetRepository.existsById(vetId)) {
+                return null;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> appointmentBookRepository.saveAndFlush(new AppointmentBook(vetId)));
+            } catch (DataIntegrityViolationException e) {
+                // Created concurrently, or the vet has just been deleted
+                if (!appointmentBookRepository.existsById(vetId)) {
+                    return null;
+                }
+            }
+        }
+        return schedules.computeIfAbsent(vetId, id -> new Schedule());
+    }
+
+    private static void release(AtomicReference<VetCalendar> calendar, long start, long end) {
+        calendar.updateAndGet(current -> current.release(start, end));
+    }
+
+    private static VetCalendar toCalendar(List<Appointment> appointments, Collection<Slot> bookedHere) {
+        long[][] intervals = new long[appointments.size()][];
+        for (int i = 0; i < intervals.length; i++) {
+            Appointment appointment = appointments.get(i);
+            intervals[i] = new long[]{epochSecond(appointment.getStartTime()), epochSecond(appointment.getEndTime())};
+        }
+        VetCalendar calendar = VetCalendar.of(intervals);
+        for (Slot slot : bookedHere) {
+            // Already returned by the table, or a reservation about to be rejected by it
+            VetCalendar booked = calendar.book(slot.start(), slot.end());
+            if (booked != null) {
+                calendar = booked;
+            }
+        }
+        return calendar;
+    }
+
+    private static long epochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Calendar of one vet, with the window it covers and the slots booked by this instance that
+     * the last load of the table may have missed.
+     */
+    private static final class Schedule {
+
+        final AtomicReference<VetCalendar> calendar = new AtomicReference<>(VetCalendar.EMPTY);
+        // Reserved in the calendar, or about to be, not committed yet
+        final Set<Reservation> reserving = ConcurrentHashMap.newKeySet();
+        // Committed, possibly after the table was last queried
+        final Set<Slot> committed = ConcurrentHashMap.newKeySet();
+        final AtomicLong loadedAt = new AtomicLong();
+        // Until the first load, every slot is checked against the table
+        volatile LocalDateTime from = LocalDateTime.MAX;
+
+        /**
+         * @param committedBefore slots committed before the appointments were queried
+         */
+        void reloaded(LocalDateTime from, List<Appointment> appointments, Set<Slot> committedBefore) {
+            // Narrow the window first: until the calendar is replaced, the previous one covers more
+            this.from = from;
+            VetCalendar current;
+            VetCalendar reloaded;
+            do {
+                // Retried when a slot is reserved or released meanwhile, so that it is neither lost nor resurrected
+                current = calendar.get();
+                List<Slot> booked = new ArrayList<>();
+                reserving.forEach(reservation -> booked.add(reservation.slot()));
+                booked.addAll(committed);
+                reloaded = toCalendar(appointments, booked);
+            } while (!calendar.compareAndSet(current, reloaded));
+            committed.removeAll(committedBefore);
+            loadedAt.set(System.currentTimeMillis());
+        }
+    }
+
+    private record Slot(long start, long end) {
+    }
+
+    /**
+     * Slot being booked by one request: two requests for the same slot hold distinct reservations.
+     */
+    private static final class Reservation {
+
+        private final Slot slot;
+
+        Reservation(Slot slot) {
+            this.slot = slot;
+        }
+
+        Slot slot() {
+            return slot;
+        }
+    }
+
+    private static ResponseStatusException slotTaken(int vetId, LocalDateTime start, LocalDateTime end) {
+        return new ResponseStatusException(HttpStatus.CONFLICT, "Vet " + vetId + " is not available from " + start + " to " + end);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.snapshot;
+
+import org.springframework.samples.petclinic.vets.model.Specialty;
+import org.springframework.samples.petclinic.vets.model.Vet;
+
+import java.util.*;
+
+/**
+ * Immutable in-memory index answering specialty and last name queries over a list of vets.
+ * <p>
+ * Vets are numbered in last name order. Each specialty maps to a bitset of these ordinals, so that
+ * AND/OR combinations of specialties are word-wise bit operations, and a last name prefix is the
+ * contiguous range of ordinals found by binary search.
+ */
+public final class VetIndex {
+
+    private static final Comparator<Vet> LAST_NAME_ORDER = Comparator
+        .comparing((Vet vet) -> normalize(vet.getLastName()))
+        .thenComparing(vet -> normalize(vet.getFirstName()))
+        .thenComparing(Vet::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final Vet[] vets;
+    private final String[] lastNames;
+    private final Map<String, BitSet> specialties = new HashMap<>();
+
+    VetIndex(List<Vet> source) {
+        this.vets = source.toArray(new Vet[0]);
+        Arrays.sort(vets, LAST_NAME_ORDER);
+        this.lastNames = new String[vets.length];
+        for (int ordinal = 0; ordinal < vets.length; ordinal++) {
+            lastNames[ordinal] = normalize(vets[ordinal].getLastName());
+            for (Specialty specialty : vets[ordinal].getSpecialties()) {
+                specialties.computeIfAbsent(normalize(specialty.getName()), name -> new BitSet(vets.length)).set(ordinal);
+            }
+        }
+    }
+
+    public int size() {
+        return vets.length;
+    }
+
+    /**
+     * @param specialties    names of the specialties to filter on, none to accept every vet
+     * @param matchAll       whether a vet must have all the specialties rather than any of them
+     * @param lastNamePrefix case-insensitive prefix of the last name, <code>null</code> to accept every vet
+     * @return the matching vets in last name order, restricted to the requested window
+     */
+    public Hits query(Collection<String> specialties, boolean matchAll, String lastNamePrefix, int offset, int limit) {
+        int from = 0;
+        int to = vets.length;
+        if (lastNamePrefix != null && !lastNamePrefix.isBlank()) {
+            String prefix = normalize(lastNamePrefix.trim());
+            from = lowerBound(prefix);
+            to = lowerBound(prefix + Character.MAX_VALUE);
+        }
+        BitSet matches = matching(specialties, matchAll);
+        if (matches == null) {
+            matches = new BitSet(to);
+            matches.set(from, to);
+        }
+        int total = matches.get(from, to).cardinality();
+        List<Vet> window = new ArrayList<>(Math.max(0, Math.min(limit, total - offset)));
+        int skipped = 0;
+        for (int ordinal = matches.nextSetBit(from); ordinal >= 0 && ordinal < to && window.size() < limit;
+             ordinal = matches.nextSetBit(ordinal + 1)) {
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                window.add(vets[ordinal]);
+            }
+        }
+        return new Hits(window, total);
+    }
+
+    /**
+     * @return the ordinals of the vets having the requested specialties, <code>null</code> when not filtering on them
+     */
+    private BitSet matching(Collection<String> names, boolean matchAll) {
+        if (names == null || names.isEmpty()) {
+            return null;
+        }
+        BitSet result = null;
+        for (String name : names) {
+            BitSet ordinals = specialties.get(normalize(name.trim()));
+            if (ordinals == null) {
+                if (matchAll) {
+                    return new BitSet();
+                }
+                continue;
+            }
+            if (result == null) {
+                result = (BitSet) ordinals.clone();
+            } else if (matchAll) {
+                result.and(ordinals);
+            } else {
+                result.or(ordinals);
+            }
+        }
+        return result == null ? new BitSet() : result;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = lastNames.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lastNames[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    public record Hits(List<Vet> vets, int total) {
+    }
+}
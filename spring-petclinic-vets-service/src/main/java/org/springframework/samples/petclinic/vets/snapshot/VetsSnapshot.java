@@ -0,0 +1,128 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.samples.petclinic.vets.model.Vet;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Immutable view of the list of vets, pre-encoded as JSON and indexed for queries.
+ * <p>
+ * The byte arrays are shared between all the requests served from this snapshot and must not be modified.
+ */
+public final class VetsSnapshot {
+
+    /**
+     * Below this size, compressing the payload costs more than it saves.
+     */
+    private static final int GZIP_THRESHOLD = 1024;
+
+    private final List<Vet> vets;
+    private final byte[] json;
+    private final byte[] gzippedJson;
+    private final String etag;
+    private final VetIndex index;
+
+    private VetsSnapshot(List<Vet> vets, byte[] json, byte[] gzippedJson, String etag, VetIndex index) {
+        this.vets = vets;
+        this.json = json;
+        this.gzippedJson = gzippedJson;
+        this.etag = etag;
+        this.index = index;
+    }
+
+    static byte[] encode(List<Vet> vets, ObjectMapper objectMapper) throws IOException {
+        return objectMapper.writeValueAsBytes(vets);
+    }
+
+    /**
+     * @param json the list of vets encoded by {@link #encode}
+     */
+    static VetsSnapshot of(List<Vet> vets, byte[] json) throws IOException {
+        byte[] gzippedJson = json.length >= GZIP_THRESHOLD ? gzip(json) : null;
+        return new VetsSnapshot(vets, json, gzippedJson, DigestUtils.md5DigestAsHex(json), new VetIndex(vets));
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return whether this snapshot was built from this very list instance
+     */
+    boolean isDerivedFrom(List<Vet> vets) {
+        return this.vets == vets;
+    }
+
+    /**
+     * @return whether this snapshot serves exactly this JSON payload
+     */
+    boolean hasJson(byte[] json) {
+        return Arrays.equals(this.json, json);
+    }
+
+    /**
+     * @return this snapshot, derived from an equal list instance (the encoded payloads and the index are shared)
+     */
+    VetsSnapshot derivedFrom(List<Vet> vets) {
+        return new VetsSnapshot(vets, json, gzippedJson, etag, index);
+    }
+
+    public List<Vet> vets() {
+        return vets;
+    }
+
+    public VetIndex index() {
+        return index;
+    }
+
+    public byte[] json() {
+        return json;
+    }
+
+    public boolean hasGzippedJson() {
+        return gzippedJson != null;
+    }
+
+    public byte[] gzippedJson() {
+        return gzippedJson;
+    }
+
+    /**
+     * @return content hash of the JSON payload, suitable as a strong entity tag
+     */
+    public String etag() {
+        return '"' + etag + '"';
+    }
+
+    /**
+     * @return entity tag of the gzip-encoded representation, which must differ from the identity one
+     */
+    public String gzippedEtag() {
+        return '"' + etag + "-gzip\"";
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.snapshot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.samples.petclinic.vets.model.Specialty;
+import org.springframework.samples.petclinic.vets.model.Vet;
+import org.springframework.samples.petclinic.vets.model.VetRepository;
+import org.springframework.samples.petclinic.vets.system.VetsProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Persists the list of vets to a compact binary file, so that a restarted instance can serve it
+ * before querying the database.
+ * <p>
+ * At startup the file is memory-mapped and decoded into the <code>vets</code> cache. Once the application
+ * is ready, the list is reloaded from the database in the background and replaces the cached one.
+ * The file is rewritten whenever a snapshot is built from a list whose content differs from it.
+ * <p>
+ * Layout (big-endian): magic, format version, CRC32 of the payload, payload length, then the payload:
+ * vet count followed by, for each vet, its id, first and last name, specialty count, and the id and name
+ * of each specialty. Strings are written as a UTF-8 byte length (-1 for <code>null</code>) and the bytes.
+ */
+@Component
+@ConditionalOnProperty("vets.snapshot.file")
+public class VetsSnapshotFile implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(VetsSnapshotFile.class);
+
+    private static final int MAGIC = 0x56455453; // "VETS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private final Path file;
+    private final VetRepository vetRepository;
+    private final ObjectProvider<CacheManager> cacheManager;
+    private final AsyncTaskExecutor executor;
+    private volatile byte[] persisted;
+
+    VetsSnapshotFile(VetsProperties properties, VetRepository vetRepository, ObjectProvider<CacheManager> cacheManager,
+                     @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) AsyncTaskExecutor executor) {
+        this.file = Path.of(properties.snapshot().file());
+        this.vetRepository = vetRepository;
+        this.cacheManager = cacheManager;
+        this.executor = executor;
+    }
+
+    /**
+     * Seed the cache from the file before the application starts serving requests.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        Cache cache = vetsCache();
+        if (cache == null || !Files.isRegularFile(file)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            List<Vet> vets = decode(buffer);
+            cache.put(SimpleKey.EMPTY, vets);
+            this.persisted = encode(vets);
+            log.info("Loaded {} vets from {} in {} ms", vets.size(), file, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable vets snapshot {}", file, e);
+        }
+    }
+
+    /**
+     * Check the snapshot loaded at startup against the database.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    void reload() {
+        executor.execute(() -> {
+            List<Vet> vets = vetRepository.loadAll();
+            Cache cache = vetsCache();
+            if (cache != null) {
+                cache.put(SimpleKey.EMPTY, vets);
+            }
+            write(vets);
+        });
+    }
+
+    /**
+     * Persist the list in the background, unless the file already holds the same content.
+     */
+    void save(List<Vet> vets) {
+        executor.execute(() -> write(vets));
+    }
+
+    private synchronized void write(List<Vet> vets) {
+        try {
+            byte[] bytes = encode(vets);
+            if (Arrays.equals(bytes, persisted)) {
+                return;
+            }
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.persisted = bytes;
+            log.info("Saved {} vets to {}", vets.size(), file);
+        } catch (IOException e) {
+            log.warn("Unable to save the vets snapshot to {}", file, e);
+        }
+    }
+
+    private Cache vetsCache() {
+        CacheManager manager = cacheManager.getIfAvailable();
+        return manager == null ? null : manager.getCache("vets");
+    }
+
+    static byte[] encode(List<Vet> vets) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64 * vets.size() + 4);
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeInt(vets.size());
+        for (Vet vet : vets) {
+            out.writeInt(vet.getId());
+            writeString(out, vet.getFirstName());
+            writeString(out, vet.getLastName());
+            List<Specialty> specialties = vet.getSpecialties();
+            out.writeInt(specialties.size());
+            for (Specialty specialty : specialties) {
+                out.writeInt(specialty.getId());
+                writeString(out, specialty.getName());
+            }
+        }
+        out.flush();
+        byte[] body = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return ByteBuffer.allocate(HEADER_SIZE + body.length)
+            .putInt(MAGIC)
+            .putInt(VERSION)
+            .putInt((int) crc.getValue())
+            .putInt(body.length)
+            .put(body)
+            .array();
+    }
+
+    static List<Vet> decode(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a vets snapshot");
+        }
+        int checksum = buffer.getInt();
+        int length = buffer.getInt();
+        if (length != buffer.remaining()) {
+            throw new IOException("Truncated vets snapshot");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Corrupted vets snapshot");
+        }
+        int count = buffer.getInt();
+        List<Vet> vets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Vet vet = new Vet();
+            vet.setId(buffer.getInt());
+            vet.setFirstName(readString(buffer));
+            vet.setLastName(readString(buffer));
+            int specialties = buffer.getInt();
+            for (int j = 0; j < specialties; j++) {
+                Specialty specialty = new Specialty();
+                specialty.setId(buffer.getInt());
+                specialty.setName(readString(buffer));
+                vet.addSpecialty(specialty);
+            }
+            vets.add(vet);
+        }
+        return vets;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.samples.petclinic.vets.model.Vet;
+import org.springframework.samples.petclinic.vets.model.VetRepository;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the snapshot of the current list of vets.
+ * <p>
+ * With the <code>vets</code> cache, the same list instance is handed out until it is reloaded, so the
+ * snapshot is served as is. Otherwise (or once the cache is reloaded) the list is encoded again and a new
+ * snapshot is only built, indexed and saved when its JSON differs from the current one.
+ */
+@Component
+public class VetsSnapshots {
+
+    private final VetRepository vetRepository;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<VetsSnapshotFile> snapshotFile;
+    private final AtomicReference<VetsSnapshot> current = new AtomicReference<>();
+
+    VetsSnapshots(VetRepository vetRepository, ObjectMapper objectMapper, ObjectProvider<VetsSnapshotFile> snapshotFile) {
+        this.vetRepository = vetRepository;
+        this.objectMapper = objectMapper;
+        this.snapshotFile = snapshotFile;
+    }
+
+    public VetsSnapshot current() {
+        List<Vet> vets = vetRepository.findAll();
+        VetsSnapshot snapshot = current.get();
+        if (snapshot != null && snapshot.isDerivedFrom(vets)) {
+            return snapshot;
+        }
+        byte[] json = encode(vets);
+        if (snapshot != null && snapshot.hasJson(json)) {
+            // Remember the new instance, so that a cached list is recognized without being encoded again
+            VetsSnapshot unchanged = snapshot.derivedFrom(vets);
+            current.compareAndSet(snapshot, unchanged);
+            return unchanged;
+        }
+        VetsSnapshot rebuilt = snapshot(vets, json);
+        // Losing the race against a concurrent rebuild is harmless: both were built from an up-to-date list
+        if (current.compareAndSet(snapshot, rebuilt)) {
+            snapshotFile.ifAvailable(file -> file.save(vets));
+        }
+        return rebuilt;
+    }
+
+    private byte[] encode(List<Vet> vets) {
+        try {
+            return VetsSnapshot.encode(vets, objectMapper);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to encode the list of vets", e);
+        }
+    }
+
+    private static VetsSnapshot snapshot(List<Vet> vets, byte[] json) {
+        try {
+            return VetsSnapshot.of(vets, json);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to compress the list of vets", e);
+        }
+    }
+}
@@ -15,16 +15,57 @@
  */
 package org.springframework.samples.petclinic.vets.system;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.samples.petclinic.vets.model.VetRepository;
+
+import java.time.Duration;
 
 /**
  * Cache could be disable in unit test.
+ * <p>
+ * The <code>vets</code> cache holds a single entry, the full list of vets. It is bounded by
+ * <code>vets.cache.heap-size</code> and expires after <code>vets.cache.ttl</code> seconds, but is reloaded
+ * in the background once <code>vets.cache.refresh-after</code> seconds have elapsed, so that requests
+ * keep being served from memory while the database is queried. Statistics are recorded and exported
+ * to Micrometer as the <code>cache.*</code> meters.
+ *
  * @author Maciej Szarlinski
  */
 @Configuration
 @EnableCaching
 @Profile("production")
 class CacheConfig {
+
+    static final String VETS_CACHE = "vets";
+
+    @Bean
+    CacheManagerCustomizer<CaffeineCacheManager> vetsCacheCustomizer(VetsProperties properties, VetRepository vetRepository) {
+        return cacheManager -> cacheManager.registerCustomCache(VETS_CACHE, vetsCache(properties.cache(), Ticker.systemTicker())
+            // VetRepository.findAll() has no parameters: the only key is SimpleKey.EMPTY
+            .build(key -> vetRepository.loadAll()));
+    }
+
+    static Caffeine<Object, Object> vetsCache(VetsProperties.Cache cache, Ticker ticker) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+            .ticker(ticker)
+            .maximumSize(cache.heapSize())
+            .expireAfterWrite(Duration.ofSeconds(cache.ttl()))
+            .recordStats();
+        if (cache.refreshAfterOrDefault() > 0) {
+            builder.refreshAfterWrite(Duration.ofSeconds(cache.refreshAfterOrDefault()));
+        }
+        return builder;
+    }
+
+    @Bean
+    CacheEntriesEndpoint cacheEntriesEndpoint(CaffeineCacheManager cacheManager) {
+        return new CacheEntriesEndpoint(cacheManager);
+    }
 }
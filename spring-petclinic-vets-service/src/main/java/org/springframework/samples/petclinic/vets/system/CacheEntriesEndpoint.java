@@ -0,0 +1,99 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.system;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Actuator endpoint listing the entries of the Caffeine caches together with their statistics.
+ * <code>DELETE /actuator/cacheentries/{cache}</code> evicts all the entries of a cache.
+ */
+@Endpoint(id = "cacheentries")
+class CacheEntriesEndpoint {
+
+    private final CaffeineCacheManager cacheManager;
+
+    CacheEntriesEndpoint(CaffeineCacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @ReadOperation
+    public Map<String, CacheDescriptor> caches() {
+        Map<String, CacheDescriptor> caches = new TreeMap<>();
+        for (String name : cacheManager.getCacheNames()) {
+            caches.put(name, describe(name));
+        }
+        return caches;
+    }
+
+    @ReadOperation
+    public CacheDescriptor cache(@Selector String name) {
+        return describe(name);
+    }
+
+    @DeleteOperation
+    public void evict(@Selector String name) {
+        CaffeineCache cache = (CaffeineCache) cacheManager.getCache(name);
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    private CacheDescriptor describe(String name) {
+        CaffeineCache cache = (CaffeineCache) cacheManager.getCache(name);
+        if (cache == null) {
+            return null;
+        }
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = cache.getNativeCache();
+        List<EntryDescriptor> entries = nativeCache.asMap().entrySet().stream()
+            .map(entry -> new EntryDescriptor(String.valueOf(entry.getKey()), entry.getValue().getClass().getName(),
+                entry.getValue() instanceof Collection<?> collection ? collection.size() : null))
+            .toList();
+        CacheStats stats = nativeCache.stats();
+        return new CacheDescriptor(nativeCache.estimatedSize(), entries, stats.hitCount(), stats.missCount(),
+            stats.hitRate(), stats.loadCount(), stats.loadFailureCount(), stats.evictionCount());
+    }
+
+    public record CacheDescriptor(
+        long estimatedSize,
+        List<EntryDescriptor> entries,
+        long hitCount,
+        long missCount,
+        double hitRate,
+        long loadCount,
+        long loadFailureCount,
+        long evictionCount
+    ) {
+    }
+
+    public record EntryDescriptor(
+        String key,
+        String type,
+        Integer size
+    ) {
+    }
+}
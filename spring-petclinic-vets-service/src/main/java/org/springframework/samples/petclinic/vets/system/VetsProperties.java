@@ -16,6 +16,7 @@
 package org.springframework.samples.petclinic.vets.system;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
 
 /**
  * Typesafe custom configuration.
@@ -24,11 +25,43 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  */
 @ConfigurationProperties(prefix = "vets")
 public record VetsProperties(
-    Cache cache
+    @DefaultValue Cache cache,
+    @DefaultValue Snapshot snapshot
 ) {
+    /**
+     * @param ttl          seconds after which a cached entry expires
+     * @param heapSize     maximum number of entries kept on heap
+     * @param refreshAfter seconds after which an entry is reloaded in the background while still being served,
+     *                     below the TTL, defaults to 80% of the TTL
+     */
     public record Cache(
-        int ttl,
-        int heapSize
+        @DefaultValue("60") int ttl,
+        @DefaultValue("100") int heapSize,
+        @DefaultValue("0") int refreshAfter
+    ) {
+        public Cache {
+            if (ttl < 1) {
+                throw new IllegalArgumentException("vets.cache.ttl must be positive, got " + ttl);
+            }
+            if (refreshAfter >= ttl) {
+                throw new IllegalArgumentException("vets.cache.refresh-after (" + refreshAfter
+                    + ") must be below vets.cache.ttl (" + ttl + ")");
+            }
+        }
+
+        /**
+         * @return seconds after which an entry is reloaded, 0 when the TTL is too short to reload before it expires
+         */
+        public int refreshAfterOrDefault() {
+            return refreshAfter > 0 ? refreshAfter : ttl * 4 / 5;
+        }
+    }
+
+    /**
+     * @param file binary file the list of vets is persisted to and served from at startup, none to disable
+     */
+    public record Snapshot(
+        String file
     ) {
     }
 }
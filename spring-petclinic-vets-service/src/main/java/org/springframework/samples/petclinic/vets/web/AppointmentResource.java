@@ -0,0 +1,100 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.web;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.vets.model.Appointment;
+import org.springframework.samples.petclinic.vets.model.Vet;
+import org.springframework.samples.petclinic.vets.schedule.VetCalendars;
+import org.springframework.samples.petclinic.vets.snapshot.VetsSnapshots;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Vet availability and appointment booking.
+ */
+@RequestMapping("/vets")
+@RestController
+class AppointmentResource {
+
+    private final VetCalendars vetCalendars;
+    private final VetsSnapshots vetsSnapshots;
+
+    AppointmentResource(VetCalendars vetCalendars, VetsSnapshots vetsSnapshots) {
+        this.vetCalendars = vetCalendars;
+        this.vetsSnapshots = vetsSnapshots;
+    }
+
+    /**
+     * Vets having the requested specialties who are free during the whole slot, in last name order.
+     */
+    @GetMapping("/available")
+    public List<Vet> findAvailableVets(
+        @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+        @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+        @RequestParam(value = "specialty", required = false) List<String> specialties,
+        @RequestParam(value = "match", defaultValue = "any") String match) {
+
+        if (!from.isBefore(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be before to");
+        }
+        if (!"any".equalsIgnoreCase(match) && !"all".equalsIgnoreCase(match)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "match must be 'any' or 'all'");
+        }
+        return vetsSnapshots.current().index()
+            .query(specialties, "all".equalsIgnoreCase(match), null, 0, Integer.MAX_VALUE)
+            .vets().stream()
+            .filter(vet -> vetCalendars.isAvailable(vet.getId(), from, to))
+            .toList();
+    }
+
+    @GetMapping("/{vetId}/appointments")
+    public List<Appointment> findAppointments(
+        @PathVariable("vetId") int vetId,
+        @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+        @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return vetCalendars.appointments(vetId, from, to);
+    }
+
+    /**
+     * Book a slot, answering 409 Conflict when the vet is not available.
+     */
+    @PostMapping("/{vetId}/appointments")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Appointment book(@PathVariable("vetId") int vetId, @RequestBody AppointmentRequest request) {
+        if (request.startTime() == null || request.endTime() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "startTime and endTime are required");
+        }
+        return vetCalendars.book(vetId, request.petId(), request.startTime(), request.endTime());
+    }
+
+    @DeleteMapping("/{vetId}/appointments/{appointmentId}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void cancel(@PathVariable("vetId") int vetId, @PathVariable("appointmentId") int appointmentId) {
+        vetCalendars.cancel(vetId, appointmentId);
+    }
+
+    record AppointmentRequest(
+        Integer petId,
+        LocalDateTime startTime,
+        LocalDateTime endTime
+    ) {
+    }
+}
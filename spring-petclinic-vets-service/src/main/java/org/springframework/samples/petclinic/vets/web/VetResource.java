@@ -15,12 +15,21 @@
  */
 package org.springframework.samples.petclinic.vets.web;
 
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.samples.petclinic.vets.model.Vet;
-import org.springframework.samples.petclinic.vets.model.VetRepository;
+import org.springframework.samples.petclinic.vets.snapshot.VetIndex;
+import org.springframework.samples.petclinic.vets.snapshot.VetsSnapshot;
+import org.springframework.samples.petclinic.vets.snapshot.VetsSnapshots;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
 
@@ -35,15 +44,90 @@ import java.util.List;
 @RestController
 class VetResource {
 
-    private final VetRepository vetRepository;
+    private final VetsSnapshots vetsSnapshots;
 
-    VetResource(VetRepository vetRepository) {
-        this.vetRepository = vetRepository;
+    VetResource(VetsSnapshots vetsSnapshots) {
+        this.vetsSnapshots = vetsSnapshots;
     }
 
-    @GetMapping
-    @Cacheable("vets")
-    public List<Vet> showResourcesVetList() {
-        return vetRepository.findAll();
+    /**
+     * Serve the pre-encoded list of vets. The response carries the content hash as ETag, so that
+     * a matching <code>If-None-Match</code> is answered with 304 Not Modified.
+     * <p>
+     * With any of the query parameters, answer a page of the vets matching them instead,
+     * in last name order, from the in-memory index. Blank values are ignored, like absent parameters.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> showResourcesVetList(
+        @RequestParam(value = "specialty", required = false) List<String> specialties,
+        @RequestParam(value = "match", defaultValue = "any") String match,
+        @RequestParam(value = "lastNamePrefix", required = false) String lastNamePrefix,
+        @RequestParam(value = "page", required = false) Integer page,
+        @RequestParam(value = "size", defaultValue = "20") int size,
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        specialties = withoutBlanks(specialties);
+        lastNamePrefix = StringUtils.hasText(lastNamePrefix) ? lastNamePrefix : null;
+        VetsSnapshot snapshot = vetsSnapshots.current();
+        if (specialties != null || lastNamePrefix != null || page != null) {
+            return ResponseEntity.ok(query(snapshot.index(), specialties, match, lastNamePrefix, page == null ? 0 : page, size));
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (snapshot.hasGzippedJson() && acceptsGzip(acceptEncoding)) {
+            return response
+                .eTag(snapshot.gzippedEtag())
+                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .body(snapshot.gzippedJson());
+        }
+        return response
+            .eTag(snapshot.etag())
+            .body(snapshot.json());
+    }
+
+    private static VetPage query(VetIndex index, List<String> specialties, String match, String lastNamePrefix,
+                                 int page, int size) {
+        if (!"any".equalsIgnoreCase(match) && !"all".equalsIgnoreCase(match)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "match must be 'any' or 'all'");
+        }
+        if (page < 0 || size < 1 || size > 100) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "page must be positive and size between 1 and 100");
+        }
+        VetIndex.Hits hits = index.query(specialties, "all".equalsIgnoreCase(match), lastNamePrefix,
+            (int) Math.min(Integer.MAX_VALUE, (long) page * size), size);
+        return new VetPage(hits.vets(), page, size, hits.total());
+    }
+
+    /**
+     * @return the non-blank specialties, <code>null</code> when there are none
+     */
+    private static List<String> withoutBlanks(List<String> specialties) {
+        if (specialties == null) {
+            return null;
+        }
+        List<String> names = specialties.stream().filter(StringUtils::hasText).toList();
+        return names.isEmpty() ? null : names;
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (!StringUtils.hasText(acceptEncoding)) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    public record VetPage(
+        List<Vet> vets,
+        int page,
+        int size,
+        int total
+    ) {
     }
 }
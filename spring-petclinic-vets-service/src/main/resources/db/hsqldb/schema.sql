@@ -1,3 +1,6 @@
+DROP TABLE appointment_books IF EXISTS;
+DROP TABLE appointments IF EXISTS;
+DROP TABLE vet_schedules IF EXISTS;
 DROP TABLE vet_specialties IF EXISTS;
 DROP TABLE vets IF EXISTS;
 DROP TABLE specialties IF EXISTS;
@@ -21,3 +24,31 @@ CREATE TABLE vet_specialties (
 );
 ALTER TABLE vet_specialties ADD CONSTRAINT fk_vet_specialties_vets FOREIGN KEY (vet_id) REFERENCES vets (id);
 ALTER TABLE vet_specialties ADD CONSTRAINT fk_vet_specialties_specialties FOREIGN KEY (specialty_id) REFERENCES specialties (id);
+
+CREATE TABLE vet_schedules (
+  id          INTEGER IDENTITY PRIMARY KEY,
+  vet_id      INTEGER NOT NULL,
+  day_of_week INTEGER NOT NULL,
+  start_time  TIME NOT NULL,
+  end_time    TIME NOT NULL
+);
+ALTER TABLE vet_schedules ADD CONSTRAINT fk_vet_schedules_vets FOREIGN KEY (vet_id) REFERENCES vets (id);
+CREATE INDEX vet_schedules_vet_id ON vet_schedules (vet_id);
+
+CREATE TABLE appointments (
+  id         INTEGER IDENTITY PRIMARY KEY,
+  vet_id     INTEGER NOT NULL,
+  pet_id     INTEGER,
+  start_time TIMESTAMP NOT NULL,
+  end_time   TIMESTAMP NOT NULL
+);
+ALTER TABLE appointments ADD CONSTRAINT fk_appointments_vets FOREIGN KEY (vet_id) REFERENCES vets (id);
+CREATE INDEX appointments_vet_id_start_time ON appointments (vet_id, start_time);
+CREATE INDEX appointments_end_time ON appointments (end_time);
+
+CREATE TABLE appointment_books (
+  vet_id   INTEGER PRIMARY KEY,
+  version  INTEGER NOT NULL,
+  bookings BIGINT NOT NULL
+);
+ALTER TABLE appointment_books ADD CONSTRAINT fk_appointment_books_vets FOREIGN KEY (vet_id) REFERENCES vets (id);
@@ -14,3 +14,34 @@ INSERT IGNORE INTO vet_specialties VALUES (3, 2);
 INSERT IGNORE INTO vet_specialties VALUES (3, 3);
 INSERT IGNORE INTO vet_specialties VALUES (4, 2);
 INSERT IGNORE INTO vet_specialties VALUES (5, 1);
+
+INSERT IGNORE INTO vet_schedules VALUES (1, 1, 1, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (2, 1, 2, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (3, 1, 3, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (4, 1, 4, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (5, 1, 5, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (6, 2, 1, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (7, 2, 2, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (8, 2, 3, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (9, 2, 4, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (10, 2, 5, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (11, 3, 1, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (12, 3, 2, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (13, 3, 3, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (14, 3, 4, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (15, 3, 5, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (16, 4, 1, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (17, 4, 2, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (18, 4, 3, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (19, 4, 4, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (20, 4, 5, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (21, 5, 1, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (22, 5, 2, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (23, 5, 3, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (24, 5, 4, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (25, 5, 5, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (26, 6, 1, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (27, 6, 2, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (28, 6, 3, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (29, 6, 4, '09:00:00', '17:00:00');
+INSERT IGNORE INTO vet_schedules VALUES (30, 6, 5, '09:00:00', '17:00:00');
@@ -22,3 +22,30 @@ CREATE TABLE IF NOT EXISTS vet_specialties (
   FOREIGN KEY (specialty_id) REFERENCES specialties(id),
   UNIQUE (vet_id,specialty_id)
 ) engine=InnoDB;
+
+CREATE TABLE IF NOT EXISTS vet_schedules (
+  id INT(4) UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  vet_id INT(4) UNSIGNED NOT NULL,
+  day_of_week INT(1) UNSIGNED NOT NULL,
+  start_time TIME NOT NULL,
+  end_time TIME NOT NULL,
+  FOREIGN KEY (vet_id) REFERENCES vets(id)
+) engine=InnoDB;
+
+CREATE TABLE IF NOT EXISTS appointments (
+  id INT(4) UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  vet_id INT(4) UNSIGNED NOT NULL,
+  pet_id INT(4) UNSIGNED,
+  start_time DATETIME NOT NULL,
+  end_time DATETIME NOT NULL,
+  INDEX(vet_id, start_time),
+  INDEX(end_time),
+  FOREIGN KEY (vet_id) REFERENCES vets(id)
+) engine=InnoDB;
+
+CREATE TABLE IF NOT EXISTS appointment_books (
+  vet_id INT(4) UNSIGNED NOT NULL PRIMARY KEY,
+  version INT NOT NULL,
+  bookings BIGINT NOT NULL,
+  FOREIGN KEY (vet_id) REFERENCES vets(id)
+) engine=InnoDB;
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.schedule;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VetCalendarTest {
+
+    private final VetCalendar calendar = VetCalendar.of(new long[][]{{300, 400}, {100, 200}});
+
+    @Test
+    void shouldFindFreeSlotsBetweenBookings() {
+        assertThat(calendar.isFree(0, 100)).isTrue();
+        assertThat(calendar.isFree(200, 300)).isTrue();
+        assertThat(calendar.isFree(400, 500)).isTrue();
+        assertThat(calendar.isFree(150, 160)).isFalse();
+        assertThat(calendar.isFree(199, 301)).isFalse();
+        assertThat(calendar.isFree(50, 450)).isFalse();
+    }
+
+    @Test
+    void shouldBookFreeSlotOnly() {
+        VetCalendar booked = calendar.book(200, 300);
+
+        assertThat(booked).isNotNull();
+        assertThat(booked.size()).isEqualTo(3);
+        assertThat(booked.isFree(250, 260)).isFalse();
+        assertThat(calendar.isFree(250, 260)).isTrue();
+        assertThat(calendar.book(350, 450)).isNull();
+    }
+
+    @Test
+    void shouldReleaseBookedSlot() {
+        VetCalendar released = calendar.release(100, 200);
+
+        assertThat(released.size()).isEqualTo(1);
+        assertThat(released.isFree(100, 200)).isTrue();
+        assertThat(calendar.release(100, 150)).isSameAs(calendar);
+    }
+
+    @Test
+    void shouldRejectOverlappingBookings() {
+        assertThatThrownBy(() -> VetCalendar.of(new long[][]{{100, 200}, {150, 250}}))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
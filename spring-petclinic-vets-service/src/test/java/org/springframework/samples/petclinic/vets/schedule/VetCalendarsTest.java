@@ -0,0 +1,175 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.schedule;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.samples.petclinic.vets.model.Appointment;
+import org.springframework.samples.petclinic.vets.model.AppointmentRepository;
+import org.springframework.samples.petclinic.vets.model.AppointmentBook;
+import org.springframework.samples.petclinic.vets.model.AppointmentBookRepository;
+import org.springframework.samples.petclinic.vets.model.VetRepository;
+import org.springframework.samples.petclinic.vets.model.WorkingHoursRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+class VetCalendarsTest {
+
+    private static final int VET_ID = 1;
+
+    private final AppointmentRepository appointmentRepository = mock(AppointmentRepository.class);
+    private final VetRepository vetRepository = mock(VetRepository.class);
+    private final AppointmentBookRepository appointmentBookRepository = mock(AppointmentBookRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    private final VetCalendars calendars = new VetCalendars(appointmentRepository, mock(WorkingHoursRepository.class),
+        vetRepository, appointmentBookRepository, transactionManager);
+
+    private final LocalDateTime monday = LocalDateTime.now().plusWeeks(1).truncatedTo(ChronoUnit.DAYS).withHour(9);
+
+    @BeforeEach
+    void setup() {
+        given(transactionManager.getTransaction(any())).willReturn(new SimpleTransactionStatus());
+        given(appointmentBookRepository.existsById(VET_ID)).willReturn(true);
+        given(appointmentBookRepository.findById(VET_ID)).willReturn(Optional.of(new AppointmentBook(VET_ID)));
+        given(appointmentRepository.save(any(Appointment.class))).willAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void shouldBookFreeSlotAndRejectOverlappingOneFromMemory() {
+        Appointment appointment = calendars.book(VET_ID, 7, monday, monday.plusMinutes(30));
+
+        assertThat(appointment.getPetId()).isEqualTo(7);
+        assertThat(calendars.isAvailable(VET_ID, monday.plusMinutes(15), monday.plusMinutes(45))).isFalse();
+        assertThat(calendars.isAvailable(VET_ID, monday.plusMinutes(30), monday.plusMinutes(60))).isTrue();
+        assertThatThrownBy(() -> calendars.book(VET_ID, 8, monday.plusMinutes(15), monday.plusMinutes(45)))
+            .isInstanceOfSatisfying(ResponseStatusException.class,
+                e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT));
+        // Only the first booking reached the table
+        then(appointmentRepository).should(times(1)).countOverlapping(anyInt(), any(), any());
+    }
+
+    @Test
+    void shouldCatchUpWithTheTableOnConflict() {
+        LocalDateTime start = monday.plusHours(2);
+        given(appointmentRepository.countOverlapping(VET_ID, start, start.plusMinutes(30))).willReturn(1L);
+        calendars.isAvailable(VET_ID, monday, monday.plusMinutes(30));
+        // Booked through another instance since the calendar was loaded
+        given(appointmentRepository.findByVetIdAndEndTimeAfter(eq(VET_ID), any()))
+            .willReturn(List.of(appointment(start.minusMinutes(15), start.plusMinutes(15))));
+
+        assertThatThrownBy(() -> calendars.book(VET_ID, 7, start, start.plusMinutes(30)))
+            .isInstanceOfSatisfying(ResponseStatusException.class,
+                e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT));
+
+        assertThat(calendars.isAvailable(VET_ID, start.minusMinutes(15), start)).isFalse();
+        assertThat(calendars.isAvailable(VET_ID, start.plusMinutes(15), start.plusMinutes(30))).isTrue();
+    }
+
+    @Test
+    void shouldKeepTheSlotsBeingBookedWhenReloadingOnConflict() {
+        LocalDateTime taken = monday.plusHours(2);
+        given(appointmentRepository.countOverlapping(VET_ID, taken, taken.plusMinutes(30))).willReturn(1L);
+        // Booked through another instance after the calendar was loaded
+        given(appointmentRepository.findByVetIdAndEndTimeAfter(eq(VET_ID), any()))
+            .willReturn(List.of(), List.of(appointment(taken, taken.plusMinutes(30))));
+        given(appointmentRepository.save(any(Appointment.class))).willAnswer(invocation -> {
+            // While the first booking is in flight, another one conflicts in the table and reloads the calendar
+            assertThatThrownBy(() -> calendars.book(VET_ID, 8, taken, taken.plusMinutes(30)))
+                .isInstanceOf(ResponseStatusException.class);
+            assertThat(calendars.isAvailable(VET_ID, monday, monday.plusMinutes(30))).isFalse();
+            return invocation.getArgument(0);
+        });
+
+        calendars.book(VET_ID, 7, monday, monday.plusMinutes(30));
+
+        assertThat(calendars.isAvailable(VET_ID, monday, monday.plusMinutes(30))).isFalse();
+        assertThat(calendars.isAvailable(VET_ID, taken, taken.plusMinutes(30))).isFalse();
+    }
+
+    @Test
+    void shouldRejectUnknownVetsWithoutLoadingTheirSchedule() {
+        assertThatThrownBy(() -> calendars.book(2, 7, monday, monday.plusMinutes(30)))
+            .isInstanceOfSatisfying(ResponseStatusException.class,
+                e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+
+        assertThat(calendars.isAvailable(2, monday, monday.plusMinutes(30))).isFalse();
+        then(appointmentRepository).should(never()).findByVetIdAndEndTimeAfter(eq(2), any());
+        then(appointmentBookRepository).should(never()).saveAndFlush(any());
+    }
+
+    @Test
+    void shouldCreateTheAppointmentBookOfAVetOnFirstUse() {
+        given(vetRepository.existsById(2)).willReturn(true);
+        given(appointmentBookRepository.findById(2)).willReturn(Optional.of(new AppointmentBook(2)));
+
+        calendars.book(2, 7, monday, monday.plusMinutes(30));
+
+        then(appointmentBookRepository).should().saveAndFlush(any(AppointmentBook.class));
+        assertThat(calendars.isAvailable(2, monday, monday.plusMinutes(30))).isFalse();
+    }
+
+    @Test
+    void shouldRejectAndReleaseTheSlotWhenBookedConcurrently() {
+        willThrow(new ObjectOptimisticLockingFailureException(AppointmentBook.class, VET_ID))
+            .given(transactionManager).commit(any());
+
+        assertThatThrownBy(() -> calendars.book(VET_ID, 7, monday, monday.plusMinutes(30)))
+            .isInstanceOfSatisfying(ResponseStatusException.class,
+                e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT));
+
+        assertThat(calendars.isAvailable(VET_ID, monday, monday.plusMinutes(30))).isTrue();
+        // Caught up with the table on conflict
+        then(appointmentRepository).should(times(2)).findByVetIdAndEndTimeAfter(eq(VET_ID), any());
+    }
+
+    @Test
+    void shouldCheckSlotsBeforeTheLoadedWindowAgainstTheTable() {
+        LocalDateTime lastMonth = monday.minusWeeks(5);
+        given(appointmentRepository.countOverlapping(VET_ID, lastMonth, lastMonth.plusMinutes(30))).willReturn(1L);
+
+        assertThat(calendars.isAvailable(VET_ID, lastMonth, lastMonth.plusMinutes(30))).isFalse();
+        assertThat(calendars.isAvailable(VET_ID, lastMonth.plusHours(1), lastMonth.plusMinutes(90))).isTrue();
+    }
+
+    private static Appointment appointment(LocalDateTime start, LocalDateTime end) {
+        Appointment appointment = new Appointment();
+        appointment.setVetId(VET_ID);
+        appointment.setStartTime(start);
+        appointment.setEndTime(end);
+        return appointment;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.snapshot;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.vets.model.Specialty;
+import org.springframework.samples.petclinic.vets.model.Vet;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VetIndexTest {
+
+    private final Specialty radiology = specialty("radiology");
+    private final Specialty surgery = specialty("surgery");
+    private final Specialty dentistry = specialty("dentistry");
+
+    private final VetIndex index = new VetIndex(List.of(
+        vet(1, "James", "Carter"),
+        vet(2, "Helen", "Leary", radiology),
+        vet(3, "Linda", "Douglas", surgery, dentistry),
+        vet(4, "Rafael", "Ortega", surgery),
+        vet(5, "Henry", "Stevens", radiology),
+        vet(6, "Sharon", "Jenkins")
+    ));
+
+    @Test
+    void shouldListAllVetsInLastNameOrder() {
+        VetIndex.Hits hits = index.query(List.of(), false, null, 0, 10);
+
+        assertThat(hits.total()).isEqualTo(6);
+        assertThat(ids(hits)).containsExactly(1, 3, 6, 2, 4, 5);
+    }
+
+    @Test
+    void shouldMatchAnySpecialty() {
+        assertThat(ids(index.query(List.of("radiology", "dentistry"), false, null, 0, 10))).containsExactly(3, 2, 5);
+        assertThat(ids(index.query(List.of("Surgery", "unknown"), false, null, 0, 10))).containsExactly(3, 4);
+    }
+
+    @Test
+    void shouldMatchAllSpecialties() {
+        assertThat(ids(index.query(List.of("surgery", "dentistry"), true, null, 0, 10))).containsExactly(3);
+        assertThat(ids(index.query(List.of("surgery", "unknown"), true, null, 0, 10))).isEmpty();
+    }
+
+    @Test
+    void shouldFilterOnLastNamePrefix() {
+        assertThat(ids(index.query(List.of(), false, "d", 0, 10))).containsExactly(3);
+        assertThat(ids(index.query(List.of("radiology"), false, "le", 0, 10))).containsExactly(2);
+        assertThat(ids(index.query(List.of(), false, "x", 0, 10))).isEmpty();
+    }
+
+    @Test
+    void shouldPaginateResults() {
+        VetIndex.Hits hits = index.query(List.of(), false, null, 2, 3);
+
+        assertThat(hits.total()).isEqualTo(6);
+        assertThat(ids(hits)).containsExactly(6, 2, 4);
+    }
+
+    private static List<Integer> ids(VetIndex.Hits hits) {
+        return hits.vets().stream().map(Vet::getId).toList();
+    }
+
+    private static Specialty specialty(String name) {
+        Specialty specialty = new Specialty();
+        specialty.setName(name);
+        return specialty;
+    }
+
+    private static Vet vet(int id, String firstName, String lastName, Specialty... specialties) {
+        Vet vet = new Vet();
+        vet.setId(id);
+        vet.setFirstName(firstName);
+        vet.setLastName(lastName);
+        for (Specialty specialty : specialties) {
+            vet.addSpecialty(specialty);
+        }
+        return vet;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.snapshot;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.vets.model.Specialty;
+import org.springframework.samples.petclinic.vets.model.Vet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VetsSnapshotFileTest {
+
+    @Test
+    void shouldDecodeWhatWasEncoded() throws IOException {
+        Specialty surgery = new Specialty();
+        surgery.setId(2);
+        surgery.setName("surgery");
+        Vet douglas = new Vet();
+        douglas.setId(3);
+        douglas.setFirstName("Linda");
+        douglas.setLastName("Douglas");
+        douglas.addSpecialty(surgery);
+        Vet carter = new Vet();
+        carter.setId(1);
+        carter.setLastName("Cart\u00e9r");
+
+        List<Vet> vets = VetsSnapshotFile.decode(ByteBuffer.wrap(VetsSnapshotFile.encode(List.of(douglas, carter))));
+
+        assertThat(vets).hasSize(2);
+        assertThat(vets.get(0).getId()).isEqualTo(3);
+        assertThat(vets.get(0).getFirstName()).isEqualTo("Linda");
+        assertThat(vets.get(0).getSpecialties()).singleElement()
+            .satisfies(specialty -> {
+                assertThat(specialty.getId()).isEqualTo(2);
+                assertThat(specialty.getName()).isEqualTo("surgery");
+            });
+        assertThat(vets.get(1).getFirstName()).isNull();
+        assertThat(vets.get(1).getLastName()).isEqualTo("Cart\u00e9r");
+    }
+
+    @Test
+    void shouldRejectCorruptedSnapshot() throws IOException {
+        Vet carter = new Vet();
+        carter.setId(1);
+        carter.setLastName("Carter");
+        byte[] bytes = VetsSnapshotFile.encode(List.of(carter));
+        bytes[bytes.length - 1] ^= 1;
+
+        assertThatThrownBy(() -> VetsSnapshotFile.decode(ByteBuffer.wrap(bytes)))
+            .isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.samples.petclinic.vets.model.Vet;
+import org.springframework.samples.petclinic.vets.model.VetRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+
+/**
+ * Without the <code>vets</code> cache, every call reads a new list from the repository.
+ */
+class VetsSnapshotsTest {
+
+    private final VetRepository vetRepository = mock(VetRepository.class);
+    private final VetsSnapshotFile snapshotFile = mock(VetsSnapshotFile.class);
+    private final StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+
+    private final VetsSnapshots snapshots;
+
+    VetsSnapshotsTest() {
+        beanFactory.addBean("vetsSnapshotFile", snapshotFile);
+        snapshots = new VetsSnapshots(vetRepository, new ObjectMapper(), beanFactory.getBeanProvider(VetsSnapshotFile.class));
+    }
+
+    @Test
+    void shouldReuseTheSnapshotWhileTheVetsAreUnchanged() {
+        given(vetRepository.findAll()).willAnswer(invocation -> new ArrayList<>(List.of(vet(1, "Carter"), vet(2, "Leary"))));
+
+        VetsSnapshot first = snapshots.current();
+        VetsSnapshot second = snapshots.current();
+
+        assertThat(second.json()).isSameAs(first.json());
+        assertThat(second.index()).isSameAs(first.index());
+        assertThat(second.etag()).isEqualTo(first.etag());
+        then(snapshotFile).should(times(1)).save(anyList());
+    }
+
+    @Test
+    void shouldRebuildTheSnapshotOnceTheVetsChange() {
+        given(vetRepository.findAll()).willAnswer(invocation -> new ArrayList<>(List.of(vet(1, "Carter"))));
+        VetsSnapshot first = snapshots.current();
+
+        given(vetRepository.findAll()).willAnswer(invocation -> new ArrayList<>(List.of(vet(1, "Carter"), vet(2, "Leary"))));
+        VetsSnapshot second = snapshots.current();
+
+        assertThat(second.etag()).isNotEqualTo(first.etag());
+        assertThat(second.index().query(List.of(), false, null, 0, 10).total()).isEqualTo(2);
+        then(snapshotFile).should(times(2)).save(anyList());
+    }
+
+    @Test
+    void shouldServeACachedListWithoutEncodingItAgain() {
+        List<Vet> cached = List.of(vet(1, "Carter"));
+        given(vetRepository.findAll()).willReturn(cached);
+
+        VetsSnapshot first = snapshots.current();
+
+        assertThat(snapshots.current()).isSameAs(first);
+    }
+
+    private static Vet vet(int id, String lastName) {
+        Vet vet = new Vet();
+        vet.setId(id);
+        vet.setLastName(lastName);
+        return vet;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.system;
+
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CacheConfigTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void shouldApplyTheCacheProperties() {
+        LoadingCache<String, Integer> cache = build(new VetsProperties.Cache(10, 100, 0));
+
+        assertThat(cache.policy().eviction().orElseThrow().getMaximum()).isEqualTo(100);
+        assertThat(cache.policy().expireAfterWrite().orElseThrow().getExpiresAfter()).isEqualTo(Duration.ofSeconds(10));
+        assertThat(cache.policy().refreshAfterWrite().orElseThrow().getRefreshesAfter()).isEqualTo(Duration.ofSeconds(8));
+        assertThat(cache.policy().isRecordingStats()).isTrue();
+    }
+
+    @Test
+    void shouldReloadTheVetsBeforeTheyExpire() {
+        LoadingCache<String, Integer> cache = build(new VetsProperties.Cache(10, 100, 5));
+        assertThat(cache.get("vets")).isEqualTo(1);
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(4));
+        assertThat(cache.get("vets")).isEqualTo(1);
+
+        // Past refresh-after, a read triggers the reload while the entry is still there
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        cache.get("vets");
+        assertThat(cache.get("vets")).isEqualTo(2);
+        assertThat(cache.stats().missCount()).isEqualTo(1);
+        assertThat(cache.stats().loadCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotReloadWhenTheTtlIsTooShort() {
+        VetsProperties.Cache properties = new VetsProperties.Cache(1, 100, 0);
+
+        assertThat(properties.refreshAfterOrDefault()).isZero();
+        assertThat(build(properties).policy().refreshAfterWrite()).isEmpty();
+    }
+
+    @Test
+    void shouldRejectARefreshAfterTheTtl() {
+        assertThatThrownBy(() -> new VetsProperties.Cache(10, 100, 10))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("vets.cache.refresh-after");
+        assertThatThrownBy(() -> new VetsProperties.Cache(0, 100, 0))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private LoadingCache<String, Integer> build(VetsProperties.Cache properties) {
+        return CacheConfig.vetsCache(properties, nanos::get)
+            .executor(Runnable::run)
+            .build(key -> loads.incrementAndGet());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.system;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.samples.petclinic.vets.model.VetRepository;
+import org.springframework.samples.petclinic.vets.system.CacheEntriesEndpoint.CacheDescriptor;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles({"test", "production"})
+class CacheEntriesEndpointTest {
+
+    @Autowired
+    CacheEntriesEndpoint endpoint;
+
+    @Autowired
+    VetRepository vetRepository;
+
+    @Autowired
+    MeterRegistry registry;
+
+    @BeforeEach
+    void evict() {
+        endpoint.evict(CacheConfig.VETS_CACHE);
+    }
+
+    @Test
+    void shouldListTheCachedVets() {
+        vetRepository.findAll();
+
+        assertThat(endpoint.caches()).containsOnlyKeys(CacheConfig.VETS_CACHE);
+        CacheDescriptor vets = endpoint.cache(CacheConfig.VETS_CACHE);
+        assertThat(vets.estimatedSize()).isEqualTo(1);
+        assertThat(vets.entries()).singleElement()
+            .satisfies(entry -> assertThat(entry.size()).isEqualTo(6));
+        assertThat(vets.loadCount()).isPositive();
+        assertThat(endpoint.cache("unknown")).isNull();
+    }
+
+    @Test
+    void shouldEvictTheCachedVets() {
+        vetRepository.findAll();
+
+        endpoint.evict(CacheConfig.VETS_CACHE);
+
+        assertThat(endpoint.cache(CacheConfig.VETS_CACHE).entries()).isEmpty();
+        assertThat(vetRepository.findAll()).hasSize(6);
+    }
+
+    @Test
+    void shouldExportTheCacheStatistics() {
+        double hits = hits();
+
+        vetRepository.findAll();
+        vetRepository.findAll();
+
+        assertThat(hits()).isGreaterThanOrEqualTo(hits + 1);
+    }
+
+    private double hits() {
+        return registry.get("cache.gets").tags("cache", CacheConfig.VETS_CACHE, "result", "hit").functionCounter().count();
+    }
+}
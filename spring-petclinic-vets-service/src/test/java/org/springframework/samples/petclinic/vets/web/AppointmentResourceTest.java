@@ -0,0 +1,134 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.vets.model.Appointment;
+import org.springframework.samples.petclinic.vets.model.Vet;
+import org.springframework.samples.petclinic.vets.model.VetRepository;
+import org.springframework.samples.petclinic.vets.schedule.VetCalendars;
+import org.springframework.samples.petclinic.vets.snapshot.VetsSnapshots;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(AppointmentResource.class)
+@Import(VetsSnapshots.class)
+@ActiveProfiles("test")
+class AppointmentResourceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2030, 3, 4, 10, 0);
+    private static final LocalDateTime END = START.plusMinutes(30);
+
+    @Autowired
+    MockMvc mvc;
+
+    @MockBean
+    VetRepository vetRepository;
+
+    @MockBean
+    VetCalendars vetCalendars;
+
+    @Test
+    void shouldBookAnAppointment() throws Exception {
+        Appointment appointment = new Appointment();
+        appointment.setId(12);
+        appointment.setVetId(1);
+        appointment.setPetId(7);
+        appointment.setStartTime(START);
+        appointment.setEndTime(END);
+        given(vetCalendars.book(1, 7, START, END)).willReturn(appointment);
+
+        mvc.perform(post("/vets/1/appointments")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {"petId": 7, "startTime": "2030-03-04T10:00:00", "endTime": "2030-03-04T10:30:00"}
+                    """))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.id").value(12))
+            .andExpect(jsonPath("$.startTime").value("2030-03-04T10:00:00"));
+    }
+
+    @Test
+    void shouldAnswerConflictWhenTheSlotIsTaken() throws Exception {
+        given(vetCalendars.book(1, 7, START, END))
+            .willThrow(new ResponseStatusException(HttpStatus.CONFLICT, "Vet 1 is not available"));
+
+        mvc.perform(post("/vets/1/appointments")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {"petId": 7, "startTime": "2030-03-04T10:00:00", "endTime": "2030-03-04T10:30:00"}
+                    """))
+            .andExpect(status().isConflict());
+    }
+
+    @Test
+    void shouldRequireTheTimesOfTheSlot() throws Exception {
+        mvc.perform(post("/vets/1/appointments")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {"petId": 7, "startTime": "2030-03-04T10:00:00"}
+                    """))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldListTheAvailableVets() throws Exception {
+        given(vetRepository.findAll()).willReturn(List.of(vet(1, "Carter"), vet(2, "Leary")));
+        given(vetCalendars.isAvailable(1, START, END)).willReturn(false);
+        given(vetCalendars.isAvailable(2, START, END)).willReturn(true);
+
+        mvc.perform(get("/vets/available")
+                .param("from", "2030-03-04T10:00:00")
+                .param("to", "2030-03-04T10:30:00")
+                .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(1))
+            .andExpect(jsonPath("$[0].id").value(2));
+    }
+
+    @Test
+    void shouldCancelAnAppointment() throws Exception {
+        mvc.perform(delete("/vets/1/appointments/12"))
+            .andExpect(status().isNoContent());
+
+        then(vetCalendars).should().cancel(1, 12);
+    }
+
+    private static Vet vet(int id, String lastName) {
+        Vet vet = new Vet();
+        vet.setId(id);
+        vet.setLastName(lastName);
+        return vet;
+    }
+}
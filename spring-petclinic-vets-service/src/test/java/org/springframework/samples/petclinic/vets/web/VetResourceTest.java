@@ -20,9 +20,13 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.vets.model.Specialty;
 import org.springframework.samples.petclinic.vets.model.Vet;
 import org.springframework.samples.petclinic.vets.model.VetRepository;
+import org.springframework.samples.petclinic.vets.snapshot.VetsSnapshots;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
@@ -30,6 +34,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import static java.util.Arrays.asList;
 import static org.mockito.BDDMockito.given;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -38,6 +43,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  */
 @ExtendWith(SpringExtension.class)
 @WebMvcTest(VetResource.class)
+@Import(VetsSnapshots.class)
 @ActiveProfiles("test")
 class VetResourceTest {
 
@@ -59,4 +65,60 @@ class VetResourceTest {
             .andExpect(status().isOk())
             .andExpect(jsonPath("$[0].id").value(1));
     }
+
+    @Test
+    void shouldAnswerNotModifiedWhenETagMatches() throws Exception {
+
+        Vet vet = new Vet();
+        vet.setId(1);
+
+        given(vetRepository.findAll()).willReturn(asList(vet));
+
+        String etag = mvc.perform(get("/vets").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(get("/vets").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string(HttpHeaders.ETAG, etag));
+    }
+
+    @Test
+    void shouldFilterVetsBySpecialty() throws Exception {
+
+        Specialty radiology = new Specialty();
+        radiology.setName("radiology");
+        Vet carter = new Vet();
+        carter.setId(1);
+        carter.setLastName("Carter");
+        Vet leary = new Vet();
+        leary.setId(2);
+        leary.setLastName("Leary");
+        leary.addSpecialty(radiology);
+
+        given(vetRepository.findAll()).willReturn(asList(carter, leary));
+
+        mvc.perform(get("/vets").param("specialty", "radiology").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.total").value(1))
+            .andExpect(jsonPath("$.vets[0].id").value(2));
+    }
+
+    @Test
+    void shouldIgnoreBlankQueryParameters() throws Exception {
+
+        Vet carter = new Vet();
+        carter.setId(1);
+        carter.setLastName("Carter");
+
+        given(vetRepository.findAll()).willReturn(asList(carter));
+
+        mvc.perform(get("/vets").param("specialty", "").param("lastNamePrefix", " ").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].id").value(1));
+        mvc.perform(get("/vets").param("specialty", "").param("page", "0").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.total").value(1))
+            .andExpect(jsonPath("$.vets[0].id").value(1));
+    }
 }
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.archive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.samples.petclinic.visits.archive.VisitSegmentStore.StoredSegment;
+import org.springframework.samples.petclinic.visits.config.VisitsProperties;
+import org.springframework.samples.petclinic.visits.model.Visit;
+import org.springframework.samples.petclinic.visits.model.VisitRepository;
+import org.springframework.samples.petclinic.visits.model.VisitSummary;
+import org.springframework.samples.petclinic.visits.shard.Shards;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Cold tier of the visits, enabled by setting <code>visits.archive.enabled</code>.
+ * <p>
+ * Periodically, visits older than <code>visits.archive.after-days</code> are encoded into a new segment
+ * (see {@link VisitSegment}) stored in the <code>visit_segments</code> table, and deleted from the
+ * <code>visits</code> table in the same transaction, keeping the table and its indexes small. When two instances
+ * archive the same visits, the one deleting fewer visits than it encoded rolls back, so each visit is archived once.
+ * <p>
+ * Segments are never modified. Every instance copies them to <code>visits.archive.directory</code> and maps the files
+ * in memory, so that they are paged in by the operating system instead of being held on the heap, and keeps the
+ * segments of each pet id. It loads the segments written by the other instances every
+ * <code>visits.archive.refresh-seconds</code>: until then, it misses the visits they have just archived. The ids of the
+ * loaded segments are remembered, rather than the last one, as concurrent transactions may commit them out of order.
+ * When visits are sharded, each shard stores the segments of its own visits.
+ */
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "visits.archive.enabled", havingValue = "true")
+public class VisitArchive implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(VisitArchive.class);
+
+    private final VisitRepository visitRepository;
+    private final VisitSegmentStore segmentStore;
+    private final Shards shards;
+    private final VisitsProperties.Archive properties;
+    private final TransactionTemplate transactionTemplate;
+    private final ScheduledExecutorService scheduler;
+    private final Path directory;
+    private final List<Set<Long>> loadedIds;
+    private volatile List<LoadedSegment> segments = List.of();
+    private volatile Map<Integer, List<LoadedSegment>> segmentsByPet = Map.of();
+
+    VisitArchive(VisitRepository visitRepository, VisitSegmentStore segmentStore, Shards shards,
+                 VisitsProperties properties, PlatformTransactionManager transactionManager) {
+        this.visitRepository = visitRepository;
+        this.segmentStore = segmentStore;
+        this.shards = shards;
+        this.properties = properties.archive();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.loadedIds = IntStream.range(0, shards.count()).<Set<Long>>mapToObj(shard -> new HashSet<>()).toList();
+        try {
+            this.directory = this.properties.directory() != null
+                ? Files.createDirectories(this.properties.directory())
+                : Files.createTempDirectory("visit-segments");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create the visit segments directory", e);
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "visit-archive");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Load the segments before the archived visits are first looked up.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        refresh();
+        log.info("Loaded {} visit segments", segments.size());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void schedule() {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                archive();
+            } catch (RuntimeException e) {
+                log.warn("Unable to archive visits", e);
+            }
+        }, 0, properties.intervalHours(), TimeUnit.HOURS);
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                log.warn("Unable to load the new visit segments", e);
+            }
+        }, properties.refreshSeconds(), properties.refreshSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Load the segments not loaded yet, written by this instance or another one.
+     */
+    synchronized void refresh() {
+        List<LoadedSegment> loaded = new ArrayList<>();
+        try {
+            for (int shard = 0; shard < shards.count(); shard++) {
+                int index = shard;
+                Set<Long> ids = loadedIds.get(shard);
+                for (StoredSegment stored : shards.on(shard, segmentStore::findAll)) {
+                    if (!ids.contains(stored.id())) {
+                        loaded.add(shards.on(shard, () -> load(index, stored)));
+                        ids.add(stored.id());
+                    }
+                }
+            }
+        } finally {
+            // Publish the segments loaded before a failure, the others are retried on the next refresh
+            if (!loaded.isEmpty()) {
+                publish(loaded);
+            }
+        }
+    }
+
+    private void publish(List<LoadedSegment> loaded) {
+        List<LoadedSegment> updated = new ArrayList<>(segments);
+        updated.addAll(loaded);
+        Map<Integer, List<LoadedSegment>> byPet = new HashMap<>(segmentsByPet);
+        for (LoadedSegment segment : loaded) {
+            segment.segment().petIds().forEach(petId -> byPet.merge(petId, List.of(segment),
+                (current, added) -> Stream.concat(current.stream(), added.stream()).toList()));
+        }
+        segments = List.copyOf(updated);
+        segmentsByPet = byPet;
+    }
+
+    private LoadedSegment load(int shard, StoredSegment stored) {
+        Path file = directory.resolve("shard-" + shard + "-segment-" + stored.id());
+        segmentStore.copy(stored.id(), file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new LoadedSegment(VisitSegment.of("segment " + stored.id() + " of shard " + shard, buffer),
+                stored.minDate(), stored.maxDate());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Move the visits older than the configured age to new segments, <code>visits.archive.segment-size</code>
+     * visits at a time.
+     */
+    synchronized void archive() {
+        Date cutoff = Date.from(LocalDate.now().minusDays(properties.afterDays()).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        for (int shard = 0; shard < shards.count(); shard++) {
+            int archived = 0;
+            int batch;
+            do {
+                batch = shards.on(shard, () -> transactionTemplate.execute(status -> archive(cutoff, status)));
+                archived += batch;
+            } while (batch == properties.segmentSize());
+            if (archived > 0) {
+                log.info("Archived {} visits of shard {} older than {}", archived, shard, cutoff);
+            }
+        }
+        refresh();
+    }
+
+    /**
+     * @return the number of visits archived, 0 once there are none left or when another instance is archiving them
+     */
+    private int archive(Date cutoff, TransactionStatus status) {
+        List<Visit> visits = visitRepository.findByDateBeforeOrderByIdAsc(cutoff, Limit.of(properties.segmentSize()));
+        if (visits.isEmpty()) {
+            return 0;
+        }
+        SortedMap<Integer, List<Visit>> byPet = new TreeMap<>();
+        for (Visit visit : visits) {
+            byPet.computeIfAbsent(visit.getPetId(), petId -> new ArrayList<>()).add(visit);
+        }
+        LongSummaryStatistics dates = visits.stream().mapToLong(visit -> visit.getDate().getTime()).summaryStatistics();
+        try {
+            segmentStore.insert(VisitSegment.encode(byPet), visits.size(),
+                new java.sql.Date(dates.getMin()), new java.sql.Date(dates.getMax()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to encode a visit segment", e);
+        }
+        if (visitRepository.deleteByIdIn(visits.stream().map(Visit::getId).toList()) < visits.size()) {
+            status.setRollbackOnly();
+            log.info("Visits already archived by another instance, skipping this run");
+            return 0;
+        }
+        return visits.size();
+    }
+
+    /**
+     * @return the ids of the pets having archived visits
+     */
+    public IntStream petIds() {
+        return segmentsByPet.keySet().stream().mapToInt(Integer::intValue);
+    }
+
+    public List<Visit> findByPetId(int petId) {
+        List<Visit> visits = new ArrayList<>();
+        for (LoadedSegment loaded : segmentsByPet.getOrDefault(petId, List.of())) {
+            visits.addAll(loaded.segment().visitsOf(petId));
+        }
+        return visits;
+    }
+
+    /**
+     * Archived visits of a pet, or of all pets when <code>petId</code> is <code>null</code>, in <code>[from, to)</code>
+     * and strictly before the <code>(beforeDate, beforeId)</code> key, newest first, like
+     * {@link VisitRepository#findPage}. Only the segments overlapping the dates are inflated for all pets.
+     */
+    public List<VisitSummary> findPage(Integer petId, Date from, Date to, Date beforeDate, int beforeId, int limit) {
+        Stream<Visit> visits = petId != null
+            ? findByPetId(petId).stream()
+            : segments.stream()
+                .filter(loaded -> !loaded.maxDate().before(from) && loaded.minDate().before(to) && !loaded.minDate().after(beforeDate))
+                .flatMap(loaded -> loaded.segment().visits().stream());
+        return visits
+            .filter(visit -> visit.getDate() != null && !visit.getDate().before(from) && visit.getDate().before(to))
+            .filter(visit -> visit.getDate().before(beforeDate) || (visit.getDate().getTime() == beforeDate.getTime() && visit.getId() < beforeId))
+            .map(VisitSummary::of)
+            .sorted(VisitSummary.NEWEST_FIRST)
+            .limit(limit)
+            .toList();
+    }
+
+    /**
+     * Archived visits followed by live ones, keeping a single copy of a visit read from both tiers while it was
+     * being archived.
+     */
+    public static List<VisitSummary> merge(List<VisitSummary> archived, List<VisitSummary> live) {
+        if (archived.isEmpty()) {
+            return live;
+        }
+        Set<Integer> liveIds = new HashSet<>();
+        live.forEach(visit -> liveIds.add(visit.id()));
+        Set<Integer> seen = new HashSet<>();
+        List<VisitSummary> merged = new ArrayList<>(archived.size() + live.size());
+        for (VisitSummary visit : archived) {
+            if (!liveIds.contains(visit.id()) && seen.add(visit.id())) {
+                merged.add(visit);
+            }
+        }
+        merged.addAll(live);
+        return merged;
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        // The mappings stay valid until the buffers are collected, even once the files are deleted
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to delete the visit segments of {}", directory, e);
+        }
+    }
+
+    private record LoadedSegment(VisitSegment segment, Date minDate, Date maxDate) {
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.archive;
+
+import org.springframework.samples.petclinic.visits.model.Visit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable segment of archived visits, grouped by pet, stored as one row of <code>visit_segments</code>.
+ * <p>
+ * Layout (big-endian): magic, format version, pet count, then one index entry per pet sorted by pet id
+ * (pet id, block offset, block length, visit count, CRC32 of the block), then the blocks. Each block holds
+ * the deflated visits of one pet: id, date in epoch milliseconds (<code>Long.MIN_VALUE</code> for
+ * <code>null</code>) and description written as a UTF-8 byte length (-1 for <code>null</code>) and the bytes.
+ * Looking up a pet binary searches the index and inflates its block only.
+ */
+final class VisitSegment {
+
+    private static final int MAGIC = 0x56495354; // "VIST"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int ENTRY_SIZE = 24;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final String name;
+    private final ByteBuffer buffer;
+    private final int petCount;
+
+    private VisitSegment(String name, ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a visit segment: " + name);
+        }
+        this.name = name;
+        this.buffer = buffer;
+        this.petCount = buffer.getInt(8);
+        if (HEADER_SIZE + (long) petCount * ENTRY_SIZE > buffer.capacity()) {
+            throw new IOException("Truncated visit segment: " + name);
+        }
+    }
+
+    /**
+     * @param name identifies the segment in error messages
+     */
+    static VisitSegment of(String name, ByteBuffer buffer) throws IOException {
+        return new VisitSegment(name, buffer);
+    }
+
+    int petCount() {
+        return petCount;
+    }
+
+    IntStream petIds() {
+        return IntStream.range(0, petCount).map(i -> buffer.getInt(HEADER_SIZE + i * ENTRY_SIZE));
+    }
+
+    /**
+     * @return the archived visits of the pet, in the order they were written
+     */
+    List<Visit> visitsOf(int petId) {
+        int low = 0;
+        int high = petCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = HEADER_SIZE + mid * ENTRY_SIZE;
+            int id = buffer.getInt(entry);
+            if (id < petId) {
+                low = mid + 1;
+            } else if (id > petId) {
+                high = mid - 1;
+            } else {
+                return readBlock(petId, entry);
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * @return the archived visits of all pets, inflating every block
+     */
+    List<Visit> visits() {
+        List<Visit> visits = new ArrayList<>();
+        for (int i = 0; i < petCount; i++) {
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            visits.addAll(readBlock(buffer.getInt(entry), entry));
+        }
+        return visits;
+    }
+
+    private List<Visit> readBlock(int petId, int entry) {
+        long offset = buffer.getLong(entry + 4);
+        int length = buffer.getInt(entry + 12);
+        int count = buffer.getInt(entry + 16);
+        int checksum = buffer.getInt(entry + 20);
+        ByteBuffer block = buffer.slice((int) offset, length);
+        CRC32 crc = new CRC32();
+        crc.update(block.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new UncheckedIOException(new IOException("Corrupted visits of pet " + petId + " in " + name));
+        }
+        ByteBuffer visits = inflate(block, petId);
+        List<Visit> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Visit visit = new Visit();
+            visit.setId(visits.getInt());
+            visit.setPetId(petId);
+            long date = visits.getLong();
+            visit.setDate(date == NO_DATE ? null : new Date(date));
+            visit.setDescription(readString(visits));
+            result.add(visit);
+        }
+        return result;
+    }
+
+    private ByteBuffer inflate(ByteBuffer block, int petId) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(block);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(block.remaining() * 4);
+            byte[] chunk = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated block");
+                }
+                out.write(chunk, 0, n);
+            }
+            return ByteBuffer.wrap(out.toByteArray());
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Corrupted visits of pet " + petId + " in " + name, e));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    static byte[] encode(SortedMap<Integer, List<Visit>> visitsByPet) throws IOException {
+        List<byte[]> blocks = new ArrayList<>(visitsByPet.size());
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            for (List<Visit> visits : visitsByPet.values()) {
+                blocks.add(deflate(deflater, serialize(visits)));
+            }
+        } finally {
+            deflater.end();
+        }
+        long size = HEADER_SIZE + (long) ENTRY_SIZE * blocks.size();
+        for (byte[] block : blocks) {
+            size += block.length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Visit segment too large: " + size + " bytes");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) size)
+            .putInt(MAGIC)
+            .putInt(VERSION)
+            .putInt(blocks.size());
+        long offset = HEADER_SIZE + (long) ENTRY_SIZE * blocks.size();
+        int i = 0;
+        for (Map.Entry<Integer, List<Visit>> pet : visitsByPet.entrySet()) {
+            byte[] block = blocks.get(i++);
+            CRC32 crc = new CRC32();
+            crc.update(block);
+            out.putInt(pet.getKey())
+                .putLong(offset)
+                .putInt(block.length)
+                .putInt(pet.getValue().size())
+                .putInt((int) crc.getValue());
+            offset += block.length;
+        }
+        blocks.forEach(out::put);
+        return out.array();
+    }
+
+    private static byte[] serialize(List<Visit> visits) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * visits.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Visit visit : visits) {
+            out.writeInt(visit.getId());
+            out.writeLong(visit.getDate() == null ? NO_DATE : visit.getDate().getTime());
+            if (visit.getDescription() == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] description = visit.getDescription().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(description.length);
+                out.write(description);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] input) {
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return out.toByteArray();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
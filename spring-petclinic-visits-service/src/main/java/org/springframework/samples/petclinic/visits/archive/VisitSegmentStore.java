@@ -0,0 +1,94 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.archive;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.samples.petclinic.visits.model.Visit;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Rows of the <code>visit_segments</code> table, holding the archived visits in the database shared by all
+ * the instances, so that they survive the instance that archived them. Each shard stores the segments
+ * of its own visits; methods run against the shard bound to the calling thread.
+ */
+@Component
+@Profile("!reactive")
+public class VisitSegmentStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    VisitSegmentStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    void insert(byte[] data, int visits, Date minDate, Date maxDate) {
+        jdbcTemplate.update("INSERT INTO visit_segments (visits, min_date, max_date, data) VALUES (?, ?, ?, ?)",
+            visits, minDate, maxDate, data);
+    }
+
+    /**
+     * @return the segments stored so far, without their data
+     */
+    List<StoredSegment> findAll() {
+        return jdbcTemplate.query("SELECT id, min_date, max_date FROM visit_segments",
+            (rs, rowNum) -> new StoredSegment(rs.getLong(1), rs.getDate(2), rs.getDate(3)));
+    }
+
+    /**
+     * Stream the data of a segment to a file, without holding it in memory.
+     */
+    void copy(long id, Path file) {
+        jdbcTemplate.query("SELECT data FROM visit_segments WHERE id = ?", rs -> {
+            try (InputStream data = rs.getBinaryStream(1)) {
+                Files.copy(data, file, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to copy visit segment " + id + " to " + file, e);
+            }
+        }, id);
+    }
+
+    /**
+     * Read every archived visit, one segment at a time, e.g. to recount them along with the live visits.
+     */
+    public void forEachVisit(Consumer<Visit> action) {
+        jdbcTemplate.query("SELECT id, data FROM visit_segments", rs -> {
+            try {
+                VisitSegment.of("segment " + rs.getLong(1), ByteBuffer.wrap(rs.getBytes(2))).visits().forEach(action);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * @param minDate date of the oldest visit of the segment
+     * @param maxDate date of the newest visit of the segment
+     */
+    record StoredSegment(long id, Date minDate, Date maxDate) {
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Typesafe custom configuration.
+ */
+@ConfigurationProperties(prefix = "visits")
+public record VisitsProperties(
+    @DefaultValue Lookup lookup,
+    @DefaultValue Cache cache,
+    @DefaultValue Ingestion ingestion,
+    @DefaultValue Archive archive,
+    @DefaultValue Sharding sharding
+) {
+    /**
+     * @param chunkSize   maximum number of pet ids in the <code>IN</code> list of a single query
+     * @param parallelism maximum number of chunks queried concurrently, keep it below the connection pool size
+     */
+    public record Lookup(
+        @DefaultValue("100") int chunkSize,
+        @DefaultValue("4") int parallelism
+    ) {
+    }
+
+    /**
+     * @param enabled     whether the visits of each pet, and the pets having visits, are cached, at the cost of
+     *                    serving visits created through another instance only after <code>ttl</code>
+     * @param maximumSize maximum number of pets whose visits are cached
+     * @param ttl         seconds after which cached visits, and the pets known to have visits, are reloaded,
+     *                    bounding staleness across instances
+     */
+    public record Cache(
+        boolean enabled,
+        @DefaultValue("10000") long maximumSize,
+        @DefaultValue("300") long ttl
+    ) {
+    }
+
+    /**
+     * @param enabled         whether new visits are queued and written in batches by a background writer
+     * @param queueCapacity   maximum number of visits waiting to be written, beyond which requests get 429
+     * @param batchSize       maximum number of visits inserted in one transaction
+     * @param flushIntervalMs how long the writer waits for more visits after the first one of a batch
+     */
+    public record Ingestion(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("10000") int queueCapacity,
+        @DefaultValue("500") int batchSize,
+        @DefaultValue("10") long flushIntervalMs
+    ) {
+    }
+
+    /**
+     * @param enabled        whether old visits are moved to segments of the <code>visit_segments</code> table
+     * @param afterDays      age in days beyond which visits are moved out of the <code>visits</code> table
+     * @param segmentSize    maximum number of visits per segment
+     * @param intervalHours  delay between two archiving runs, the first one starting with the application
+     * @param refreshSeconds delay between two loads of the segments written by the other instances
+     * @param directory      local directory where the segments are copied and memory-mapped, a new temporary
+     *                       directory when not set
+     */
+    public record Archive(
+        boolean enabled,
+        @DefaultValue("730") int afterDays,
+        @DefaultValue("10000") int segmentSize,
+        @DefaultValue("24") long intervalHours,
+        @DefaultValue("60") long refreshSeconds,
+        Path directory
+    ) {
+    }
+
+    /**
+     * @param enabled        whether visits are partitioned by pet id hash across <code>shards</code>, instead of
+     *                       using the single auto-configured datasource
+     * @param initialize     whether each shard is created from the scripts below and keeps only the seed visits it owns
+     * @param schemaLocation schema script of each shard
+     * @param dataLocation   seed data of each shard
+     * @param shards         one datasource per shard, whose order must never change
+     */
+    public record Sharding(
+        boolean enabled,
+        @DefaultValue("true") boolean initialize,
+        @DefaultValue("classpath*:db/hsqldb/schema.sql") String schemaLocation,
+        @DefaultValue("classpath*:db/hsqldb/data.sql") String dataLocation,
+        @DefaultValue List<Shard> shards
+    ) {
+        public record Shard(
+            String url,
+            String username,
+            String password
+        ) {
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.context.WebServerGracefulShutdownLifecycle;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.samples.petclinic.visits.config.VisitsProperties;
+import org.springframework.samples.petclinic.visits.model.Visit;
+import org.springframework.samples.petclinic.visits.model.VisitsCreated;
+import org.springframework.samples.petclinic.visits.shard.Shards;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind ingestion of new visits, enabled with <code>visits.ingestion.enabled</code>.
+ * <p>
+ * Requests enqueue their visit and wait on a future. A single writer thread takes the first waiting visit,
+ * gathers the ones arriving within <code>visits.ingestion.flush-interval-ms</code> (up to
+ * <code>visits.ingestion.batch-size</code>) and inserts them with one JDBC batch in one transaction
+ * (one per {@link Shards shard} when visits are sharded).
+ * Futures are completed once that transaction has committed, so a successful response still means
+ * the visit is durable. When the queue is full, visits are rejected with 429 Too Many Requests.
+ * <p>
+ * The writer stops after the web server has finished its graceful shutdown, so that the requests still running
+ * get their visits written. Visits submitted once it is stopped are rejected with 503 Service Unavailable.
+ */
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty("visits.ingestion.enabled")
+public class VisitIngestion implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(VisitIngestion.class);
+
+    private static final String INSERT_VISIT = "INSERT INTO visits (pet_id, visit_date, description) VALUES (?, ?, ?)";
+
+    private final BlockingQueue<PendingVisit> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Shards shards;
+    private final DistributionSummary batchSizes;
+    private final Timer commitLatency;
+    private final Counter rejected;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    VisitIngestion(VisitsProperties properties, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                   ApplicationEventPublisher eventPublisher, Shards shards, MeterRegistry registry) {
+        VisitsProperties.Ingestion ingestion = properties.ingestion();
+        this.queue = new ArrayBlockingQueue<>(ingestion.queueCapacity());
+        this.batchSize = ingestion.batchSize();
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(ingestion.flushIntervalMs());
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.shards = shards;
+        this.batchSizes = DistributionSummary.builder("petclinic.visit.ingestion.batch.size")
+            .description("Number of visits inserted per transaction")
+            .register(registry);
+        this.commitLatency = Timer.builder("petclinic.visit.ingestion.commit")
+            .description("Time to insert and commit a batch of visits")
+            .register(registry);
+        this.rejected = Counter.builder("petclinic.visit.ingestion.rejected")
+            .description("Visits rejected because the ingestion queue was full")
+            .register(registry);
+        Gauge.builder("petclinic.visit.ingestion.queue", queue, BlockingQueue::size)
+            .description("Visits waiting to be written")
+            .register(registry);
+    }
+
+    /**
+     * @return a future completed with the saved visit once it has been committed
+     * @throws ResponseStatusException with status 429 when the queue is full, 503 when the writer is stopped
+     */
+    public CompletableFuture<Visit> submit(Visit visit) {
+        if (!running) {
+            throw stopped();
+        }
+        PendingVisit pending = new PendingVisit(visit, new CompletableFuture<>());
+        if (!queue.offer(pending)) {
+            rejected.increment();
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many visits waiting to be saved");
+        }
+        // Stopped in the meantime: the writer may have exited without seeing the visit
+        if (!running && queue.remove(pending)) {
+            throw stopped();
+        }
+        return pending.result();
+    }
+
+    private static ResponseStatusException stopped() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Visit ingestion is stopped");
+    }
+
+    private void run() {
+        List<PendingVisit> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingVisit first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingVisit next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Stopping: write what has been gathered, then drain the queue
+                Thread.currentThread().interrupt();
+                running = false;
+                queue.drainTo(batch);
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+        // Visits submitted while the writer was exiting, unless their request already got a 503
+        queue.drainTo(batch);
+        batch.forEach(pending -> pending.result().completeExceptionally(stopped()));
+    }
+
+    private void write(List<PendingVisit> batch) {
+        SortedMap<Integer, List<PendingVisit>> byShard = new TreeMap<>();
+        for (PendingVisit pending : batch) {
+            byShard.computeIfAbsent(shards.ofPet(pending.visit().getPetId()), shard -> new ArrayList<>()).add(pending);
+        }
+        byShard.forEach(this::write);
+    }
+
+    private void write(int shard, List<PendingVisit> batch) {
+        try {
+            commitLatency.recordCallable(() -> shards.on(shard, () -> transactionTemplate.execute(status -> insert(batch))));
+            batch.forEach(pending -> pending.result().complete(pending.visit()));
+            batchSizes.record(batch.size());
+        } catch (Exception e) {
+            log.warn("Unable to save a batch of {} visits", batch.size(), e);
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+        }
+    }
+
+    private List<Visit> insert(List<PendingVisit> batch) {
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+            connection -> connection.prepareStatement(INSERT_VISIT, Statement.RETURN_GENERATED_KEYS),
+            new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    Visit visit = batch.get(i).visit();
+                    ps.setInt(1, visit.getPetId());
+                    ps.setTimestamp(2, visit.getDate() == null ? null : new Timestamp(visit.getDate().getTime()));
+                    ps.setString(3, visit.getDescription());
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return batch.size();
+                }
+            },
+            keys);
+        List<Map<String, Object>> generated = keys.getKeyList();
+        List<Visit> visits = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Visit visit = batch.get(i).visit();
+            if (i < generated.size()) {
+                visit.setId(((Number) generated.get(i).values().iterator().next()).intValue());
+            }
+            visits.add(visit);
+        }
+        eventPublisher.publishEvent(new VisitsCreated(visits));
+        return visits;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        writer = new Thread(this::run, "visit-ingestion");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stop accepting visits and wait for the waiting ones to be written.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stop after the graceful shutdown of the web server, which waits for the requests still running.
+     */
+    @Override
+    public int getPhase() {
+        return WebServerGracefulShutdownLifecycle.SMART_LIFECYCLE_PHASE - 1;
+    }
+
+    private record PendingVisit(Visit visit, CompletableFuture<Visit> result) {
+    }
+}
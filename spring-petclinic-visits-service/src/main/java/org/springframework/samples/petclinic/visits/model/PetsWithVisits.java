@@ -0,0 +1,186 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.samples.petclinic.visits.archive.VisitArchive;
+import org.springframework.samples.petclinic.visits.config.VisitsProperties;
+import org.springframework.samples.petclinic.visits.shard.Shards;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Set of the ids of the pets having at least one visit, live or archived, so that the many pets without
+ * visits can be answered without querying the database.
+ * <p>
+ * Like the cached visits, it is only used with <code>visits.cache.enabled</code>: the first visit of a pet created
+ * by another instance is only seen when the set is reloaded, every <code>visits.cache.ttl</code> seconds, and until then
+ * this instance answers that the pet has no visits. Otherwise, every pet is assumed to have visits.
+ * <p>
+ * Pet ids are small, dense integers, so a {@link BitSet} takes one bit per pet, up to {@link #MAX_PET_ID}: the pets
+ * beyond are not tracked and assumed to have visits, so that a visit posted for a huge pet id cannot grow the set.
+ * All the pets with visits are loaded once the application is ready, then each reload only reads the visits inserted
+ * since the reload before the previous one, so that a visit committed up to one reload after its id was generated
+ * is still seen. A pet is also added before the transaction creating its first visit through this instance commits.
+ * Visits are never deleted, so the set only grows.
+ */
+@Component
+@Profile("!reactive")
+public class PetsWithVisits implements DisposableBean {
+
+    /**
+     * Largest pet id tracked, taking at most 2 MB
+     */
+    static final int MAX_PET_ID = (1 << 24) - 1;
+
+    private static final Logger log = LoggerFactory.getLogger(PetsWithVisits.class);
+
+    private final VisitRepository visitRepository;
+    private final ObjectProvider<VisitArchive> archive;
+    private final Shards shards;
+    private final boolean enabled;
+    private final long reloadSeconds;
+    private final ScheduledExecutorService scheduler;
+    private final BitSet petIds = new BitSet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Per shard, the visit id after which the next reload reads, and the largest visit id seen by the last one.
+     * Only used by the reloading thread.
+     */
+    private final Map<Integer, Integer> readAfter = new HashMap<>();
+    private final Map<Integer, Integer> lastRead = new HashMap<>();
+    private volatile boolean loaded;
+
+    PetsWithVisits(VisitRepository visitRepository, ObjectProvider<VisitArchive> archive, Shards shards,
+                   VisitsProperties properties) {
+        this.visitRepository = visitRepository;
+        this.archive = archive;
+        this.shards = shards;
+        this.enabled = properties.cache().enabled();
+        this.reloadSeconds = properties.cache().ttl();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pets-with-visits");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return <code>false</code> when the pet certainly has no visits
+     */
+    public boolean mayHaveVisits(int petId) {
+        if (!loaded || petId > MAX_PET_ID) {
+            return true;
+        }
+        if (petId < 0) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            return petIds.get(petId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void schedule() {
+        if (!enabled) {
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                load();
+            } catch (RuntimeException e) {
+                log.warn("Unable to reload the pets with visits", e);
+            }
+        }, 0, reloadSeconds, TimeUnit.SECONDS);
+    }
+
+    void load() {
+        // The largest id is read first, so that the next reloads cover every visit inserted after the query
+        List<Read> reads = shards.scatter(shard -> {
+            int maxId = visitRepository.findMaxId();
+            return List.of(new Read(shard, maxId, visitRepository.findDistinctPetIdsByIdGreaterThan(readAfter.getOrDefault(shard, 0))));
+        });
+        BitSet found = new BitSet();
+        for (Read read : reads) {
+            read.petIds().forEach(petId -> add(found, petId));
+            readAfter.put(read.shard(), lastRead.getOrDefault(read.shard(), 0));
+            lastRead.put(read.shard(), read.maxId());
+        }
+        archive.ifAvailable(visitArchive -> visitArchive.petIds().forEach(petId -> add(found, petId)));
+        lock.writeLock().lock();
+        try {
+            // Keep the pets added while loading
+            petIds.or(found);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!loaded) {
+            loaded = true;
+            log.info("Found {} pets with visits", found.cardinality());
+        }
+    }
+
+    /**
+     * Add the pets before the visits are visible, a pet added by a transaction rolled back afterwards
+     * only costing a query.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    void onVisitsCreated(VisitsCreated event) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            event.visits().forEach(visit -> add(petIds, visit.getPetId()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    private static void add(BitSet set, int petId) {
+        if (petId >= 0 && petId <= MAX_PET_ID) {
+            set.set(petId);
+        }
+    }
+
+    private record Read(int shard, int maxId, List<Integer> petIds) {
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.model;
+
+import io.r2dbc.spi.Readable;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.samples.petclinic.visits.stats.Granularity;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * R2DBC counterpart of {@link VisitRepository}, used by the <code>reactive</code> profile.
+ * Dates are stored in the <code>DATE</code> column as the local date of the visit, like the JPA mapping does.
+ * <p>
+ * Saving a visit also counts it in <code>visit_rollups</code>, <code>pet_visit_rollups</code> and
+ * <code>pet_visit_summaries</code> in the same transaction, with the same rows as the default mode, so that
+ * both modes can share a database.
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveVisitRepository {
+
+    private static final String SUMMARY = "SELECT id, pet_id, visit_date, SUBSTRING(description, 1, " +
+        (VisitSummary.DESCRIPTION_LENGTH + 1) + ") AS description FROM visits ";
+
+    private static final String PAGE_CONDITION = "visit_date >= :from AND visit_date < :to " +
+        "AND visit_date <= :beforeDate AND (visit_date < :beforeDate OR id < :beforeId) " +
+        "ORDER BY visit_date DESC, id DESC LIMIT :limit";
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+
+    ReactiveVisitRepository(DatabaseClient databaseClient, ReactiveTransactionManager transactionManager) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = TransactionalOperator.create(transactionManager);
+    }
+
+    public Mono<Visit> findById(int visitId) {
+        return databaseClient.sql("SELECT id, pet_id, visit_date, description FROM visits WHERE id = :id")
+            .bind("id", visitId)
+            .map(ReactiveVisitRepository::visit)
+            .one();
+    }
+
+    public Flux<VisitSummary> findSummariesByPetId(int petId) {
+        return databaseClient.sql(SUMMARY + "WHERE pet_id = :petId")
+            .bind("petId", petId)
+            .map(ReactiveVisitRepository::summary)
+            .all();
+    }
+
+    public Flux<VisitSummary> findSummariesByPetIdIn(Collection<Integer> petIds) {
+        if (petIds.isEmpty()) {
+            return Flux.empty();
+        }
+        return databaseClient.sql(SUMMARY + "WHERE pet_id IN (:petIds) ORDER BY pet_id")
+            .bind("petIds", petIds)
+            .map(ReactiveVisitRepository::summary)
+            .all();
+    }
+
+    /**
+     * @see VisitRepository#findPageByPetId
+     */
+    public Flux<VisitSummary> findPageByPetId(int petId, Date from, Date to, Date beforeDate, int beforeId, int limit) {
+        return page(SUMMARY + "WHERE pet_id = :petId AND " + PAGE_CONDITION, from, to, beforeDate, beforeId, limit)
+            .bind("petId", petId)
+            .map(ReactiveVisitRepository::summary)
+            .all();
+    }
+
+    /**
+     * @see VisitRepository#findPage
+     */
+    public Flux<VisitSummary> findPage(Date from, Date to, Date beforeDate, int beforeId, int limit) {
+        return page(SUMMARY + "WHERE " + PAGE_CONDITION, from, to, beforeDate, beforeId, limit)
+            .map(ReactiveVisitRepository::summary)
+            .all();
+    }
+
+    private GenericExecuteSpec page(String sql, Date from, Date to, Date beforeDate, int beforeId, int limit) {
+        return databaseClient.sql(sql)
+            .bind("from", toLocalDate(from))
+            .bind("to", toLocalDate(to))
+            .bind("beforeDate", toLocalDate(beforeDate))
+            .bind("beforeId", beforeId)
+            .bind("limit", limit);
+    }
+
+    public Mono<Visit> save(Visit visit) {
+        return insert(visit)
+            .flatMap(saved -> count(saved).thenReturn(saved))
+            .as(transactionalOperator::transactional);
+    }
+
+    private Mono<Visit> insert(Visit visit) {
+        GenericExecuteSpec insert = databaseClient
+            .sql("INSERT INTO visits (pet_id, visit_date, description) VALUES (:petId, :date, :description)")
+            .bind("petId", visit.getPetId());
+        insert = visit.getDate() == null ? insert.bindNull("date", LocalDate.class) : insert.bind("date", toLocalDate(visit.getDate()));
+        insert = visit.getDescription() == null ? insert.bindNull("description", String.class) : insert.bind("description", visit.getDescription());
+        return insert
+            .filter(statement -> statement.returnGeneratedValues("id"))
+            .map(row -> row.get("id", Integer.class))
+            .one()
+            .map(id -> {
+                visit.setId(id);
+                return visit;
+            });
+    }
+
+    /**
+     * Same increments as <code>VisitRollups</code> (in the same row order) then <code>PetVisitSummaries</code>.
+     */
+    private Mono<Void> count(Visit visit) {
+        if (visit.getDate() == null) {
+            return upsert("UPDATE pet_visit_summaries SET visits = visits + 1 WHERE pet_id = :petId",
+                "INSERT INTO pet_visit_summaries (pet_id, visits, last_visit_date) VALUES (:petId, 1, NULL)",
+                Map.of("petId", visit.getPetId()));
+        }
+        LocalDate date = toLocalDate(visit.getDate());
+        Mono<Void> counts = Mono.empty();
+        for (Granularity granularity : Granularity.values()) {
+            Map<String, Object> bucket = Map.of("granularity", granularity.name(), "bucket", granularity.bucketOf(date));
+            Map<String, Object> petBucket = Map.of("granularity", granularity.name(), "bucket", granularity.bucketOf(date),
+                "petId", visit.getPetId());
+            counts = counts
+                .then(upsert("UPDATE visit_rollups SET visits = visits + 1 WHERE granularity = :granularity AND bucket = :bucket",
+                    "INSERT INTO visit_rollups (granularity, bucket, visits) VALUES (:granularity, :bucket, 1)", bucket))
+                .then(upsert("UPDATE pet_visit_rollups SET visits = visits + 1 " +
+                        "WHERE granularity = :granularity AND pet_id = :petId AND bucket = :bucket",
+                    "INSERT INTO pet_visit_rollups (granularity, pet_id, bucket, visits) VALUES (:granularity, :petId, :bucket, 1)",
+                    petBucket));
+        }
+        return counts.then(upsert("UPDATE pet_visit_summaries SET visits = visits + 1, " +
+                "last_visit_date = CASE WHEN last_visit_date IS NULL OR last_visit_date < :date THEN :date ELSE last_visit_date END " +
+                "WHERE pet_id = :petId",
+            "INSERT INTO pet_visit_summaries (pet_id, visits, last_visit_date) VALUES (:petId, 1, :date)",
+            Map.of("petId", visit.getPetId(), "date", date)));
+    }
+
+    private Mono<Void> upsert(String update, String insert, Map<String, Object> params) {
+        return execute(update, params)
+            .flatMap(updated -> updated > 0 ? Mono.just(updated) : execute(insert, params)
+                // Inserted by a concurrent transaction in the meantime
+                .onErrorResume(DuplicateKeyException.class, e -> execute(update, params)))
+            .then();
+    }
+
+    private Mono<Long> execute(String sql, Map<String, Object> params) {
+        GenericExecuteSpec statement = databaseClient.sql(sql);
+        for (Map.Entry<String, Object> param : params.entrySet()) {
+            statement = statement.bind(param.getKey(), param.getValue());
+        }
+        return statement.fetch().rowsUpdated();
+    }
+
+    private static Visit visit(Readable row) {
+        Visit visit = new Visit();
+        visit.setId(row.get("id", Integer.class));
+        visit.setPetId(row.get("pet_id", Integer.class));
+        visit.setDate(toDate(row.get("visit_date", LocalDate.class)));
+        visit.setDescription(row.get("description", String.class));
+        return visit;
+    }
+
+    private static VisitSummary summary(Readable row) {
+        return new VisitSummary(row.get("id", Integer.class), row.get("pet_id", Integer.class),
+            toDate(row.get("visit_date", LocalDate.class)), row.get("description", String.class));
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    private static Date toDate(LocalDate date) {
+        return date == null ? null : Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
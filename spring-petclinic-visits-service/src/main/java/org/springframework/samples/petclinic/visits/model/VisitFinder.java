@@ -0,0 +1,319 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.model;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Profile;
+import org.springframework.samples.petclinic.visits.archive.VisitArchive;
+import org.springframework.samples.petclinic.visits.config.VisitsProperties;
+import org.springframework.samples.petclinic.visits.shard.Shards;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Looks up the visits of many pets at once.
+ * <p>
+ * Visits are looked up as {@link VisitSummary summaries}. Pets known by {@link PetsWithVisits} to have no visits
+ * are answered right away. With <code>visits.cache.enabled</code>, the visits of each other pet are cached as an
+ * immutable list, in a cache bounded to <code>visits.cache.maximum-size</code> pets (W-TinyLFU eviction) and
+ * invalidated when visits are created for that pet through this instance: visits created through another instance
+ * are only seen once the entry expires, after <code>visits.cache.ttl</code> seconds. Only the pets missing from the
+ * cache are looked up in the database: their ids are deduplicated, sorted and
+ * split into chunks of at most <code>visits.lookup.chunk-size</code> ids, so that each query has a short
+ * <code>IN</code> list over a narrow range of the <code>pet_id</code> index.
+ * Chunks are queried concurrently, at most <code>visits.lookup.parallelism</code> at a time. When visits are
+ * {@link Shards sharded}, the pet ids are first grouped by shard, so that only the shards holding some of the pets
+ * are queried, and chunks are always queried on the lookup threads.
+ * When the {@link VisitArchive} is enabled, the archived visits of each pet are merged in before being cached.
+ */
+@Component
+@Profile("!reactive")
+public class VisitFinder implements DisposableBean {
+
+    private final VisitRepository visitRepository;
+    private final PetsWithVisits petsWithVisits;
+    private final Shards shards;
+    private final int chunkSize;
+    private final ExecutorService executor;
+    /**
+     * <code>null</code> when the cache is disabled
+     */
+    private final Cache<Integer, List<VisitSummary>> cache;
+    private final VisitArchive archive;
+    /**
+     * Incremented before each invalidation, so that a lookup racing with a write does not cache what it read.
+     */
+    private final AtomicLong writes = new AtomicLong();
+
+    VisitFinder(VisitRepository visitRepository, PetsWithVisits petsWithVisits, Shards shards, VisitsProperties properties,
+                ObjectProvider<MeterRegistry> registry, ObjectProvider<VisitArchive> archive) {
+        this.visitRepository = visitRepository;
+        this.petsWithVisits = petsWithVisits;
+        this.shards = shards;
+        this.archive = archive.getIfAvailable();
+        this.chunkSize = Math.max(1, properties.lookup().chunkSize());
+        int parallelism = properties.lookup().parallelism();
+        // Lookups of several pets never query the shards from the request thread, which may hold a connection to
+        // another one; single-pet lookups do, the request being bound to the shard of that pet (ShardRoutingInterceptor)
+        this.executor = parallelism > 1 || shards.count() > 1 ? Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "visit-lookup");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        if (properties.cache().enabled()) {
+            this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.cache().maximumSize())
+                .expireAfterWrite(Duration.ofSeconds(properties.cache().ttl()))
+                .recordStats()
+                .build();
+            registry.ifAvailable(meterRegistry -> CaffeineCacheMetrics.monitor(meterRegistry, cache, "visits"));
+        } else {
+            this.cache = null;
+        }
+    }
+
+    /**
+     * Queries the shard of the pet on the calling thread, which must not hold a connection to another shard.
+     */
+    public List<VisitSummary> findByPetId(int petId) {
+        if (!petsWithVisits.mayHaveVisits(petId)) {
+            return List.of();
+        }
+        List<VisitSummary> visits = cache == null ? null : cache.getIfPresent(petId);
+        if (visits == null) {
+            long version = writes.get();
+            visits = List.copyOf(withArchived(petId, shards.on(shards.ofPet(petId), () -> visitRepository.findSummariesByPetId(petId))));
+            cache(petId, visits, version);
+        }
+        return visits;
+    }
+
+    /**
+     * Queries the shard of the pet on the calling thread, which must not hold a connection to another shard.
+     *
+     * @return the visit with its full description
+     */
+    public Optional<Visit> findVisit(int petId, int visitId) {
+        Optional<Visit> visit = shards.on(shards.ofPet(petId), () -> visitRepository.findById(visitId))
+            .filter(live -> live.getPetId() == petId);
+        if (visit.isPresent() || archive == null) {
+            return visit;
+        }
+        return archive.findByPetId(petId).stream().filter(archived -> archived.getId() == visitId).findFirst();
+    }
+
+    /**
+     * @return the visits of the pets, ordered by pet id
+     */
+    public List<VisitSummary> findByPetIdIn(Collection<Integer> petIds) {
+        Set<Integer> ids = withVisits(petIds);
+        Map<Integer, List<VisitSummary>> cached = cached(ids);
+        List<Integer> misses = ids.stream().filter(id -> !cached.containsKey(id)).toList();
+        Map<Integer, List<VisitSummary>> loaded = misses.isEmpty() ? Map.of() : load(misses);
+        List<VisitSummary> visits = new ArrayList<>();
+        for (Integer id : ids) {
+            List<VisitSummary> ofPet = cached.get(id);
+            visits.addAll(ofPet != null ? ofPet : loaded.getOrDefault(id, List.of()));
+        }
+        return visits;
+    }
+
+    private Map<Integer, List<VisitSummary>> load(List<Integer> petIds) {
+        long version = writes.get();
+        List<Chunk> chunks = chunk(petIds);
+        if (!concurrent(chunks)) {
+            List<VisitSummary> visits = new ArrayList<>();
+            chunks.forEach(chunk -> visits.addAll(query(chunk)));
+            return cacheAll(petIds, visits, version);
+        }
+        List<Future<List<VisitSummary>>> futures = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            futures.add(executor.submit(() -> query(chunk)));
+        }
+        List<VisitSummary> visits = new ArrayList<>();
+        try {
+            for (Future<List<VisitSummary>> future : futures) {
+                visits.addAll(await(future));
+            }
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        return cacheAll(petIds, visits, version);
+    }
+
+    /**
+     * Hand over the visits of the pets chunk by chunk, as soon as each chunk is loaded, the cached
+     * visits coming first. The consumer is always called from the calling thread.
+     */
+    public void findByPetIdIn(Collection<Integer> petIds, Consumer<List<VisitSummary>> consumer) {
+        Set<Integer> ids = withVisits(petIds);
+        Map<Integer, List<VisitSummary>> cached = cached(ids);
+        if (!cached.isEmpty()) {
+            List<VisitSummary> visits = new ArrayList<>();
+            cached.values().forEach(visits::addAll);
+            consumer.accept(visits);
+        }
+        long version = writes.get();
+        List<Chunk> chunks = chunk(ids.stream().filter(id -> !cached.containsKey(id)).toList());
+        if (!concurrent(chunks)) {
+            chunks.forEach(chunk -> consumer.accept(flatten(cacheAll(chunk.petIds(), query(chunk), version))));
+            return;
+        }
+        CompletionService<List<VisitSummary>> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<List<VisitSummary>>> futures = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            futures.add(completionService.submit(() -> flatten(cacheAll(chunk.petIds(), query(chunk), version))));
+        }
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                consumer.accept(await(take(completionService)));
+            }
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Forget the cached visits of the pets once new visits have been committed for them.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    void onVisitsCreated(VisitsCreated event) {
+        if (cache == null) {
+            return;
+        }
+        writes.incrementAndGet();
+        cache.invalidateAll(event.visits().stream().map(Visit::getPetId).distinct().toList());
+    }
+
+    /**
+     * Cache the visits of every looked up pet, including those without visits.
+     *
+     * @return the visits of each pet, in the order of <code>petIds</code>
+     */
+    private Map<Integer, List<VisitSummary>> cacheAll(List<Integer> petIds, List<VisitSummary> visits, long version) {
+        Map<Integer, List<VisitSummary>> byPet = new HashMap<>();
+        for (VisitSummary visit : visits) {
+            byPet.computeIfAbsent(visit.petId(), id -> new ArrayList<>()).add(visit);
+        }
+        Map<Integer, List<VisitSummary>> result = new LinkedHashMap<>();
+        for (Integer petId : petIds) {
+            List<VisitSummary> ofPet = List.copyOf(withArchived(petId, byPet.getOrDefault(petId, List.of())));
+            cache(petId, ofPet, version);
+            result.put(petId, ofPet);
+        }
+        return result;
+    }
+
+    private Map<Integer, List<VisitSummary>> cached(Set<Integer> petIds) {
+        return cache == null ? Map.of() : cache.getAllPresent(petIds);
+    }
+
+    private Set<Integer> withVisits(Collection<Integer> petIds) {
+        Set<Integer> ids = new TreeSet<>();
+        for (Integer petId : petIds) {
+            if (petsWithVisits.mayHaveVisits(petId)) {
+                ids.add(petId);
+            }
+        }
+        return ids;
+    }
+
+    private List<VisitSummary> withArchived(int petId, List<VisitSummary> live) {
+        return archive == null ? live : VisitArchive.merge(archive.findByPetId(petId).stream().map(VisitSummary::of).toList(), live);
+    }
+
+    private static List<VisitSummary> flatten(Map<Integer, List<VisitSummary>> visitsByPet) {
+        List<VisitSummary> visits = new ArrayList<>();
+        visitsByPet.values().forEach(visits::addAll);
+        return visits;
+    }
+
+    /**
+     * Store what was read unless visits were created since the read started. Invalidation waits for a
+     * running <code>compute</code> on the same key, so it either sees the new version or removes the entry.
+     */
+    private void cache(int petId, List<VisitSummary> visits, long version) {
+        if (cache == null) {
+            return;
+        }
+        cache.asMap().compute(petId, (id, current) -> writes.get() == version ? visits : current);
+    }
+
+    /**
+     * Split the pet ids of each shard into chunks of consecutive ids.
+     */
+    private List<Chunk> chunk(List<Integer> petIds) {
+        List<Chunk> chunks = new ArrayList<>();
+        shards.byShard(petIds).forEach((shard, sorted) -> {
+            for (int from = 0; from < sorted.size(); from += chunkSize) {
+                chunks.add(new Chunk(shard, sorted.subList(from, Math.min(from + chunkSize, sorted.size()))));
+            }
+        });
+        return chunks;
+    }
+
+    private boolean concurrent(List<Chunk> chunks) {
+        return executor != null && (chunks.size() > 1 || shards.count() > 1);
+    }
+
+    private List<VisitSummary> query(Chunk chunk) {
+        return shards.on(chunk.shard(), () -> visitRepository.findSummariesByPetIdIn(chunk.petIds()));
+    }
+
+    private static <T> Future<T> take(CompletionService<T> completionService) {
+        try {
+            return completionService.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while looking up visits", e);
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while looking up visits", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Visit lookup failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private record Chunk(int shard, List<Integer> petIds) {
+    }
+}
@@ -15,9 +15,14 @@
  */
 package org.springframework.samples.petclinic.visits.model;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -32,7 +37,55 @@ import java.util.List;
  */
 public interface VisitRepository extends JpaRepository<Visit, Integer> {
 
+    /**
+     * Select clause of the {@link VisitSummary} queries, fetching one more character than the summary keeps.
+     */
+    String SUMMARY = "SELECT new org.springframework.samples.petclinic.visits.model.VisitSummary(" +
+        "v.id, v.petId, v.date, SUBSTRING(v.description, 1, " + (VisitSummary.DESCRIPTION_LENGTH + 1) + ")) FROM Visit v ";
+
     List<Visit> findByPetId(int petId);
 
     List<Visit> findByPetIdIn(Collection<Integer> petIds);
+
+    @Query("SELECT DISTINCT v.petId FROM Visit v WHERE v.id > :after")
+    List<Integer> findDistinctPetIdsByIdGreaterThan(@Param("after") int after);
+
+    @Query("SELECT COALESCE(MAX(v.id), 0) FROM Visit v")
+    int findMaxId();
+
+    @Query(SUMMARY + "WHERE v.petId = :petId")
+    List<VisitSummary> findSummariesByPetId(@Param("petId") int petId);
+
+    @Query(SUMMARY + "WHERE v.petId IN :petIds")
+    List<VisitSummary> findSummariesByPetIdIn(@Param("petIds") Collection<Integer> petIds);
+
+    /**
+     * Oldest visits first, to be moved to the archive.
+     */
+    List<Visit> findByDateBeforeOrderByIdAsc(Date date, Limit limit);
+
+    /**
+     * @return the number of visits deleted, fewer than the ids when some were deleted concurrently
+     */
+    @Modifying
+    @Query("DELETE FROM Visit v WHERE v.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Visits of a pet in <code>[from, to)</code>, newest first, strictly before the <code>(beforeDate, beforeId)</code>
+     * key of the last visit of the previous page. Served by the <code>(pet_id, visit_date)</code> index.
+     */
+    @Query(SUMMARY + "WHERE v.petId = :petId AND v.date >= :from AND v.date < :to " +
+        "AND v.date <= :beforeDate AND (v.date < :beforeDate OR v.id < :beforeId) ORDER BY v.date DESC, v.id DESC")
+    List<VisitSummary> findPageByPetId(@Param("petId") int petId, @Param("from") Date from, @Param("to") Date to,
+                                       @Param("beforeDate") Date beforeDate, @Param("beforeId") int beforeId, Limit limit);
+
+    /**
+     * Visits of all pets in <code>[from, to)</code>, newest first, strictly before the <code>(beforeDate, beforeId)</code>
+     * key of the last visit of the previous page. Served by the <code>visit_date</code> index.
+     */
+    @Query(SUMMARY + "WHERE v.date >= :from AND v.date < :to " +
+        "AND v.date <= :beforeDate AND (v.date < :beforeDate OR v.id < :beforeId) ORDER BY v.date DESC, v.id DESC")
+    List<VisitSummary> findPage(@Param("from") Date from, @Param("to") Date to,
+                                @Param("beforeDate") Date beforeDate, @Param("beforeId") int beforeId, Limit limit);
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.util.Comparator;
+import java.util.Date;
+
+/**
+ * Visit as listed on an owner page: its description is cut to {@link #DESCRIPTION_LENGTH} characters.
+ * Summary queries fetch one more character, to tell whether the description was truncated.
+ */
+public record VisitSummary(
+    Integer id,
+    int petId,
+    @JsonFormat(pattern = "yyyy-MM-dd") Date date,
+    String description
+) {
+    public static final int DESCRIPTION_LENGTH = 100;
+
+    /**
+     * Order of the paginated visits, by <code>(date, id)</code> descending.
+     */
+    public static final Comparator<VisitSummary> NEWEST_FIRST = Comparator
+        .comparing(VisitSummary::date, Comparator.reverseOrder())
+        .thenComparing(VisitSummary::id, Comparator.reverseOrder());
+
+    public VisitSummary {
+        if (description != null && description.length() > DESCRIPTION_LENGTH) {
+            int end = DESCRIPTION_LENGTH - 1;
+            if (Character.isHighSurrogate(description.charAt(end - 1))) {
+                end--;
+            }
+            description = description.substring(0, end) + "\u2026";
+        }
+    }
+
+    public static VisitSummary of(Visit visit) {
+        return new VisitSummary(visit.getId(), visit.getPetId(), visit.getDate(), visit.getDescription());
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.shard;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Binds the requests about the visits of one pet to the shard of that pet before the handler (and its
+ * transaction) starts: visit creation and reads under <code>/owners/{ownerId}/pets/{petId}/visits</code>, and the
+ * pages of <code>/pets/{petId}/visits</code>. Other requests stay unbound and query the shards they need.
+ * Visit creation is handled asynchronously, so the binding is also released when the request thread is handed back.
+ */
+class ShardRoutingInterceptor implements AsyncHandlerInterceptor {
+
+    private static final Pattern PET_PATH = Pattern.compile("^(?:/owners/[^/]+)?/pets/(\\d{1,9})/visits(/.*)?$");
+
+    private final Shards shards;
+
+    ShardRoutingInterceptor(Shards shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        Matcher matcher = PET_PATH.matcher(path);
+        if (matcher.matches()) {
+            ShardContext.set(shards.ofPet(Integer.parseInt(matcher.group(1))));
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ShardContext.set(null);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ShardContext.set(null);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.samples.petclinic.visits.config.VisitsProperties;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the auto-configured datasource by one routing to N visit shards, partitioned by pet id hash.
+ * <p>
+ * When <code>visits.sharding.initialize</code> is set, every shard is created from the same schema
+ * and data scripts, keeps only the visits (and pet summaries) of the pets it owns, and has its identity column
+ * restarted so that new visit ids stay congruent to the shard index. The rollups are emptied and rebuilt from
+ * the remaining visits at startup. This is only automated for HSQLDB; for MySQL set
+ * <code>auto_increment_increment=N</code> and <code>auto_increment_offset</code> per server instead.
+ */
+@Configuration
+@Profile("!reactive")
+@ConditionalOnProperty(prefix = "visits.sharding", name = "enabled", havingValue = "true")
+class ShardingConfig implements WebMvcConfigurer {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardingConfig.class);
+
+    private final Shards shards;
+
+    ShardingConfig(Shards shards) {
+        this.shards = shards;
+    }
+
+    @Bean
+    DataSource dataSource(VisitsProperties properties) {
+        VisitsProperties.Sharding sharding = properties.sharding();
+        List<VisitsProperties.Sharding.Shard> shardList = sharding.shards();
+        if (shardList.isEmpty()) {
+            throw new IllegalStateException("visits.sharding.enabled is set but no visits.sharding.shards are configured");
+        }
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shardList.size(); shard++) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("visits-shard-" + shard);
+            dataSource.setJdbcUrl(shardList.get(shard).url());
+            dataSource.setUsername(shardList.get(shard).username());
+            dataSource.setPassword(shardList.get(shard).password());
+            if (sharding.initialize()) {
+                initialize(dataSource, sharding, shard, shardList.size());
+            }
+            targets.put(shard, dataSource);
+        }
+        ShardRoutingDataSource routingDataSource = new ShardRoutingDataSource();
+        routingDataSource.setTargetDataSources(targets);
+        routingDataSource.setDefaultTargetDataSource(targets.get(0));
+        routingDataSource.afterPropertiesSet();
+        return routingDataSource;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ShardRoutingInterceptor(shards)).addPathPatterns("/owners/*/pets/*/visits/**", "/pets/*/visits");
+    }
+
+    private static void initialize(DataSource dataSource, VisitsProperties.Sharding sharding, int shard, int count) {
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        try {
+            populator.addScripts(resolver.getResources(sharding.schemaLocation()));
+            populator.addScripts(resolver.getResources(sharding.dataLocation()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        populator.execute(dataSource);
+
+        NamedParameterJdbcTemplate jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        // Ids of the seed data are shared by every shard: new ids must start above all of them
+        Integer maxVisitId = jdbcTemplate.getJdbcTemplate().queryForObject("SELECT MAX(id) FROM visits", Integer.class);
+        List<Integer> foreignPetIds = jdbcTemplate.getJdbcTemplate()
+            .queryForList("SELECT pet_id FROM visits UNION SELECT pet_id FROM pet_visit_summaries", Integer.class).stream()
+            .filter(petId -> Shards.shardOf(petId, count) != shard)
+            .toList();
+        if (!foreignPetIds.isEmpty()) {
+            Map<String, Object> params = Map.of("petIds", foreignPetIds);
+            jdbcTemplate.update("DELETE FROM visits WHERE pet_id IN (:petIds)", params);
+            jdbcTemplate.update("DELETE FROM pet_visit_summaries WHERE pet_id IN (:petIds)", params);
+        }
+        jdbcTemplate.getJdbcTemplate().update("DELETE FROM visit_rollups");
+        jdbcTemplate.getJdbcTemplate().update("DELETE FROM pet_visit_rollups");
+        int nextVisitId = nextId(maxVisitId == null ? 0 : maxVisitId, shard, count);
+        jdbcTemplate.getJdbcTemplate().execute("ALTER TABLE visits ALTER COLUMN id RESTART WITH " + nextVisitId);
+        jdbcTemplate.getJdbcTemplate().execute("ALTER TABLE visits ALTER COLUMN id SET INCREMENT BY " + count);
+        log.info("Initialized visit shard {} of {}", shard, count);
+    }
+
+    /**
+     * Smallest id above <code>max</code> that belongs to the shard.
+     */
+    static int nextId(int max, int shard, int count) {
+        int next = max + 1;
+        return next + Math.floorMod(shard - next, count);
+    }
+}
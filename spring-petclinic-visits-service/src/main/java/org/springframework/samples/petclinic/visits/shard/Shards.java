@@ -0,0 +1,164 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.shard;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Profile;
+import org.springframework.samples.petclinic.visits.config.VisitsProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Routes the visits of each pet to a shard and runs scatter-gather queries across them.
+ * <p>
+ * A pet lives on the shard given by a hash of its id, so that consecutive pet ids are spread evenly and
+ * all the visits of a pet are on the same shard. Visit ids are interleaved across shards (shard <code>k</code>
+ * of <code>N</code> only generates ids congruent to <code>k</code> modulo <code>N</code>) so that they stay unique.
+ * The time spent querying each shard is recorded as <code>petclinic.visit.shard.query</code>, tagged by shard.
+ * With a single shard every method simply runs the action on the calling thread.
+ */
+@Component
+@Profile("!reactive")
+public class Shards implements DisposableBean {
+
+    private final int count;
+    private final ExecutorService executor;
+    private final List<Timer> timers;
+
+    Shards(VisitsProperties properties, ObjectProvider<MeterRegistry> registry) {
+        VisitsProperties.Sharding sharding = properties.sharding();
+        this.count = sharding.enabled() ? Math.max(1, sharding.shards().size()) : 1;
+        this.executor = count > 1 ? Executors.newFixedThreadPool(count, runnable -> {
+            Thread thread = new Thread(runnable, "visit-shard-query");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        MeterRegistry meterRegistry = registry.getIfAvailable();
+        this.timers = meterRegistry == null ? List.of() : IntStream.range(0, count)
+            .mapToObj(shard -> Timer.builder("petclinic.visit.shard.query")
+                .description("Time spent querying a visits shard")
+                .tag("shard", String.valueOf(shard))
+                .register(meterRegistry))
+            .toList();
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int ofPet(int petId) {
+        return shardOf(petId, count);
+    }
+
+    /**
+     * Spread the pet ids with the finalizer of MurmurHash3, consecutive ids landing on unrelated shards.
+     */
+    static int shardOf(int petId, int count) {
+        int hash = petId;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, count);
+    }
+
+    /**
+     * @return the distinct pet ids grouped by shard, both in ascending order
+     */
+    public SortedMap<Integer, List<Integer>> byShard(Collection<Integer> petIds) {
+        SortedMap<Integer, SortedSet<Integer>> sorted = new TreeMap<>();
+        for (Integer petId : petIds) {
+            sorted.computeIfAbsent(ofPet(petId), shard -> new TreeSet<>()).add(petId);
+        }
+        SortedMap<Integer, List<Integer>> byShard = new TreeMap<>();
+        sorted.forEach((shard, ids) -> byShard.put(shard, List.copyOf(ids)));
+        return byShard;
+    }
+
+    /**
+     * Run the action on the calling thread, bound to the shard, and record its duration.
+     */
+    public <T> T on(int shard, Supplier<T> action) {
+        Integer previous = ShardContext.current();
+        ShardContext.set(shard);
+        try {
+            return timers.isEmpty() ? action.get() : timers.get(shard).record(action);
+        } finally {
+            ShardContext.set(previous);
+        }
+    }
+
+    /**
+     * Run the query on every shard in parallel and concatenate the results, in shard order.
+     */
+    public <T> List<T> scatter(IntFunction<List<T>> query) {
+        return scatter(IntStream.range(0, count).boxed().toList(), query);
+    }
+
+    /**
+     * Run the query on the given shards in parallel and concatenate the results, in shard order.
+     * Queries never run on the calling thread when there are several shards, so that they cannot reuse a
+     * connection it holds on another shard.
+     */
+    public <T> List<T> scatter(Collection<Integer> shards, IntFunction<List<T>> query) {
+        if (executor == null) {
+            return shards.isEmpty() ? List.of() : on(0, () -> query.apply(0));
+        }
+        List<Future<List<T>>> futures = new ArrayList<>();
+        for (int shard : shards) {
+            futures.add(executor.submit(() -> on(shard, () -> query.apply(shard))));
+        }
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<List<T>> future : futures) {
+                results.addAll(await(future));
+            }
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        return results;
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying the shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Shard query failed", e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
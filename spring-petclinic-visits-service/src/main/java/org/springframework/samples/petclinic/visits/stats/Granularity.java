@@ -0,0 +1,52 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.stats;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Width of a rollup bucket. Each bucket is identified by its first day.
+ */
+public enum Granularity {
+
+    DAY {
+        @Override
+        public LocalDate bucketOf(LocalDate date) {
+            return date;
+        }
+    },
+
+    /**
+     * ISO weeks, starting on Monday.
+     */
+    WEEK {
+        @Override
+        public LocalDate bucketOf(LocalDate date) {
+            return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        }
+    },
+
+    MONTH {
+        @Override
+        public LocalDate bucketOf(LocalDate date) {
+            return date.withDayOfMonth(1);
+        }
+    };
+
+    public abstract LocalDate bucketOf(LocalDate date);
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.stats;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.samples.petclinic.visits.model.Visit;
+import org.springframework.samples.petclinic.visits.model.VisitsCreated;
+import org.springframework.samples.petclinic.visits.shard.Shards;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Visit count and last visit date of each pet, kept in the <code>pet_visit_summaries</code> table.
+ * <p>
+ * A pet's row is updated in the transaction that inserts its visits, so that it is always consistent
+ * with the <code>visits</code> table. Archived visits keep being counted. Each shard holds the rows of its own pets.
+ */
+@Component
+@Profile("!reactive")
+public class PetVisitSummaries {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Shards shards;
+
+    PetVisitSummaries(NamedParameterJdbcTemplate jdbcTemplate, Shards shards) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shards = shards;
+    }
+
+    /**
+     * @return one summary per distinct pet id, ordered by pet id, including the pets without visits
+     */
+    public List<PetVisitSummary> findByPetIdIn(Collection<Integer> petIds) {
+        SortedMap<Integer, PetVisitSummary> summaries = new TreeMap<>();
+        petIds.forEach(petId -> summaries.put(petId, new PetVisitSummary(petId, 0, null)));
+        if (summaries.isEmpty()) {
+            return List.of();
+        }
+        SortedMap<Integer, List<Integer>> byShard = shards.byShard(summaries.keySet());
+        shards.scatter(byShard.keySet(), shard -> jdbcTemplate.query(
+                "SELECT pet_id, visits, last_visit_date FROM pet_visit_summaries WHERE pet_id IN (:petIds)",
+                Map.of("petIds", byShard.get(shard)),
+                (rs, rowNum) -> {
+                    Date lastVisitDate = rs.getDate(3);
+                    return new PetVisitSummary(rs.getInt(1), rs.getInt(2), lastVisitDate == null ? null : lastVisitDate.toLocalDate());
+                }))
+            .forEach(summary -> summaries.put(summary.petId(), summary));
+        return List.copyOf(summaries.values());
+    }
+
+    /**
+     * Update the summaries before the visits commit, in pet id order so that concurrent transactions
+     * cannot deadlock on them.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    void onVisitsCreated(VisitsCreated event) {
+        SortedMap<Integer, PetVisitSummary> increments = new TreeMap<>();
+        for (Visit visit : event.visits()) {
+            LocalDate date = visit.getDate() == null ? null : new Date(visit.getDate().getTime()).toLocalDate();
+            increments.merge(visit.getPetId(), new PetVisitSummary(visit.getPetId(), 1, date), PetVisitSummaries::add);
+        }
+        increments.values().forEach(this::increment);
+    }
+
+    private static PetVisitSummary add(PetVisitSummary left, PetVisitSummary right) {
+        LocalDate last = left.lastVisitDate();
+        if (last == null || (right.lastVisitDate() != null && right.lastVisitDate().isAfter(last))) {
+            last = right.lastVisitDate();
+        }
+        return new PetVisitSummary(left.petId(), left.visits() + right.visits(), last);
+    }
+
+    private void increment(PetVisitSummary increment) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("petId", increment.petId());
+        params.put("visits", increment.visits());
+        params.put("date", increment.lastVisitDate() == null ? null : Date.valueOf(increment.lastVisitDate()));
+        if (update(params) > 0) {
+            return;
+        }
+        try {
+            jdbcTemplate.update("INSERT INTO pet_visit_summaries (pet_id, visits, last_visit_date) VALUES (:petId, :visits, :date)",
+                params);
+        } catch (DuplicateKeyException e) {
+            // Inserted by a concurrent transaction in the meantime
+            update(params);
+        }
+    }
+
+    private int update(Map<String, Object> params) {
+        return jdbcTemplate.update("UPDATE pet_visit_summaries SET visits = visits + :visits, " +
+            "last_visit_date = CASE WHEN last_visit_date IS NULL OR last_visit_date < CAST(:date AS DATE) THEN CAST(:date AS DATE) ELSE last_visit_date END " +
+            "WHERE pet_id = :petId", params);
+    }
+}
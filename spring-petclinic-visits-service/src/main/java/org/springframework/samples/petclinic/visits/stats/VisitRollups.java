@@ -0,0 +1,215 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.stats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.samples.petclinic.visits.archive.VisitSegmentStore;
+import org.springframework.samples.petclinic.visits.model.Visit;
+import org.springframework.samples.petclinic.visits.model.VisitsCreated;
+import org.springframework.samples.petclinic.visits.shard.Shards;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Visit counts per day, week and month, overall (<code>visit_rollups</code>) and per pet
+ * (<code>pet_visit_rollups</code>).
+ * <p>
+ * The counts are incremented in the transaction that inserts the visits, so they are always consistent with
+ * the <code>visits</code> table, and read with a primary key range scan whose cost depends on the number
+ * of buckets only. Archiving visits leaves their counts untouched. {@link #rebuild()} recomputes them from the
+ * <code>visits</code> table and the archived visits of <code>visit_segments</code>; it is run at startup when
+ * the rollups are empty. Visits can keep being created while it runs: they wait for it to commit before counting
+ * their visits.
+ * <p>
+ * When sharded, each shard counts its own visits: the counts of a pet are read from its shard, and the
+ * overall counts are summed across shards.
+ */
+@Component
+@Profile("!reactive")
+public class VisitRollups {
+
+    private static final Logger log = LoggerFactory.getLogger(VisitRollups.class);
+
+    private static final Comparator<Bucket> BUCKET_ORDER = Comparator
+        .comparing(Bucket::granularity)
+        .thenComparingInt(Bucket::petId)
+        .thenComparing(Bucket::bucket);
+
+    private final JdbcTemplate jdbcTemplate;
+    /**
+     * Reads the live and archived visits from the same snapshot, so that visits archived meanwhile are counted once
+     */
+    private final TransactionTemplate rebuildTemplate;
+    private final Shards shards;
+    private final VisitSegmentStore segmentStore;
+
+    VisitRollups(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, Shards shards,
+                 VisitSegmentStore segmentStore) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.rebuildTemplate = new TransactionTemplate(transactionManager);
+        this.rebuildTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.shards = shards;
+        this.segmentStore = segmentStore;
+    }
+
+    public List<VisitCount> counts(Granularity granularity, LocalDate from, LocalDate to) {
+        List<VisitCount> counts = shards.scatter(shard -> jdbcTemplate.query(
+            "SELECT bucket, visits FROM visit_rollups WHERE granularity = ? AND bucket BETWEEN ? AND ? ORDER BY bucket",
+            (rs, rowNum) -> new VisitCount(rs.getDate(1).toLocalDate(), rs.getInt(2)),
+            granularity.name(), Date.valueOf(granularity.bucketOf(from)), Date.valueOf(to)));
+        if (shards.count() == 1) {
+            return counts;
+        }
+        Map<LocalDate, Integer> byBucket = new TreeMap<>();
+        counts.forEach(count -> byBucket.merge(count.bucket(), count.visits(), Integer::sum));
+        return byBucket.entrySet().stream().map(entry -> new VisitCount(entry.getKey(), entry.getValue())).toList();
+    }
+
+    public List<VisitCount> counts(int petId, Granularity granularity, LocalDate from, LocalDate to) {
+        return shards.scatter(List.of(shards.ofPet(petId)), shard -> jdbcTemplate.query(
+            "SELECT bucket, visits FROM pet_visit_rollups WHERE granularity = ? AND pet_id = ? AND bucket BETWEEN ? AND ? ORDER BY bucket",
+            (rs, rowNum) -> new VisitCount(rs.getDate(1).toLocalDate(), rs.getInt(2)),
+            granularity.name(), petId, Date.valueOf(granularity.bucketOf(from)), Date.valueOf(to)));
+    }
+
+    /**
+     * Count the new visits before their transaction commits. Rows are updated in a fixed order so that
+     * concurrent transactions cannot deadlock on them.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    void onVisitsCreated(VisitsCreated event) {
+        Map<Bucket, Integer> increments = new TreeMap<>(BUCKET_ORDER);
+        for (Visit visit : event.visits()) {
+            if (visit.getDate() != null) {
+                count(increments, visit.getPetId(), new Date(visit.getDate().getTime()).toLocalDate());
+            }
+        }
+        increments.forEach(this::increment);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void rebuildIfEmpty() {
+        shards.scatter(shard -> {
+            Integer buckets = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM visit_rollups", Integer.class);
+            if (buckets != null && buckets == 0) {
+                rebuildTemplate.executeWithoutResult(status -> replaceAll());
+            }
+            return List.of();
+        });
+    }
+
+    /**
+     * Recompute the rollups from the live and archived visits, e.g. after visits were loaded or changed
+     * outside of this service. Visits created meanwhile wait for the rebuild of their shard to commit.
+     */
+    public void rebuild() {
+        shards.scatter(shard -> {
+            rebuildTemplate.executeWithoutResult(status -> replaceAll());
+            return List.of();
+        });
+    }
+
+    private void replaceAll() {
+        // Every transaction creating visits first increments its day rows of visit_rollups, so holding them all
+        // before reading makes it wait: its visits are either read here, or counted by its increments once the
+        // rebuild commits. Rows are locked in key order, day rows first, so that it cannot deadlock with the rebuild.
+        jdbcTemplate.query("SELECT granularity, bucket FROM visit_rollups ORDER BY granularity, bucket FOR UPDATE", rs -> {
+        });
+        Map<Bucket, Integer> counts = new TreeMap<>(BUCKET_ORDER);
+        jdbcTemplate.query("SELECT pet_id, visit_date FROM visits WHERE visit_date IS NOT NULL",
+            rs -> count(counts, rs.getInt(1), rs.getDate(2).toLocalDate()));
+        segmentStore.forEachVisit(visit -> {
+            if (visit.getDate() != null) {
+                count(counts, visit.getPetId(), new Date(visit.getDate().getTime()).toLocalDate());
+            }
+        });
+        jdbcTemplate.update("DELETE FROM visit_rollups");
+        jdbcTemplate.update("DELETE FROM pet_visit_rollups");
+        List<Object[]> overall = new ArrayList<>();
+        List<Object[]> perPet = new ArrayList<>();
+        counts.forEach((bucket, visits) -> {
+            if (bucket.petId() == Bucket.ALL_PETS) {
+                overall.add(new Object[]{bucket.granularity().name(), Date.valueOf(bucket.bucket()), visits});
+            } else {
+                perPet.add(new Object[]{bucket.granularity().name(), bucket.petId(), Date.valueOf(bucket.bucket()), visits});
+            }
+        });
+        jdbcTemplate.batchUpdate("INSERT INTO visit_rollups (granularity, bucket, visits) VALUES (?, ?, ?)", overall);
+        jdbcTemplate.batchUpdate("INSERT INTO pet_visit_rollups (granularity, pet_id, bucket, visits) VALUES (?, ?, ?, ?)", perPet);
+        log.info("Rebuilt {} visit rollups", counts.size());
+    }
+
+    private static void count(Map<Bucket, Integer> counts, int petId, LocalDate date) {
+        for (Granularity granularity : Granularity.values()) {
+            LocalDate bucket = granularity.bucketOf(date);
+            counts.merge(new Bucket(granularity, Bucket.ALL_PETS, bucket), 1, Integer::sum);
+            counts.merge(new Bucket(granularity, petId, bucket), 1, Integer::sum);
+        }
+    }
+
+    private void increment(Bucket bucket, int visits) {
+        if (update(bucket, visits) > 0) {
+            return;
+        }
+        try {
+            if (bucket.petId() == Bucket.ALL_PETS) {
+                jdbcTemplate.update("INSERT INTO visit_rollups (granularity, bucket, visits) VALUES (?, ?, ?)",
+                    bucket.granularity().name(), Date.valueOf(bucket.bucket()), visits);
+            } else {
+                jdbcTemplate.update("INSERT INTO pet_visit_rollups (granularity, pet_id, bucket, visits) VALUES (?, ?, ?, ?)",
+                    bucket.granularity().name(), bucket.petId(), Date.valueOf(bucket.bucket()), visits);
+            }
+        } catch (DuplicateKeyException e) {
+            // Inserted by a concurrent transaction in the meantime
+            update(bucket, visits);
+        }
+    }
+
+    private int update(Bucket bucket, int visits) {
+        if (bucket.petId() == Bucket.ALL_PETS) {
+            return jdbcTemplate.update("UPDATE visit_rollups SET visits = visits + ? WHERE granularity = ? AND bucket = ?",
+                visits, bucket.granularity().name(), Date.valueOf(bucket.bucket()));
+        }
+        return jdbcTemplate.update("UPDATE pet_visit_rollups SET visits = visits + ? WHERE granularity = ? AND pet_id = ? AND bucket = ?",
+            visits, bucket.granularity().name(), bucket.petId(), Date.valueOf(bucket.bucket()));
+    }
+
+    /**
+     * @param petId the pet, or {@link #ALL_PETS} for the overall rollup
+     */
+    private record Bucket(Granularity granularity, int petId, LocalDate bucket) {
+
+        static final int ALL_PETS = 0;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.web;
+
+import io.micrometer.core.annotation.Timed;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.visits.model.ReactiveVisitRepository;
+import org.springframework.samples.petclinic.visits.model.Visit;
+import org.springframework.samples.petclinic.visits.model.VisitSummary;
+import org.springframework.samples.petclinic.visits.web.VisitResource.Cursor;
+import org.springframework.samples.petclinic.visits.web.VisitResource.VisitPage;
+import org.springframework.samples.petclinic.visits.web.VisitResource.Visits;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.springframework.samples.petclinic.visits.web.VisitResource.MIN_DATE;
+import static org.springframework.samples.petclinic.visits.web.VisitResource.endOf;
+import static org.springframework.samples.petclinic.visits.web.VisitResource.startOf;
+
+/**
+ * Non-blocking implementation of the {@link VisitResource} endpoints, served by the <code>reactive</code> profile.
+ * Visits are read with R2DBC, without the cache and archive of the default mode; created visits are counted in the
+ * statistics and pet summaries by {@link ReactiveVisitRepository#save}.
+ */
+@RestController
+@Profile("reactive")
+@Timed("petclinic.visit")
+class ReactiveVisitResource {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveVisitResource.class);
+
+    private final ReactiveVisitRepository visitRepository;
+
+    ReactiveVisitResource(ReactiveVisitRepository visitRepository) {
+        this.visitRepository = visitRepository;
+    }
+
+    @PostMapping("owners/*/pets/{petId}/visits")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<Visit> create(
+        @Valid @RequestBody Visit visit,
+        @PathVariable("petId") @Min(1) int petId) {
+
+        visit.setPetId(petId);
+        log.info("Saving visit {}", visit);
+        return visitRepository.save(visit);
+    }
+
+    @GetMapping("owners/*/pets/{petId}/visits")
+    public Flux<VisitSummary> read(@PathVariable("petId") @Min(1) int petId) {
+        return visitRepository.findSummariesByPetId(petId);
+    }
+
+    @GetMapping("owners/*/pets/{petId}/visits/{visitId}")
+    public Mono<Visit> read(@PathVariable("petId") @Min(1) int petId, @PathVariable("visitId") @Min(1) int visitId) {
+        return visitRepository.findById(visitId)
+            .filter(visit -> visit.getPetId() == petId)
+            .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Visit " + visitId + " not found")));
+    }
+
+    @GetMapping("pets/visits")
+    public Mono<Visits> read(@RequestParam("petId") List<Integer> petIds) {
+        return readAll(petIds);
+    }
+
+    @PostMapping(value = "pets/visits", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<Visits> readAll(@RequestBody List<Integer> petIds) {
+        return visitRepository.findSummariesByPetIdIn(new TreeSet<>(petIds))
+            .collectList()
+            .map(Visits::new);
+    }
+
+    @GetMapping("pets/{petId}/visits")
+    public Mono<VisitPage> readPage(
+        @PathVariable("petId") @Min(1) int petId,
+        @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+        @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+        @RequestParam(value = "cursor", required = false) String cursor,
+        @RequestParam(value = "size", defaultValue = "20") @Min(1) @Max(100) int size) {
+
+        Cursor before = Cursor.parse(cursor);
+        return visitRepository.findPageByPetId(petId, startOf(from, MIN_DATE), endOf(to), before.date(), before.id(), size + 1)
+            .collectList()
+            .map(visits -> VisitPage.of(visits, size));
+    }
+
+    @GetMapping("visits")
+    public Mono<VisitPage> readPage(
+        @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+        @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+        @RequestParam(value = "cursor", required = false) String cursor,
+        @RequestParam(value = "size", defaultValue = "20") @Min(1) @Max(100) int size) {
+
+        Cursor before = Cursor.parse(cursor);
+        return visitRepository.findPage(startOf(from, MIN_DATE), endOf(to), before.date(), before.id(), size + 1)
+            .collectList()
+            .map(visits -> VisitPage.of(visits, size));
+    }
+}
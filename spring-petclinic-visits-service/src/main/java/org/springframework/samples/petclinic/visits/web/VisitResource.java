@@ -15,17 +15,45 @@
  */
 package org.springframework.samples.petclinic.visits.web;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.micrometer.core.annotation.Timed;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Limit;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.samples.petclinic.visits.archive.VisitArchive;
+import org.springframework.samples.petclinic.visits.ingest.VisitIngestion;
 import org.springframework.samples.petclinic.visits.model.Visit;
+import org.springframework.samples.petclinic.visits.model.VisitFinder;
 import org.springframework.samples.petclinic.visits.model.VisitRepository;
+import org.springframework.samples.petclinic.visits.model.VisitSummary;
+import org.springframework.samples.petclinic.visits.model.VisitsCreated;
+import org.springframework.samples.petclinic.visits.shard.Shards;
+import org.springframework.samples.petclinic.visits.stats.PetVisitSummaries;
+import org.springframework.samples.petclinic.visits.stats.PetVisitSummary;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Juergen Hoeller
@@ -36,41 +64,233 @@ import java.util.List;
  * @author Ramazan Sakin
  */
 @RestController
+@Profile("!reactive")
 @Timed("petclinic.visit")
 class VisitResource {
 
     private static final Logger log = LoggerFactory.getLogger(VisitResource.class);
 
+    static final LocalDate MIN_DATE = LocalDate.of(1000, 1, 1);
+    static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
     private final VisitRepository visitRepository;
+    private final VisitFinder visitFinder;
+    private final ObjectMapper objectMapper;
+    private final PetVisitSummaries petVisitSummaries;
+    private final ApplicationEventPublisher eventPublisher;
+    private final VisitIngestion visitIngestion;
+    private final Shards shards;
+    private final TransactionTemplate transactionTemplate;
+    private final VisitArchive archive;
 
-    VisitResource(VisitRepository visitRepository) {
+    VisitResource(VisitRepository visitRepository, VisitFinder visitFinder, PetVisitSummaries petVisitSummaries,
+                  ObjectMapper objectMapper, ApplicationEventPublisher eventPublisher,
+                  ObjectProvider<VisitIngestion> visitIngestion, Shards shards, PlatformTransactionManager transactionManager,
+                  ObjectProvider<VisitArchive> archive) {
         this.visitRepository = visitRepository;
+        this.visitFinder = visitFinder;
+        this.petVisitSummaries = petVisitSummaries;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.visitIngestion = visitIngestion.getIfAvailable();
+        this.shards = shards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.archive = archive.getIfAvailable();
     }
 
+    /**
+     * With write-behind ingestion enabled, the response is sent once the batch holding the visit has
+     * been committed, without holding a request thread (nor a transaction) in the meantime.
+     */
     @PostMapping("owners/*/pets/{petId}/visits")
     @ResponseStatus(HttpStatus.CREATED)
-    public Visit create(
+    public CompletableFuture<Visit> create(
         @Valid @RequestBody Visit visit,
         @PathVariable("petId") @Min(1) int petId) {
 
         visit.setPetId(petId);
         log.info("Saving visit {}", visit);
-        return visitRepository.save(visit);
+        if (visitIngestion != null) {
+            return visitIngestion.submit(visit);
+        }
+        Visit saved = transactionTemplate.execute(status -> {
+            Visit inserted = visitRepository.save(visit);
+            eventPublisher.publishEvent(new VisitsCreated(List.of(inserted)));
+            return inserted;
+        });
+        return CompletableFuture.completedFuture(saved);
     }
 
     @GetMapping("owners/*/pets/{petId}/visits")
-    public List<Visit> read(@PathVariable("petId") @Min(1) int petId) {
-        return visitRepository.findByPetId(petId);
+    public List<VisitSummary> read(@PathVariable("petId") @Min(1) int petId) {
+        return visitFinder.findByPetId(petId);
+    }
+
+    /**
+     * A single visit, with its full description.
+     */
+    @GetMapping("owners/*/pets/{petId}/visits/{visitId}")
+    public Visit read(@PathVariable("petId") @Min(1) int petId, @PathVariable("visitId") @Min(1) int visitId) {
+        return visitFinder.findVisit(petId, visitId)
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Visit " + visitId + " not found"));
     }
 
     @GetMapping("pets/visits")
     public Visits read(@RequestParam("petId") List<Integer> petIds) {
-        final List<Visit> byPetIdIn = visitRepository.findByPetIdIn(petIds);
+        final List<VisitSummary> byPetIdIn = visitFinder.findByPetIdIn(petIds);
         return new Visits(byPetIdIn);
     }
 
+    /**
+     * Number of visits and last visit date of each pet, whatever the length of its history.
+     */
+    @GetMapping("pets/visits/summary")
+    public Summaries readSummaries(@RequestParam("petId") List<Integer> petIds) {
+        return new Summaries(petVisitSummaries.findByPetIdIn(petIds));
+    }
+
+    /**
+     * Same as {@link #read(List)} for lists of pet ids too long for a query string. The <code>items</code>
+     * are streamed as the chunks of pet ids are loaded, so their order is not specified.
+     */
+    @PostMapping(value = "pets/visits", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> readAll(@RequestBody List<Integer> petIds) {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("items");
+                visitFinder.findByPetIdIn(petIds, visits -> {
+                    try {
+                        for (VisitSummary visit : visits) {
+                            generator.writeObject(visit);
+                        }
+                        generator.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * Visits of a pet between two dates (both inclusive), newest first. Pass the <code>next</code> cursor
+     * of a page to get the following one.
+     */
+    @GetMapping("pets/{petId}/visits")
+    public VisitPage readPage(
+        @PathVariable("petId") @Min(1) int petId,
+        @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+        @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+        @RequestParam(value = "cursor", required = false) String cursor,
+        @RequestParam(value = "size", defaultValue = "20") @Min(1) @Max(100) int size) {
+
+        Cursor before = Cursor.parse(cursor);
+        Date start = startOf(from, MIN_DATE);
+        Date end = endOf(to);
+        List<VisitSummary> visits = shards.on(shards.ofPet(petId), () -> visitRepository.findPageByPetId(petId,
+            start, end, before.date(), before.id(), Limit.of(size + 1)));
+        return VisitPage.of(withArchived(petId, start, end, before, size, visits), size);
+    }
+
+    /**
+     * Visits of all pets between two dates (both inclusive), newest first. Pass the <code>next</code> cursor
+     * of a page to get the following one. When sharded, each shard returns its own first page and the pages are merged.
+     */
+    @GetMapping("visits")
+    public VisitPage readPage(
+        @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+        @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+        @RequestParam(value = "cursor", required = false) String cursor,
+        @RequestParam(value = "size", defaultValue = "20") @Min(1) @Max(100) int size) {
+
+        Cursor before = Cursor.parse(cursor);
+        Date start = startOf(from, MIN_DATE);
+        Date end = endOf(to);
+        List<VisitSummary> visits = shards.scatter(shard -> visitRepository.findPage(start, end,
+                before.date(), before.id(), Limit.of(size + 1))).stream()
+            .sorted(VisitSummary.NEWEST_FIRST)
+            .limit(size + 1)
+            .toList();
+        return VisitPage.of(withArchived(null, start, end, before, size, visits), size);
+    }
+
+    /**
+     * Merge the archived visits of the same page into the live ones.
+     *
+     * @param petId <code>null</code> for all pets
+     */
+    private List<VisitSummary> withArchived(Integer petId, Date from, Date to, Cursor before, int size, List<VisitSummary> live) {
+        if (archive == null) {
+            return live;
+        }
+        List<VisitSummary> archived = archive.findPage(petId, from, to, before.date(), before.id(), size + 1);
+        return VisitArchive.merge(archived, live).stream()
+            .sorted(VisitSummary.NEWEST_FIRST)
+            .limit(size + 1)
+            .toList();
+    }
+
+    static Date startOf(LocalDate date, LocalDate defaultDate) {
+        return Date.from((date == null ? defaultDate : date).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    static Date endOf(LocalDate date) {
+        return date == null ? startOf(MAX_DATE, MAX_DATE) : startOf(date.plusDays(1), MAX_DATE);
+    }
+
+    /**
+     * Position after the last visit of a page, in <code>(date, id)</code> descending order,
+     * written as <code>{epochMillis}.{id}</code>.
+     */
+    record Cursor(Date date, int id) {
+
+        static final Cursor START = new Cursor(startOf(MAX_DATE, MAX_DATE), Integer.MAX_VALUE);
+
+        static Cursor parse(String cursor) {
+            if (cursor == null || cursor.isBlank()) {
+                return START;
+            }
+            int separator = cursor.lastIndexOf('.');
+            try {
+                return new Cursor(new Date(Long.parseLong(cursor.substring(0, separator))),
+                    Integer.parseInt(cursor.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid visits cursor " + cursor);
+            }
+        }
+
+        static String of(VisitSummary visit) {
+            return visit.date().getTime() + "." + visit.id();
+        }
+    }
+
+    record VisitPage(
+        List<VisitSummary> items,
+        String next
+    ) {
+        /**
+         * @param visits up to <code>size + 1</code> visits, the extra one telling that there is a next page
+         */
+        static VisitPage of(List<VisitSummary> visits, int size) {
+            if (visits.size() <= size) {
+                return new VisitPage(visits, null);
+            }
+            List<VisitSummary> page = visits.subList(0, size);
+            return new VisitPage(page, Cursor.of(page.get(size - 1)));
+        }
+    }
+
     record Visits(
-        List<Visit> items
+        List<VisitSummary> items
+    ) {
+    }
+
+    record Summaries(
+        List<PetVisitSummary> items
     ) {
     }
 }
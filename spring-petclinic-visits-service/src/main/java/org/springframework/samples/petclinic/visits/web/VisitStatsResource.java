@@ -0,0 +1,78 @@
+/*
+ * Copyright 2002-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.web;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.visits.stats.Granularity;
+import org.springframework.samples.petclinic.visits.stats.VisitCount;
+import org.springframework.samples.petclinic.visits.stats.VisitRollups;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Visit counts over time, served from the rollup tables rather than computed from the visits.
+ */
+@RequestMapping("/visits/stats")
+@RestController
+@Profile("!reactive")
+@Timed("petclinic.visit.stats")
+class VisitStatsResource {
+
+    private final VisitRollups rollups;
+
+    VisitStatsResource(VisitRollups rollups) {
+        this.rollups = rollups;
+    }
+
+    /**
+     * Non-empty buckets between two dates (both inclusive), oldest first. The first bucket is the one
+     * containing <code>from</code>.
+     */
+    @GetMapping
+    public List<VisitCount> counts(
+        @RequestParam(value = "granularity", defaultValue = "day") String granularity,
+        @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+        @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+        @RequestParam(value = "petId", required = false) Integer petId) {
+
+        Granularity width = parse(granularity);
+        return petId == null ? rollups.counts(width, from, to) : rollups.counts(petId, width, from, to);
+    }
+
+    /**
+     * Recompute the rollups from the visits, e.g. after visits were loaded outside of this service.
+     */
+    @PostMapping("/rebuild")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void rebuild() {
+        rollups.rebuild();
+    }
+
+    private static Granularity parse(String granularity) {
+        try {
+            return Granularity.valueOf(granularity.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown granularity " + granularity);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+DROP TABLE IF EXISTS pet_visit_summaries;
+DROP TABLE IF EXISTS pet_visit_rollups;
+DROP TABLE IF EXISTS visit_rollups;
+DROP TABLE IF EXISTS visits;
+
+CREATE TABLE visits (
+  id          INTEGER AUTO_INCREMENT PRIMARY KEY,
+  pet_id      INTEGER NOT NULL,
+  visit_date  DATE,
+  description VARCHAR(8192)
+);
+
+CREATE INDEX visits_pet_id_visit_date ON visits (pet_id, visit_date);
+CREATE INDEX visits_visit_date ON visits (visit_date);
+
+CREATE TABLE visit_rollups (
+  granularity VARCHAR(5) NOT NULL,
+  bucket      DATE NOT NULL,
+  visits      INTEGER NOT NULL,
+  PRIMARY KEY (granularity, bucket)
+);
+
+CREATE TABLE pet_visit_rollups (
+  granularity VARCHAR(5) NOT NULL,
+  pet_id      INTEGER NOT NULL,
+  bucket      DATE NOT NULL,
+  visits      INTEGER NOT NULL,
+  PRIMARY KEY (granularity, pet_id, bucket)
+);
+
+CREATE TABLE pet_visit_summaries (
+  pet_id          INTEGER PRIMARY KEY,
+  visits          INTEGER NOT NULL,
+  last_visit_date DATE
+);
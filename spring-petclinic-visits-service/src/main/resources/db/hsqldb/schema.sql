@@ -1,3 +1,7 @@
+DROP TABLE visit_segments IF EXISTS;
+DROP TABLE pet_visit_summaries IF EXISTS;
+DROP TABLE pet_visit_rollups IF EXISTS;
+DROP TABLE visit_rollups IF EXISTS;
 DROP TABLE visits IF EXISTS;
 
 CREATE TABLE visits (
@@ -7,4 +11,34 @@ CREATE TABLE visits (
   description VARCHAR(8192)
 );
 
-CREATE INDEX visits_pet_id ON visits (pet_id);
+CREATE INDEX visits_pet_id_visit_date ON visits (pet_id, visit_date);
+CREATE INDEX visits_visit_date ON visits (visit_date);
+
+CREATE TABLE visit_rollups (
+  granularity VARCHAR(5) NOT NULL,
+  bucket      DATE NOT NULL,
+  visits      INTEGER NOT NULL,
+  PRIMARY KEY (granularity, bucket)
+);
+
+CREATE TABLE pet_visit_rollups (
+  granularity VARCHAR(5) NOT NULL,
+  pet_id      INTEGER NOT NULL,
+  bucket      DATE NOT NULL,
+  visits      INTEGER NOT NULL,
+  PRIMARY KEY (granularity, pet_id, bucket)
+);
+
+CREATE TABLE pet_visit_summaries (
+  pet_id          INTEGER PRIMARY KEY,
+  visits          INTEGER NOT NULL,
+  last_visit_date DATE
+);
+
+CREATE TABLE visit_segments (
+  id       INTEGER IDENTITY PRIMARY KEY,
+  visits   INTEGER NOT NULL,
+  min_date DATE NOT NULL,
+  max_date DATE NOT NULL,
+  data     BLOB NOT NULL
+);
@@ -9,3 +9,48 @@ CREATE TABLE IF NOT EXISTS visits (
   description VARCHAR(8192),
   FOREIGN KEY (pet_id) REFERENCES pets(id)
 ) engine=InnoDB;
+
+-- Indexes added after the table was first released: created separately, only when missing, so that
+-- existing databases get them too (MySQL has no CREATE INDEX IF NOT EXISTS)
+SET @ddl := IF((SELECT COUNT(*) FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'visits' AND index_name = 'visits_pet_id_visit_date') = 0,
+  'CREATE INDEX visits_pet_id_visit_date ON visits (pet_id, visit_date)', 'DO 0');
+PREPARE statement FROM @ddl;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
+
+SET @ddl := IF((SELECT COUNT(*) FROM information_schema.statistics
+    WHERE table_schema = DATABASE() AND table_name = 'visits' AND index_name = 'visits_visit_date') = 0,
+  'CREATE INDEX visits_visit_date ON visits (visit_date)', 'DO 0');
+PREPARE statement FROM @ddl;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
+
+CREATE TABLE IF NOT EXISTS visit_rollups (
+  granularity VARCHAR(5) NOT NULL,
+  bucket DATE NOT NULL,
+  visits INT(4) UNSIGNED NOT NULL,
+  PRIMARY KEY (granularity, bucket)
+) engine=InnoDB;
+
+CREATE TABLE IF NOT EXISTS pet_visit_rollups (
+  granularity VARCHAR(5) NOT NULL,
+  pet_id INT(4) UNSIGNED NOT NULL,
+  bucket DATE NOT NULL,
+  visits INT(4) UNSIGNED NOT NULL,
+  PRIMARY KEY (granularity, pet_id, bucket)
+) engine=InnoDB;
+
+CREATE TABLE IF NOT EXISTS pet_visit_summaries (
+  pet_id INT(4) UNSIGNED NOT NULL PRIMARY KEY,
+  visits INT(4) UNSIGNED NOT NULL,
+  last_visit_date DATE
+) engine=InnoDB;
+
+CREATE TABLE IF NOT EXISTS visit_segments (
+  id INT(4) UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  visits INT(4) UNSIGNED NOT NULL,
+  min_date DATE NOT NULL,
+  max_date DATE NOT NULL,
+  data LONGBLOB NOT NULL
+) engine=InnoDB;
@@ -0,0 +1,172 @@
+package org.springframework.samples.petclinic.visits.archive;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.samples.petclinic.visits.archive.VisitSegmentStore.StoredSegment;
+import org.springframework.samples.petclinic.visits.config.VisitsProperties;
+import org.springframework.samples.petclinic.visits.model.Visit;
+import org.springframework.samples.petclinic.visits.model.VisitRepository;
+import org.springframework.samples.petclinic.visits.model.VisitSummary;
+import org.springframework.samples.petclinic.visits.shard.Shards;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class VisitArchiveTest {
+
+    private final VisitRepository visitRepository = mock(VisitRepository.class);
+
+    private final Shards shards = mock(Shards.class);
+
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    private final SimpleTransactionStatus transaction = new SimpleTransactionStatus();
+
+    /**
+     * Table shared with the other instances
+     */
+    private final List<StoredSegment> table = new ArrayList<>();
+
+    private final Map<Long, byte[]> data = new HashMap<>();
+
+    private final VisitSegmentStore segmentStore = new VisitSegmentStore(null) {
+        @Override
+        void insert(byte[] bytes, int visits, Date minDate, Date maxDate) {
+            long id = data.size() + 1;
+            table.add(new StoredSegment(id, minDate, maxDate));
+            data.put(id, bytes);
+        }
+
+        @Override
+        List<StoredSegment> findAll() {
+            return List.copyOf(table);
+        }
+
+        @Override
+        void copy(long id, Path file) {
+            try {
+                Files.write(file, data.get(id));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    };
+
+    @TempDir
+    Path directory;
+
+    private VisitArchive archive;
+
+    @BeforeEach
+    void setup() {
+        given(shards.count()).willReturn(1);
+        given(shards.on(anyInt(), any())).willAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+        given(transactionManager.getTransaction(any())).willReturn(transaction);
+        archive = newInstance();
+    }
+
+    @Test
+    void shouldStoreArchivedVisitsInTheSharedTable() {
+        List<Visit> old = List.of(visit(1, 7, "2013-01-01"), visit(2, 8, "2013-01-02"));
+        given(visitRepository.findByDateBeforeOrderByIdAsc(any(), any())).willReturn(old, List.of());
+        given(visitRepository.deleteByIdIn(List.of(1, 2))).willReturn(2);
+
+        archive.archive();
+
+        assertThat(table).hasSize(1);
+        assertThat(table.get(0).minDate()).isEqualTo(Date.valueOf("2013-01-01"));
+        assertThat(table.get(0).maxDate()).isEqualTo(Date.valueOf("2013-01-02"));
+        assertThat(archive.findByPetId(8)).extracting(Visit::getId).containsExactly(2);
+        // Another instance, or this one after a restart
+        assertThat(newInstance().findByPetId(7)).extracting(Visit::getId).containsExactly(1);
+    }
+
+    @Test
+    void shouldRollBackWhenTheVisitsWereArchivedConcurrently() {
+        given(visitRepository.findByDateBeforeOrderByIdAsc(any(), any())).willReturn(List.of(visit(1, 7, "2013-01-01")));
+        given(visitRepository.deleteByIdIn(List.of(1))).willReturn(0);
+
+        archive.archive();
+
+        assertThat(transaction.isRollbackOnly()).isTrue();
+    }
+
+    @Test
+    void shouldPageThroughArchivedVisitsNewestFirst() {
+        List<Visit> old = List.of(visit(1, 7, "2013-01-01"), visit(2, 8, "2013-01-02"), visit(3, 7, "2013-01-02"));
+        given(visitRepository.findByDateBeforeOrderByIdAsc(any(), any())).willReturn(old, List.of());
+        given(visitRepository.deleteByIdIn(List.of(1, 2, 3))).willReturn(3);
+        archive.archive();
+
+        Date from = Date.valueOf("2013-01-01");
+        Date to = Date.valueOf("2014-01-01");
+        assertThat(archive.findPage(null, from, to, to, Integer.MAX_VALUE, 2))
+            .extracting(VisitSummary::id).containsExactly(3, 2);
+        assertThat(archive.findPage(null, from, to, Date.valueOf("2013-01-02"), 2, 2))
+            .extracting(VisitSummary::id).containsExactly(1);
+        assertThat(archive.findPage(7, from, to, to, Integer.MAX_VALUE, 10))
+            .extracting(VisitSummary::id).containsExactly(3, 1);
+        assertThat(archive.findPage(null, to, Date.valueOf("2015-01-01"), to, Integer.MAX_VALUE, 10)).isEmpty();
+    }
+
+    @Test
+    void shouldLoadSegmentsCommittedOutOfOrder() throws IOException {
+        data.put(1L, VisitSegment.encode(new TreeMap<>(Map.of(7, List.of(visit(1, 7, "2013-01-01"))))));
+        data.put(2L, VisitSegment.encode(new TreeMap<>(Map.of(7, List.of(visit(2, 7, "2013-01-02"))))));
+        table.add(new StoredSegment(2, Date.valueOf("2013-01-02"), Date.valueOf("2013-01-02")));
+        archive.refresh();
+        table.add(0, new StoredSegment(1, Date.valueOf("2013-01-01"), Date.valueOf("2013-01-01")));
+
+        archive.refresh();
+
+        assertThat(archive.findByPetId(7)).extracting(Visit::getId).containsExactlyInAnyOrder(1, 2);
+        assertThat(archive.petIds()).containsExactly(7);
+    }
+
+    @Test
+    void shouldMapTheSegmentsFromTheLocalDirectory() {
+        given(visitRepository.findByDateBeforeOrderByIdAsc(any(), any())).willReturn(List.of(visit(1, 7, "2013-01-01")), List.of());
+        given(visitRepository.deleteByIdIn(List.of(1))).willReturn(1);
+
+        archive.archive();
+
+        assertThat(directory.resolve("shard-0-segment-1")).hasBinaryContent(data.get(1L));
+        archive.destroy();
+        assertThat(directory).isEmptyDirectory();
+    }
+
+    private VisitArchive newInstance() {
+        VisitsProperties properties = new VisitsProperties(null, null, null,
+            new VisitsProperties.Archive(true, 730, 10, 24, 60, directory), null);
+        VisitArchive instance = new VisitArchive(visitRepository, segmentStore, shards, properties, transactionManager);
+        instance.afterPropertiesSet();
+        return instance;
+    }
+
+    private static Visit visit(int id, int petId, String date) {
+        return Visit.VisitBuilder.aVisit()
+            .id(id)
+            .petId(petId)
+            .date(Date.valueOf(date))
+            .description("checkup")
+            .build();
+    }
+}
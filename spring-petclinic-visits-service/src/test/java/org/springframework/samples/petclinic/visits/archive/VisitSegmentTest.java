@@ -0,0 +1,62 @@
+package org.springframework.samples.petclinic.visits.archive;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.visits.model.Visit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VisitSegmentTest {
+
+    @Test
+    void shouldReadBackTheVisitsOfEachPet() throws IOException {
+        VisitSegment segment = VisitSegment.of("segment 1", ByteBuffer.wrap(VisitSegment.encode(visitsByPet())));
+
+        assertThat(segment.petCount()).isEqualTo(2);
+        List<Visit> visits = segment.visitsOf(8);
+        assertThat(visits).extracting(Visit::getId).containsExactly(2, 3);
+        assertThat(visits.get(0).getPetId()).isEqualTo(8);
+        assertThat(visits.get(0).getDate()).isEqualTo(new Date(1357084800000L));
+        assertThat(visits.get(0).getDescription()).isEqualTo("rabies shot \u00e9");
+        assertThat(visits.get(1).getDate()).isNull();
+        assertThat(visits.get(1).getDescription()).isNull();
+        assertThat(segment.visitsOf(7)).extracting(Visit::getId).containsExactly(1);
+        assertThat(segment.visitsOf(9)).isEmpty();
+        assertThat(segment.visits()).extracting(Visit::getId).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void shouldDetectCorruptedBlocks() throws IOException {
+        byte[] bytes = VisitSegment.encode(visitsByPet());
+        bytes[bytes.length - 1] ^= 1;
+
+        VisitSegment segment = VisitSegment.of("segment 1", ByteBuffer.wrap(bytes));
+
+        assertThat(segment.visitsOf(7)).hasSize(1);
+        assertThatThrownBy(() -> segment.visitsOf(8)).isInstanceOf(UncheckedIOException.class);
+    }
+
+    private static SortedMap<Integer, List<Visit>> visitsByPet() {
+        SortedMap<Integer, List<Visit>> visitsByPet = new TreeMap<>();
+        visitsByPet.put(7, List.of(visit(1, 7, new Date(1356998400000L), "spayed")));
+        visitsByPet.put(8, List.of(visit(2, 8, new Date(1357084800000L), "rabies shot \u00e9"), visit(3, 8, null, null)));
+        return visitsByPet;
+    }
+
+    private static Visit visit(int id, int petId, Date date, String description) {
+        return Visit.VisitBuilder.aVisit()
+            .id(id)
+            .petId(petId)
+            .date(date)
+            .description(description)
+            .build();
+    }
+}
@@ -0,0 +1,152 @@
+package org.springframework.samples.petclinic.visits.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.samples.petclinic.visits.config.VisitsProperties;
+import org.springframework.samples.petclinic.visits.model.Visit;
+import org.springframework.samples.petclinic.visits.model.VisitsCreated;
+import org.springframework.samples.petclinic.visits.shard.Shards;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.mock;
+
+class VisitIngestionTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+
+    private final Shards shards = mock(Shards.class);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    /**
+     * Size of each batch inserted, in order
+     */
+    private final List<Integer> batches = new ArrayList<>();
+
+    private volatile CountDownLatch insertAllowed = new CountDownLatch(0);
+
+    private VisitIngestion ingestion;
+
+    @BeforeEach
+    void setup() {
+        given(transactionManager.getTransaction(any())).willReturn(new SimpleTransactionStatus());
+        given(shards.on(anyInt(), any())).willAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+        given(jdbcTemplate.batchUpdate(any(PreparedStatementCreator.class), any(BatchPreparedStatementSetter.class), any(KeyHolder.class)))
+            .willAnswer(invocation -> {
+                insertAllowed.await(5, TimeUnit.SECONDS);
+                int size = invocation.<BatchPreparedStatementSetter>getArgument(1).getBatchSize();
+                KeyHolder keys = invocation.getArgument(2);
+                for (int i = 0; i < size; i++) {
+                    keys.getKeyList().add(Map.of("id", 100 + batches.stream().mapToInt(Integer::intValue).sum() + i));
+                }
+                batches.add(size);
+                return new int[size];
+            });
+    }
+
+    @AfterEach
+    void stop() {
+        insertAllowed.countDown();
+        if (ingestion != null && ingestion.isRunning()) {
+            ingestion.stop();
+        }
+    }
+
+    @Test
+    void shouldInsertTheVisitsReceivedTogetherInOneBatch() throws Exception {
+        start(10, 3, 1000);
+
+        List<CompletableFuture<Visit>> saved = List.of(
+            ingestion.submit(visit(7)), ingestion.submit(visit(8)), ingestion.submit(visit(7)));
+
+        assertThat(saved.get(0).get(5, TimeUnit.SECONDS).getId()).isEqualTo(100);
+        assertThat(saved.get(1).get(5, TimeUnit.SECONDS).getId()).isEqualTo(101);
+        assertThat(saved.get(2).get(5, TimeUnit.SECONDS).getId()).isEqualTo(102);
+        assertThat(batches).containsExactly(3);
+        then(eventPublisher).should().publishEvent(any(VisitsCreated.class));
+        assertThat(registry.get("petclinic.visit.ingestion.batch.size").summary().count()).isEqualTo(1);
+        assertThat(registry.get("petclinic.visit.ingestion.batch.size").summary().totalAmount()).isEqualTo(3);
+        assertThat(registry.get("petclinic.visit.ingestion.commit").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectVisitsWhenTheQueueIsFull() throws Exception {
+        insertAllowed = new CountDownLatch(1);
+        start(1, 1, 0);
+        CompletableFuture<Visit> writing = ingestion.submit(visit(7));
+        // The writer has taken the first visit and waits for its insert, the second one fills the queue
+        waitUntilQueued(0);
+        CompletableFuture<Visit> queued = ingestion.submit(visit(7));
+
+        assertThatThrownBy(() -> ingestion.submit(visit(7)))
+            .isInstanceOfSatisfying(ResponseStatusException.class,
+                e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS));
+        assertThat(registry.get("petclinic.visit.ingestion.rejected").counter().count()).isEqualTo(1);
+
+        insertAllowed.countDown();
+        assertThat(writing.get(5, TimeUnit.SECONDS).getId()).isEqualTo(100);
+        assertThat(queued.get(5, TimeUnit.SECONDS).getId()).isEqualTo(101);
+    }
+
+    @Test
+    void shouldRejectVisitsOnceStopped() {
+        start(10, 3, 0);
+        ingestion.stop();
+
+        assertThatThrownBy(() -> ingestion.submit(visit(7)))
+            .isInstanceOfSatisfying(ResponseStatusException.class,
+                e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+        assertThat(registry.get("petclinic.visit.ingestion.rejected").counter().count()).isZero();
+    }
+
+    private void start(int queueCapacity, int batchSize, long flushIntervalMs) {
+        VisitsProperties properties = new VisitsProperties(null, null,
+            new VisitsProperties.Ingestion(true, queueCapacity, batchSize, flushIntervalMs), null, null);
+        ingestion = new VisitIngestion(properties, jdbcTemplate, transactionManager, eventPublisher, shards, registry);
+        ingestion.start();
+    }
+
+    private void waitUntilQueued(int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (registry.get("petclinic.visit.ingestion.queue").gauge().value() != size && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static Visit visit(int petId) {
+        return Visit.VisitBuilder.aVisit()
+            .petId(petId)
+            .date(new Date())
+            .description("checkup")
+            .build();
+    }
+}
@@ -0,0 +1,100 @@
+package org.springframework.samples.petclinic.visits.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.samples.petclinic.visits.archive.VisitArchive;
+import org.springframework.samples.petclinic.visits.config.VisitsProperties;
+import org.springframework.samples.petclinic.visits.shard.Shards;
+
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+
+class PetsWithVisitsTest {
+
+    private final VisitRepository visitRepository = mock(VisitRepository.class);
+
+    private final Shards shards = mock(Shards.class);
+
+    private final PetsWithVisits petsWithVisits = petsWithVisits(true);
+
+    @BeforeEach
+    void setup() {
+        given(shards.scatter(any())).willAnswer(invocation -> invocation.<IntFunction<List<?>>>getArgument(0).apply(0));
+    }
+
+    @Test
+    void shouldAssumeVisitsUntilLoaded() {
+        assertThat(petsWithVisits.mayHaveVisits(7)).isTrue();
+    }
+
+    @Test
+    void shouldTellPetsWithoutVisits() {
+        given(visitRepository.findDistinctPetIdsByIdGreaterThan(0)).willReturn(List.of(7, 8));
+
+        petsWithVisits.load();
+
+        assertThat(petsWithVisits.mayHaveVisits(7)).isTrue();
+        assertThat(petsWithVisits.mayHaveVisits(9)).isFalse();
+    }
+
+    @Test
+    void shouldAddPetsOfCreatedVisits() {
+        given(visitRepository.findDistinctPetIdsByIdGreaterThan(0)).willReturn(List.of(7));
+        petsWithVisits.load();
+
+        petsWithVisits.onVisitsCreated(new VisitsCreated(List.of(Visit.VisitBuilder.aVisit().petId(9).build())));
+
+        assertThat(petsWithVisits.mayHaveVisits(9)).isTrue();
+    }
+
+    @Test
+    void shouldOnlyReadTheVisitsInsertedSinceTheReloadBeforeThePreviousOne() {
+        given(visitRepository.findMaxId()).willReturn(10, 20, 30);
+        given(visitRepository.findDistinctPetIdsByIdGreaterThan(0)).willReturn(List.of(7));
+        petsWithVisits.load();
+        petsWithVisits.load();
+        assertThat(petsWithVisits.mayHaveVisits(9)).isFalse();
+
+        // First visit of pet 9 created by another instance, without any event here
+        given(visitRepository.findDistinctPetIdsByIdGreaterThan(10)).willReturn(List.of(9));
+        petsWithVisits.load();
+
+        assertThat(petsWithVisits.mayHaveVisits(9)).isTrue();
+        assertThat(petsWithVisits.mayHaveVisits(7)).isTrue();
+    }
+
+    @Test
+    void shouldNotTrackHugePetIds() {
+        given(visitRepository.findDistinctPetIdsByIdGreaterThan(0)).willReturn(List.of(7));
+        petsWithVisits.load();
+
+        petsWithVisits.onVisitsCreated(new VisitsCreated(List.of(Visit.VisitBuilder.aVisit().petId(2000000000).build())));
+
+        assertThat(petsWithVisits.mayHaveVisits(2000000000)).isTrue();
+        assertThat(petsWithVisits.mayHaveVisits(PetsWithVisits.MAX_PET_ID)).isFalse();
+    }
+
+    @Test
+    void shouldAssumeVisitsWhenTheCacheIsDisabled() {
+        PetsWithVisits disabled = petsWithVisits(false);
+
+        disabled.schedule();
+
+        assertThat(disabled.mayHaveVisits(9)).isTrue();
+        then(visitRepository).should(never()).findDistinctPetIdsByIdGreaterThan(0);
+        disabled.destroy();
+    }
+
+    private PetsWithVisits petsWithVisits(boolean cacheEnabled) {
+        return new PetsWithVisits(visitRepository, new DefaultListableBeanFactory().getBeanProvider(VisitArchive.class), shards,
+            new VisitsProperties(null, new VisitsProperties.Cache(cacheEnabled, 10000, 300), null, null, null));
+    }
+}
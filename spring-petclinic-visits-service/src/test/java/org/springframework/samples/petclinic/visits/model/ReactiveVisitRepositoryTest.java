@@ -0,0 +1,77 @@
+package org.springframework.samples.petclinic.visits.model;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataR2dbcTest
+@Import(ReactiveVisitRepository.class)
+@ActiveProfiles({"test", "reactive"})
+class ReactiveVisitRepositoryTest {
+
+    @Autowired
+    ReactiveVisitRepository visitRepository;
+
+    @Autowired
+    DatabaseClient databaseClient;
+
+    @Test
+    void shouldFindVisitSummariesOfPets() {
+        List<VisitSummary> visits = visitRepository.findSummariesByPetIdIn(List.of(8, 7)).collectList().block();
+
+        assertThat(visits).extracting(VisitSummary::petId).containsExactly(7, 7, 8, 8);
+        assertThat(visitRepository.findSummariesByPetId(8).collectList().block())
+            .extracting(VisitSummary::description)
+            .containsExactlyInAnyOrder("rabies shot", "neutered");
+    }
+
+    @Test
+    void shouldSaveVisitAndReadItBack() {
+        Visit visit = Visit.VisitBuilder.aVisit()
+            .petId(9)
+            .date(new Date())
+            .description("x".repeat(500))
+            .build();
+
+        Visit saved = visitRepository.save(visit).block();
+
+        assertThat(saved.getId()).isNotNull();
+        assertThat(visitRepository.findById(saved.getId()).block().getDescription()).hasSize(500);
+        assertThat(visitRepository.findSummariesByPetId(9).blockFirst().description())
+            .hasSize(VisitSummary.DESCRIPTION_LENGTH);
+    }
+
+    @Test
+    void shouldCountSavedVisitsInRollupsAndSummaries() {
+        LocalDate date = LocalDate.of(2024, 3, 13);
+        for (int i = 0; i < 2; i++) {
+            visitRepository.save(Visit.VisitBuilder.aVisit()
+                .petId(10)
+                .date(Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant()))
+                .description("check-up")
+                .build()).block();
+        }
+
+        assertThat(count("SELECT visits FROM visit_rollups WHERE granularity = 'DAY' AND bucket = DATE '2024-03-13'")).isEqualTo(2);
+        assertThat(count("SELECT visits FROM visit_rollups WHERE granularity = 'MONTH' AND bucket = DATE '2024-03-01'")).isEqualTo(2);
+        assertThat(count("SELECT visits FROM pet_visit_rollups WHERE granularity = 'WEEK' AND pet_id = 10 AND bucket = DATE '2024-03-11'"))
+            .isEqualTo(2);
+        assertThat(count("SELECT visits FROM pet_visit_summaries WHERE pet_id = 10")).isEqualTo(2);
+        assertThat(databaseClient.sql("SELECT last_visit_date FROM pet_visit_summaries WHERE pet_id = 10")
+            .map(row -> row.get(0, LocalDate.class)).one().block()).isEqualTo(date);
+    }
+
+    private int count(String sql) {
+        return databaseClient.sql(sql).map(row -> row.get(0, Integer.class)).one().block();
+    }
+}
@@ -0,0 +1,30 @@
+package org.springframework.samples.petclinic.visits.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VisitSummaryTest {
+
+    @Test
+    void shouldKeepShortDescriptions() {
+        String description = "x".repeat(VisitSummary.DESCRIPTION_LENGTH);
+
+        assertThat(new VisitSummary(1, 7, null, description).description()).isEqualTo(description);
+        assertThat(new VisitSummary(1, 7, null, null).description()).isNull();
+    }
+
+    @Test
+    void shouldTruncateLongDescriptions() {
+        String description = new VisitSummary(1, 7, null, "x".repeat(VisitSummary.DESCRIPTION_LENGTH + 1)).description();
+
+        assertThat(description).hasSize(VisitSummary.DESCRIPTION_LENGTH).endsWith("\u2026");
+    }
+
+    @Test
+    void shouldNotSplitSurrogatePairs() {
+        String description = new VisitSummary(1, 7, null, "x".repeat(VisitSummary.DESCRIPTION_LENGTH - 2) + "\ud83d\udc36" + "xx").description();
+
+        assertThat(description).isEqualTo("x".repeat(VisitSummary.DESCRIPTION_LENGTH - 2) + "\u2026");
+    }
+}
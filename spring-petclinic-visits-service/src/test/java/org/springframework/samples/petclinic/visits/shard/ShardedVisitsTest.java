@@ -0,0 +1,74 @@
+package org.springframework.samples.petclinic.visits.shard;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.visits.model.VisitRepository;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({"test", "sharded"})
+class ShardedVisitsTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    Shards shards;
+
+    @Autowired
+    VisitRepository visitRepository;
+
+    @Test
+    void shouldKeepTheSeedVisitsOfEachPetOnItsShard() throws Exception {
+        assertThat(shards.count()).isEqualTo(3);
+        assertThat(shards.ofPet(7)).isNotEqualTo(shards.ofPet(8));
+        for (int shard = 0; shard < shards.count(); shard++) {
+            int current = shard;
+            assertThat(shards.on(shard, () -> visitRepository.findAll()))
+                .allMatch(visit -> shards.ofPet(visit.getPetId()) == current);
+        }
+
+        mvc.perform(get("/pets/visits?petId=7,8").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items.length()").value(4))
+            .andExpect(jsonPath("$.items[0].petId").value(7))
+            .andExpect(jsonPath("$.items[3].petId").value(8));
+    }
+
+    @Test
+    void shouldStoreNewVisitOnTheShardOfItsPet() throws Exception {
+        MvcResult result = mvc.perform(post("/owners/1/pets/3/visits")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"date\": \"2013-01-05\", \"description\": \"Checkup\"}"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        String response = mvc.perform(asyncDispatch(result))
+            .andExpect(status().isCreated())
+            .andReturn().getResponse().getContentAsString();
+        int visitId = JsonPath.read(response, "$.id");
+
+        assertThat(shards.on(shards.ofPet(3), () -> visitRepository.findById(visitId))).isPresent();
+        mvc.perform(get("/owners/1/pets/3/visits/" + visitId).accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.description").value("Checkup"));
+        mvc.perform(get("/visits?size=2").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items[0].id").value(visitId))
+            .andExpect(jsonPath("$.items[1].id").value(4));
+    }
+}
@@ -0,0 +1,22 @@
+package org.springframework.samples.petclinic.visits.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GranularityTest {
+
+    @Test
+    void shouldStartWeeksOnMonday() {
+        assertThat(Granularity.WEEK.bucketOf(LocalDate.of(2013, 1, 6))).isEqualTo(LocalDate.of(2012, 12, 31));
+        assertThat(Granularity.WEEK.bucketOf(LocalDate.of(2013, 1, 7))).isEqualTo(LocalDate.of(2013, 1, 7));
+    }
+
+    @Test
+    void shouldStartMonthsOnTheFirstDay() {
+        assertThat(Granularity.MONTH.bucketOf(LocalDate.of(2013, 2, 28))).isEqualTo(LocalDate.of(2013, 2, 1));
+        assertThat(Granularity.DAY.bucketOf(LocalDate.of(2013, 2, 28))).isEqualTo(LocalDate.of(2013, 2, 28));
+    }
+}
@@ -0,0 +1,130 @@
+package org.springframework.samples.petclinic.visits.stats;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.samples.petclinic.visits.model.Visit;
+import org.springframework.samples.petclinic.visits.model.VisitsCreated;
+import org.springframework.samples.petclinic.visits.shard.Shards;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Each test creates its visits on its own dates, the sharded databases being shared by the tests.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({"test", "sharded"})
+class VisitRollupsTest {
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    Shards shards;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+
+    @Test
+    void shouldSumTheCountsOfEveryShard() throws Exception {
+        assertThat(shards.ofPet(7)).isNotEqualTo(shards.ofPet(8));
+        createVisit(7, "2015-03-10");
+        createVisit(8, "2015-03-10");
+        createVisit(8, "2015-03-11");
+
+        mvc.perform(get("/visits/stats?granularity=day&from=2015-03-10&to=2015-03-11").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(2))
+            .andExpect(jsonPath("$[0].bucket").value("2015-03-10"))
+            .andExpect(jsonPath("$[0].visits").value(2))
+            .andExpect(jsonPath("$[1].bucket").value("2015-03-11"))
+            .andExpect(jsonPath("$[1].visits").value(1));
+        mvc.perform(get("/visits/stats?granularity=week&from=2015-03-10&to=2015-03-11&petId=8").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(1))
+            .andExpect(jsonPath("$[0].bucket").value("2015-03-09"))
+            .andExpect(jsonPath("$[0].visits").value(2));
+    }
+
+    @Test
+    void shouldCountTheVisitsInTheTransactionCreatingThem() {
+        Visit visit = Visit.VisitBuilder.aVisit().petId(5).date(Date.valueOf("2016-04-12")).build();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        shards.on(shards.ofPet(5), () -> transactionTemplate.execute(status -> {
+            eventPublisher.publishEvent(new VisitsCreated(List.of(visit)));
+            status.setRollbackOnly();
+            return null;
+        }));
+        assertThat(monthCount(5, "2016-04-01")).isZero();
+
+        shards.on(shards.ofPet(5), () -> transactionTemplate.execute(status -> {
+            eventPublisher.publishEvent(new VisitsCreated(List.of(visit)));
+            return null;
+        }));
+        assertThat(monthCount(5, "2016-04-01")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRebuildTheCountsFromTheVisits() throws Exception {
+        createVisit(7, "2017-05-16");
+        createVisit(8, "2017-05-16");
+        shards.scatter(shard -> List.of(jdbcTemplate.update(
+            "UPDATE visit_rollups SET visits = 100 WHERE granularity = 'DAY' AND bucket = ?", Date.valueOf("2017-05-16"))));
+
+        mvc.perform(post("/visits/stats/rebuild"))
+            .andExpect(status().isNoContent());
+
+        mvc.perform(get("/visits/stats?granularity=day&from=2017-05-16&to=2017-05-16").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].visits").value(2));
+    }
+
+    @Test
+    void shouldRejectUnknownGranularities() throws Exception {
+        mvc.perform(get("/visits/stats?granularity=year&from=2013-01-01&to=2013-12-31").accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+    }
+
+    private void createVisit(int petId, String date) throws Exception {
+        MvcResult result = mvc.perform(post("/owners/1/pets/" + petId + "/visits")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"date\": \"" + date + "\", \"description\": \"Checkup\"}"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mvc.perform(asyncDispatch(result))
+            .andExpect(status().isCreated());
+    }
+
+    private int monthCount(int petId, String month) {
+        List<Integer> counts = shards.on(shards.ofPet(petId), () -> jdbcTemplate.queryForList(
+            "SELECT visits FROM pet_visit_rollups WHERE granularity = 'MONTH' AND pet_id = ? AND bucket = ?",
+            Integer.class, petId, Date.valueOf(month)));
+        return counts.stream().mapToInt(Integer::intValue).sum();
+    }
+}
@@ -1,24 +1,50 @@
 package org.springframework.samples.petclinic.visits.web;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.visits.model.PetsWithVisits;
 import org.springframework.samples.petclinic.visits.model.Visit;
+import org.springframework.samples.petclinic.visits.model.VisitFinder;
 import org.springframework.samples.petclinic.visits.model.VisitRepository;
+import org.springframework.samples.petclinic.visits.model.VisitSummary;
+import org.springframework.samples.petclinic.visits.shard.Shards;
+import org.springframework.samples.petclinic.visits.stats.PetVisitSummaries;
+import org.springframework.samples.petclinic.visits.stats.PetVisitSummary;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.Optional;
 
 import static java.util.Arrays.asList;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
 @WebMvcTest(VisitResource.class)
+@Import({VisitFinder.class, Shards.class})
 @ActiveProfiles("test")
 class VisitResourceTest {
 
@@ -28,23 +54,37 @@ class VisitResourceTest {
     @MockBean
     VisitRepository visitRepository;
 
+    @MockBean
+    PetsWithVisits petsWithVisits;
+
+    @MockBean
+    PetVisitSummaries petVisitSummaries;
+
+    @MockBean
+    PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setup() {
+        given(petsWithVisits.mayHaveVisits(anyInt())).willReturn(true);
+    }
+
     @Test
     void shouldFetchVisits() throws Exception {
-        given(visitRepository.findByPetIdIn(asList(111, 222)))
+        given(visitRepository.findSummariesByPetIdIn(asList(111, 222)))
             .willReturn(
                 asList(
-                    Visit.VisitBuilder.aVisit()
+                    VisitSummary.of(Visit.VisitBuilder.aVisit()
                         .id(1)
                         .petId(111)
-                        .build(),
-                    Visit.VisitBuilder.aVisit()
+                        .build()),
+                    VisitSummary.of(Visit.VisitBuilder.aVisit()
                         .id(2)
                         .petId(222)
-                        .build(),
-                    Visit.VisitBuilder.aVisit()
+                        .build()),
+                    VisitSummary.of(Visit.VisitBuilder.aVisit()
                         .id(3)
                         .petId(222)
-                        .build()
+                        .build())
                 )
             );
 
@@ -57,4 +97,140 @@ class VisitResourceTest {
             .andExpect(jsonPath("$.items[1].petId").value(222))
             .andExpect(jsonPath("$.items[2].petId").value(222));
     }
+
+    @Test
+    void shouldStreamVisitsOfPetIdsPostedInBody() throws Exception {
+        given(visitRepository.findSummariesByPetIdIn(asList(333, 444)))
+            .willReturn(
+                asList(
+                    VisitSummary.of(Visit.VisitBuilder.aVisit()
+                        .id(1)
+                        .petId(333)
+                        .build()),
+                    VisitSummary.of(Visit.VisitBuilder.aVisit()
+                        .id(2)
+                        .petId(444)
+                        .build())
+                )
+            );
+
+        MvcResult result = mvc.perform(post("/pets/visits")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[444, 333, 444]"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items[0].id").value(1))
+            .andExpect(jsonPath("$.items[1].id").value(2));
+    }
+
+    @Test
+    void shouldPageVisitsOfAPet() throws Exception {
+        given(visitRepository.findPageByPetId(eq(7), any(Date.class), any(Date.class), any(Date.class), anyInt(), any(Limit.class)))
+            .willReturn(
+                asList(
+                    VisitSummary.of(Visit.VisitBuilder.aVisit()
+                        .id(4)
+                        .petId(7)
+                        .date(new Date(3000))
+                        .build()),
+                    VisitSummary.of(Visit.VisitBuilder.aVisit()
+                        .id(1)
+                        .petId(7)
+                        .date(new Date(2000))
+                        .build()),
+                    VisitSummary.of(Visit.VisitBuilder.aVisit()
+                        .id(3)
+                        .petId(7)
+                        .date(new Date(1000))
+                        .build())
+                )
+            );
+
+        mvc.perform(get("/pets/7/visits?size=2&from=2013-01-01"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items.length()").value(2))
+            .andExpect(jsonPath("$.items[1].id").value(1))
+            .andExpect(jsonPath("$.next").value("2000.1"));
+    }
+
+    @Test
+    void shouldCacheVisitsOfAPetUntilAVisitIsCreated() throws Exception {
+        given(visitRepository.findSummariesByPetId(9))
+            .willReturn(
+                asList(
+                    VisitSummary.of(Visit.VisitBuilder.aVisit()
+                        .id(5)
+                        .petId(9)
+                        .build())
+                )
+            );
+        given(visitRepository.save(any(Visit.class))).willAnswer(invocation -> invocation.getArgument(0));
+
+        mvc.perform(get("/owners/1/pets/9/visits"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].id").value(5));
+        mvc.perform(get("/owners/1/pets/9/visits"))
+            .andExpect(status().isOk());
+        then(visitRepository).should(times(1)).findSummariesByPetId(9);
+
+        MvcResult result = mvc.perform(post("/owners/1/pets/9/visits")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"description\": \"Checkup\"}"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mvc.perform(asyncDispatch(result))
+            .andExpect(status().isCreated());
+
+        mvc.perform(get("/owners/1/pets/9/visits"))
+            .andExpect(status().isOk());
+        then(visitRepository).should(times(2)).findSummariesByPetId(9);
+    }
+
+    @Test
+    void shouldFetchTheFullDescriptionOfASingleVisit() throws Exception {
+        String description = "x".repeat(500);
+        given(visitRepository.findById(6))
+            .willReturn(
+                Optional.of(Visit.VisitBuilder.aVisit()
+                    .id(6)
+                    .petId(10)
+                    .description(description)
+                    .build())
+            );
+
+        mvc.perform(get("/owners/1/pets/10/visits/6"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.description").value(description));
+        mvc.perform(get("/owners/1/pets/11/visits/6"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void shouldNotQueryPetsWithoutVisits() throws Exception {
+        given(petsWithVisits.mayHaveVisits(12)).willReturn(false);
+
+        mvc.perform(get("/owners/1/pets/12/visits"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(0));
+        then(visitRepository).should(never()).findSummariesByPetId(12);
+    }
+
+    @Test
+    void shouldFetchVisitSummariesOfPets() throws Exception {
+        given(petVisitSummaries.findByPetIdIn(asList(7, 12)))
+            .willReturn(asList(
+                new PetVisitSummary(7, 2, LocalDate.of(2013, 1, 4)),
+                new PetVisitSummary(12, 0, null)
+            ));
+
+        mvc.perform(get("/pets/visits/summary?petId=7,12"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items[0].visits").value(2))
+            .andExpect(jsonPath("$.items[0].lastVisitDate").value("2013-01-04"))
+            .andExpect(jsonPath("$.items[1].petId").value(12))
+            .andExpect(jsonPath("$.items[1].visits").value(0));
+    }
 }